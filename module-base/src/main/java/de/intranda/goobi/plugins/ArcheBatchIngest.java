@@ -0,0 +1,184 @@
+package de.intranda.goobi.plugins;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.goobi.api.ArcheConfiguration;
+import org.goobi.api.rest.ArcheAPI;
+import org.goobi.beans.Process;
+import org.goobi.beans.Step;
+import org.goobi.production.enums.PluginReturnValue;
+
+import de.intranda.goobi.plugins.BatchIngestReport.ProcessResult;
+import de.sub.goobi.config.ConfigPlugins;
+import de.sub.goobi.helper.HelperSchritte;
+import de.sub.goobi.persistence.managers.ProcessManager;
+import jakarta.ws.rs.client.Client;
+import lombok.extern.log4j.Log4j2;
+
+/**
+ * Ingests many processes concurrently. All processes share one HTTP client and the parsed configuration. The number of processes running at
+ * the same time is limited by the concurrency.
+ *
+ * The settings that apply to the whole application (limiter, governor, request format, caches) are taken from the default configuration block
+ * once per batch, the project and step specific blocks only configure the single processes.
+ *
+ * Usage from the command line with the class path of the Goobi application:
+ *
+ * <pre>
+ * java -cp ... de.intranda.goobi.plugins.ArcheBatchIngest [--concurrency 4] [--close-steps] (processId ... | --file ids.txt)
+ * </pre>
+ */
+@Log4j2
+public class ArcheBatchIngest {
+
+    private static final int DEFAULT_CONCURRENCY = 4;
+
+    private final int concurrency;
+
+    private final boolean closeSteps;
+
+    /**
+     * @param concurrency number of processes ingested at the same time
+     * @param closeSteps close the ARCHE step of a process after a successful ingest
+     */
+    public ArcheBatchIngest(int concurrency, boolean closeSteps) {
+        if (concurrency <= 0) {
+            throw new IllegalArgumentException("concurrency must be positive");
+        }
+        this.concurrency = concurrency;
+        this.closeSteps = closeSteps;
+    }
+
+    /**
+     * Run a batch ingest from the command line. The exit code is 1 if an ingest failed, 2 if the arguments are invalid.
+     *
+     * @param args
+     */
+
+    public static void main(String[] args) {
+        // the queue of the running application must not be continued by this process
+        IngestJobQueue.disableResume();
+        int concurrency = DEFAULT_CONCURRENCY;
+        boolean closeSteps = false;
+        List<Integer> processIds = new ArrayList<>();
+        try {
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "--concurrency":
+                        concurrency = Integer.parseInt(args[++i]);
+                        break;
+                    case "--close-steps":
+                        closeSteps = true;
+                        break;
+                    case "--file":
+                        for (String line : Files.readAllLines(Paths.get(args[++i]))) {
+                            if (!line.isBlank()) {
+                                processIds.add(Integer.valueOf(line.trim()));
+                            }
+                        }
+                        break;
+                    default:
+                        processIds.add(Integer.valueOf(args[i]));
+                }
+            }
+        } catch (NumberFormatException | ArrayIndexOutOfBoundsException | IOException e) {
+            System.err.println("Invalid arguments: " + e.getMessage());
+            processIds.clear();
+        }
+        if (processIds.isEmpty() || concurrency <= 0) {
+            System.err.println("Usage: ArcheBatchIngest [--concurrency n] [--close-steps] (processId ... | --file ids.txt)");
+            System.exit(2);
+        }
+        BatchIngestReport report = new ArcheBatchIngest(concurrency, closeSteps).ingest(processIds);
+        System.out.println(report);
+        System.exit(report.getErrorCount() > 0 ? 1 : 0);
+    }
+
+    /**
+     * Ingest all given processes and wait until all of them are finished
+     *
+     * @param processIds
+     * @return report with the result of each process
+     */
+
+    public BatchIngestReport ingest(List<Integer> processIds) {
+        ArcheConfiguration archeConfiguration = new ArcheConfiguration("intranda_administration_arche_project_export");
+        Map<String, ArcheStepConfiguration> stepConfigurations = new ConcurrentHashMap<>();
+        BatchIngestReport report = new BatchIngestReport();
+        // limiter, governor and caches are shared by all processes, they are configured once and not by each process
+        ArcheExportStepPlugin.applyGlobalSettings(ArcheStepConfiguration.loadDefault(ArcheExportStepPlugin.PLUGIN_TITLE));
+
+        ExecutorService executor = Executors.newFixedThreadPool(concurrency);
+        try (Client client = ArcheAPI.getClient(archeConfiguration.getArcheUserName(), archeConfiguration.getArchePassword())) {
+            List<Future<?>> futures = new ArrayList<>();
+            for (Integer processId : processIds) {
+                futures.add(executor.submit(
+                        () -> report.add(ingestProcess(processId, client, archeConfiguration, stepConfigurations))));
+            }
+            for (Future<?> future : futures) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    log.error(e);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            executor.shutdownNow();
+        } finally {
+            executor.shutdown();
+        }
+        log.info(report);
+        return report;
+    }
+
+    private ProcessResult ingestProcess(Integer processId, Client client, ArcheConfiguration archeConfiguration,
+            Map<String, ArcheStepConfiguration> stepConfigurations) {
+        long start = System.currentTimeMillis();
+        Process process = ProcessManager.getProcessById(processId);
+        if (process == null) {
+            return new ProcessResult(processId, null, PluginReturnValue.ERROR, 0, "Process not found");
+        }
+        Step step = findStep(process);
+        if (step == null) {
+            return new ProcessResult(processId, process.getTitel(), PluginReturnValue.ERROR, 0, "Process has no ARCHE export step");
+        }
+        try {
+            // the configuration depends on project and step only, parse it once for all processes
+            ArcheStepConfiguration stepConfiguration = stepConfigurations.computeIfAbsent(process.getProjekt().getTitel() + "|" + step.getTitel(),
+                    k -> new ArcheStepConfiguration(ConfigPlugins.getProjectAndStepConfig(ArcheExportStepPlugin.PLUGIN_TITLE, step)));
+
+            ArcheExportStepPlugin plugin = new ArcheExportStepPlugin();
+            plugin.initialize(step, stepConfiguration, archeConfiguration, false);
+            plugin.setSharedClient(client);
+            PluginReturnValue result = plugin.runSynchronously();
+            if (result == PluginReturnValue.FINISH && closeSteps) {
+                new HelperSchritte().CloseStepObjectAutomatic(step);
+            }
+            return new ProcessResult(processId, process.getTitel(), result, System.currentTimeMillis() - start,
+                    result == PluginReturnValue.ERROR ? "Ingest failed, see application log" : null);
+        } catch (RuntimeException e) {
+            log.error("Ingest of process {} failed", processId, e);
+            return new ProcessResult(processId, process.getTitel(), PluginReturnValue.ERROR, System.currentTimeMillis() - start, e.getMessage());
+        }
+    }
+
+    private Step findStep(Process process) {
+        for (Step step : process.getSchritte()) {
+            if (ArcheExportStepPlugin.PLUGIN_TITLE.equals(step.getStepPlugin())) {
+                return step;
+            }
+        }
+        return null;
+    }
+}
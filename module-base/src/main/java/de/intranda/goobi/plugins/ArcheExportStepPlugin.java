@@ -21,18 +21,30 @@ package de.intranda.goobi.plugins;
 
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
 import java.text.DecimalFormat;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
 
-import org.apache.commons.configuration.HierarchicalConfiguration;
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.codec.digest.DigestUtils;
 import org.apache.commons.configuration.SubnodeConfiguration;
 import org.apache.commons.io.FilenameUtils;
 import org.apache.commons.lang3.StringUtils;
@@ -45,31 +57,46 @@ import org.apache.jena.rdf.model.StmtIterator;
 import org.apache.jena.riot.RDFDataMgr;
 import org.apache.jena.riot.RDFFormat;
 import org.goobi.api.ArcheConfiguration;
+import org.goobi.api.rest.AdaptiveLimiter;
 import org.goobi.api.rest.ArcheAPI;
+import org.goobi.api.rest.ArcheGovernor;
+import org.goobi.api.rest.ArcheMeterBinder;
+import org.goobi.api.rest.ArcheMetrics;
+import org.goobi.api.rest.ArcheTransaction;
+import org.goobi.api.rest.BinaryStreamFactory;
+import org.goobi.api.rest.FanOutInputStream;
+import org.goobi.api.rest.RequestStatistics;
+import org.goobi.api.rest.TraceSpan;
+import org.goobi.api.rest.Tracing;
+import org.goobi.api.rest.TrafficRecorder;
 import org.goobi.api.rest.TransactionInfo;
+import org.goobi.api.rest.TransactionRegistry;
 import org.goobi.beans.GoobiProperty;
 import org.goobi.beans.Process;
 import org.goobi.beans.Project;
 import org.goobi.beans.Step;
+import org.goobi.production.enums.LogType;
 import org.goobi.production.enums.PluginGuiType;
 import org.goobi.production.enums.PluginReturnValue;
 import org.goobi.production.enums.PluginType;
 import org.goobi.production.enums.StepReturnValue;
 import org.goobi.production.plugin.interfaces.IStepPluginVersion2;
 
+import de.intranda.goobi.plugins.ArcheStepConfiguration.MetadataFieldMapping;
 import de.sub.goobi.config.ConfigPlugins;
 import de.sub.goobi.helper.Helper;
 import de.sub.goobi.helper.StorageProvider;
 import de.sub.goobi.helper.exceptions.SwapException;
 import jakarta.ws.rs.ProcessingException;
 import jakarta.ws.rs.client.Client;
+import jakarta.ws.rs.core.MediaType;
 import lombok.Getter;
+import lombok.Setter;
 import lombok.extern.log4j.Log4j2;
 import net.xeoh.plugins.base.annotations.PluginImplementation;
 import ugh.dl.Corporate;
 import ugh.dl.DigitalDocument;
 import ugh.dl.DocStruct;
-import ugh.dl.Fileformat;
 import ugh.dl.Metadata;
 import ugh.dl.Person;
 import ugh.exceptions.DocStructHasNoTypeException;
@@ -80,8 +107,11 @@ import ugh.exceptions.UGHException;
 public class ArcheExportStepPlugin implements IStepPluginVersion2 {
 
     private static final long serialVersionUID = 2508360403026767509L;
+
+    static final String PLUGIN_TITLE = "intranda_step_arche_export";
+
     @Getter
-    private String title = "intranda_step_arche_export";
+    private String title = PLUGIN_TITLE;
     @Getter
     private Step step;
 
@@ -117,65 +147,135 @@ public class ArcheExportStepPlugin implements IStepPluginVersion2 {
     private List<MetadataFieldMapping> metadataMappings;
     private List<String[]> propertyMappings;
 
+    private BinaryStreamFactory binaryStreams;
+
+    private TechnicalMetadataExtractor technicalMetadataExtractor = new TechnicalMetadataExtractor();
+
+    /** client shared with other plugin instances, if set it is used instead of an own client and not closed */
+    @Setter
+    private Client sharedClient;
+
+    private String stateFolder;
+    private boolean asyncEnabled;
+    private int asyncThreads;
+
+    private int pipelineQueueSize;
+    private int pipelineBuildThreads;
+    private int pipelineSerializeThreads;
+    private int pipelineUploadThreads;
+
+    private boolean largestFirst;
+
+    /** performance report of the current run */
+    private IngestReport report;
+
+    /** record trace spans of each run */
+    private boolean tracingEnabled;
+
+    /** record the ARCHE requests of each run for replay */
+    private boolean recordingEnabled;
+
+    private boolean dryRun;
+
+    /** record the ingested identifiers, so dry runs can count the expected updates */
+    private boolean identifierIndexEnabled;
+
+    /** maximum number of files per transaction, 0 to ingest everything in one transaction */
+    private int filesPerTransaction;
+
+    /** share of the project in the requests of all ingests */
+    private int governorWeight;
+
+    /** request durations of the current ingest */
+    private ThroughputStatistics throughput;
+
+    /** identifiers of all resources uploaded in the current ingest */
+    private Set<String> ingestedIdentifiers = ConcurrentHashMap.newKeySet();
+
+    /** files of the export folder that are copied while they are uploaded, source by destination */
+    private Map<Path, Path> pendingExports = new ConcurrentHashMap<>();
+
+    /** a file of a folder, with the names used in ARCHE */
+    private record FileJob(Path file, String folderName, String filename, String nextFilename) {
+    }
+
+    private record BuiltFile(FileJob job, Resource resource) {
+    }
+
+    private record SerializedFile(FileJob job, Resource resource, byte[] turtle) {
+    }
+
     @Override
     public void initialize(Step step, String returnPath) {
+        // read parameters from correct block in configuration file
+        SubnodeConfiguration config = ConfigPlugins.getProjectAndStepConfig(title, step);
+        initialize(step, new ArcheStepConfiguration(config), new ArcheConfiguration("intranda_administration_arche_project_export"));
+    }
+
+    /**
+     * Initialize the plugin with already parsed configurations, used to share the configuration between several plugin instances
+     * 
+     * @param step
+     * @param stepConfiguration
+     * @param archeConfiguration
+     */
+
+    void initialize(Step step, ArcheStepConfiguration stepConfiguration, ArcheConfiguration archeConfiguration) {
+        initialize(step, stepConfiguration, archeConfiguration, true);
+    }
+
+    /**
+     * Initialize the plugin with already parsed configurations
+     * 
+     * @param step
+     * @param stepConfiguration
+     * @param archeConfiguration
+     * @param applyGlobalSettings false, if the settings shared by all ingests of the application were already applied, e.g. once for a batch
+     */
+
+    void initialize(Step step, ArcheStepConfiguration stepConfiguration, ArcheConfiguration archeConfiguration, boolean applyGlobalSettings) {
         this.step = step;
         process = step.getProzess();
         project = process.getProjekt();
 
-        archeConfiguration = new ArcheConfiguration("intranda_administration_arche_project_export");
+        this.archeConfiguration = archeConfiguration;
 
-        // read parameters from correct block in configuration file
-        SubnodeConfiguration config = ConfigPlugins.getProjectAndStepConfig(title, step);
+        languageCodes = stepConfiguration.getLanguageCodes();
+        licenseMapping = stepConfiguration.getLicenseMapping();
+        doctypes = stepConfiguration.getDoctypes();
+        accessValues = stepConfiguration.getAccessValues();
+        viewerUrl = stepConfiguration.getViewerUrl();
+        permalinkUrl = stepConfiguration.getPermalinkUrl();
+        metadataMappings = stepConfiguration.getMetadataMappings();
+        propertyMappings = stepConfiguration.getPropertyMappings();
 
-        languageCodes = new HashMap<>();
-        for (HierarchicalConfiguration hc : config.configurationsAt("/language/code")) {
-            languageCodes.put(hc.getString("@iso639-2"), hc.getString("@iso639-1"));
-        }
+        binaryStreams = stepConfiguration.getBinaryStreams();
 
-        licenseMapping = new HashMap<>();
-        for (HierarchicalConfiguration hc : config.configurationsAt("/licenses/license")) {
-            licenseMapping.put(hc.getString("@internalName"), hc.getString("@archeField"));
-        }
-
-        doctypes = new HashMap<>();
-        for (HierarchicalConfiguration hc : config.configurationsAt("/tags/tag")) {
-            doctypes.put(hc.getString("@doctype"), hc.getString("@code"));
-        }
+        stateFolder = stepConfiguration.getStateFolder();
+        asyncEnabled = stepConfiguration.isAsyncEnabled();
+        asyncThreads = stepConfiguration.getAsyncThreads();
 
-        accessValues = new HashMap<>();
-        accessValues.put("public", "https://vocabs.acdh.oeaw.ac.at/archeaccessrestrictions/public");
-        accessValues.put("academic", "https://vocabs.acdh.oeaw.ac.at/archeaccessrestrictions/academic");
-        accessValues.put("restricted", "https://vocabs.acdh.oeaw.ac.at/archeaccessrestrictions/restricted");
-
-        viewerUrl = config.getString("/viewerUrl", "https://viewer.acdh.oeaw.ac.at/viewer");
-        if (viewerUrl.endsWith("/")) {
-            viewerUrl = viewerUrl.substring(0, viewerUrl.length() - 1);
-        }
-        permalinkUrl = config.getString("/permalinkUrl", "https://permalink.obvsg.at/");
-        if (!permalinkUrl.endsWith("/")) {
-            permalinkUrl = permalinkUrl + "/";
-        }
+        pipelineQueueSize = stepConfiguration.getPipelineQueueSize();
+        pipelineBuildThreads = stepConfiguration.getPipelineBuildThreads();
+        pipelineSerializeThreads = stepConfiguration.getPipelineSerializeThreads();
+        pipelineUploadThreads = stepConfiguration.getPipelineUploadThreads();
+        largestFirst = stepConfiguration.isLargestFirst();
 
-        metadataMappings = new ArrayList<>();
-        for (HierarchicalConfiguration hc : config.configurationsAt("/metadataMappings/metadataMapping")) {
-            metadataMappings.add(new MetadataFieldMapping(
-                    hc.getString("@metadataName"),
-                    hc.getString("@archeField"),
-                    hc.getString("@language", "NO_LANGUAGE")));
-        }
+        dryRun = stepConfiguration.isDryRun();
+        identifierIndexEnabled = stepConfiguration.isIdentifierIndexEnabled();
+        filesPerTransaction = stepConfiguration.getFilesPerTransaction();
 
-        propertyMappings = new ArrayList<>();
-        for (HierarchicalConfiguration hc : config.configurationsAt("/propertyMappings/propertyMapping")) {
-            propertyMappings.add(new String[] {
-                    hc.getString("@goobiProperty"),
-                    hc.getString("@archeField") });
+        governorWeight = stepConfiguration.getGovernorWeight();
+        tracingEnabled = stepConfiguration.isTracingEnabled();
+        recordingEnabled = stepConfiguration.isRecordingEnabled();
+        if (applyGlobalSettings) {
+            applyGlobalSettings(stepConfiguration);
         }
 
-        String destination = config.getString("/exportFolder");
+        String destination = stepConfiguration.getExportFolder();
         // prepare export folder, if enabled
         if (StringUtils.isNotBlank(destination)) {
-            Path exportPath = Paths.get(config.getString("/exportFolder"), process.getTitel());
+            Path exportPath = Paths.get(destination, process.getTitel());
             try {
                 Files.createDirectories(exportPath);
             } catch (IOException e) {
@@ -193,6 +293,32 @@ public class ArcheExportStepPlugin implements IStepPluginVersion2 {
         }
     }
 
+    /**
+     * Apply the settings that are shared by all ingests of the application: limiter, governor, request format, metadata cache and S3 reads
+     * 
+     * @param stepConfiguration
+     */
+
+    static void applyGlobalSettings(ArcheStepConfiguration stepConfiguration) {
+        FileformatCache.setSize(stepConfiguration.getMetadataCacheSize());
+        AdaptiveLimiter.getInstance()
+                .configure(stepConfiguration.getMinConcurrency(), stepConfiguration.getMaxConcurrency(), stepConfiguration.getInitialConcurrency());
+        ArcheAPI.setMaxRetries(stepConfiguration.getMaxRetries());
+        ArcheAPI.setMetadataLane(stepConfiguration.getMetadataLane());
+        ArcheAPI.setWireFormat(stepConfiguration.getWireFormat());
+        ArcheAPI.setCompressRequests(stepConfiguration.isCompressRequests());
+        ArcheGovernor.getInstance().configure(stepConfiguration.getGovernorMaxRequests(), stepConfiguration.getGovernorMaxTransactions());
+        TechnicalMetadataExtractor.setMaxS3Reads(stepConfiguration.getMaxS3HeaderReads());
+        if (stepConfiguration.isMicrometerEnabled()) {
+            try {
+                ArcheMeterBinder.bindToGlobalRegistry();
+            } catch (NoClassDefFoundError e) {
+                // Micrometer is optional, the metrics stay available via JMX
+                log.warn("Micrometer is not available, ARCHE metrics are only published via JMX");
+            }
+        }
+    }
+
     @Override
     public String getPagePath() {
         return "/uii/plugin_step_arche_export.xhtml";
@@ -221,28 +347,157 @@ public class ArcheExportStepPlugin implements IStepPluginVersion2 {
     @Override
     public boolean execute() {
         PluginReturnValue ret = run();
+        // WAIT: the ingest was added to the background queue. true only reports that it was accepted, the queue closes the step or sets it to
+        // error when the ingest is finished, so Goobi must not close the step itself. A dry run also returns WAIT, its step stays open
         return ret != PluginReturnValue.ERROR;
     }
 
     @Override
     public PluginReturnValue run() {
+        // background ingests of an earlier run of the application continue with the first step, also if it runs synchronously
+        IngestJobQueue.resumeAfterRestart(PLUGIN_TITLE);
+        if (!asyncEnabled) {
+            return runSynchronously();
+        }
+        // run the ingest in the background, the queue closes the step when it is finished
+        try {
+            IngestJobQueue.getInstance(Paths.get(stateFolder, "queue"), asyncThreads).enqueue(step);
+        } catch (IOException e) {
+            Helper.setFehlerMeldung("Cannot add the ARCHE ingest to the queue");
+            log.error(e);
+            return PluginReturnValue.ERROR;
+        }
+        Helper.setMeldung("Arche ingest was added to the queue");
+        return PluginReturnValue.WAIT;
+    }
+
+    /**
+     * Run the export and ingest in the current thread
+     * 
+     * @return
+     */
+
+    PluginReturnValue runSynchronously() {
+        // requests of this ingest, including the pipeline threads, are scheduled fairly with the other ingests
+        ArcheGovernor.setContext(project.getTitel(), process.getTitel(), governorWeight);
+        report = new IngestReport();
+        RequestStatistics.setCurrent(report.getRequests());
+        TraceSpan trace = startTrace();
+        TrafficRecorder recorder = startRecording();
+        PluginReturnValue result = PluginReturnValue.ERROR;
+        try {
+            result = export();
+            return result;
+        } finally {
+            if (recorder != null) {
+                recorder.close();
+            }
+            RequestStatistics.clearCurrent();
+            ArcheGovernor.clearContext();
+            report.finish(result.name());
+            if (!dryRun) {
+                writeReport();
+            }
+            trace.attribute("goobi.result", result.name()).close();
+        }
+    }
+
+    /**
+     * Start the trace of the run, if tracing is enabled
+     * 
+     * @return the root span, a no-op span if tracing is disabled
+     */
+
+    private TraceSpan startTrace() {
+        Path file = tracingEnabled && !dryRun ? getRunFile("trace", "json") : null;
+        if (file == null) {
+            return Tracing.start("ingest");
+        }
+        return Tracing.startTrace("ingest " + process.getTitel(), file)
+                .attribute("goobi.process.id", process.getId())
+                .attribute("goobi.process.title", process.getTitel())
+                .attribute("goobi.project", project.getTitel());
+    }
+
+    /**
+     * Start the recording of the ARCHE requests of the run, if recording is enabled
+     * 
+     * @return the recording or null
+     */
+
+    private TrafficRecorder startRecording() {
+        Path file = recordingEnabled && !dryRun ? getRunFile("traffic", "jsonl.gz") : null;
+        if (file == null) {
+            return null;
+        }
+        try {
+            return TrafficRecorder.start(file, archeConfiguration.getArcheApiUrl());
+        } catch (IOException e) {
+            log.error("Cannot record the ARCHE requests of process {}", process.getTitel(), e);
+            return null;
+        }
+    }
+
+    /**
+     * Write the performance report of the run to the export folder or, if no export folder is used, to the log folder of the process
+     */
+
+    private void writeReport() {
+        Path file = getRunFile("report", "json");
+        if (file == null) {
+            return;
+        }
+        report.write(file);
+    }
+
+    /**
+     * Get the file for a report of the current run, in the export folder or, if no export folder is used, in the log folder of the process
+     * 
+     * @param type report, trace or traffic
+     * @param extension file extension
+     * @return the file or null, if the process folder cannot be found
+     */
+
+    private Path getRunFile(String type, String extension) {
+        if (exportFolderEnabled) {
+            return Paths.get(exportFolder, process.getTitel() + "_" + type + "." + extension);
+        }
+        try {
+            String timestamp = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss").format(LocalDateTime.now());
+            return Paths.get(process.getProcessDataDirectory(), "logs", "arche_" + type + "_" + timestamp + "." + extension);
+        } catch (IOException | SwapException e) {
+            log.error("Cannot find the log folder of process {}", process.getTitel(), e);
+            return null;
+        }
+    }
+
+    private PluginReturnValue export() {
+        pendingExports.clear();
+        try {
+            return exportAndIngest();
+        } finally {
+            // the export does not depend on the ingest, files that were not copied during the upload are copied now
+            completeExport();
+        }
+    }
+
+    private PluginReturnValue exportAndIngest() {
+        throughput = new ThroughputStatistics(stateFolder);
+        ingestedIdentifiers.clear();
 
         DocStruct logical = null;
         DocStruct anchor = null;
-        Fileformat fileformat = null;
-        Map<Path, List<Path>> files = process.getAllFolderAndFiles();
+        ProcessFolderResolver files = new ProcessFolderResolver(process);
         Path masterFolder = null;
         Path mediaFolder = null;
         Path altoFolder = null;
 
-        for (Path p : files.keySet()) {
-            if (p.getFileName().toString().endsWith("_alto")) {
-                altoFolder = p;
-            } else if (p.getFileName().toString().contains("master")) {
-                masterFolder = p;
-            } else if (p.getFileName().toString().endsWith("_media")) {
-                mediaFolder = p;
-            }
+        try {
+            masterFolder = files.getMasterFolder();
+            mediaFolder = files.getMediaFolder();
+            altoFolder = files.getAltoFolder();
+        } catch (IOException | SwapException e) {
+            log.error(e);
         }
 
         // master folder is missing or empty
@@ -257,15 +512,18 @@ public class ArcheExportStepPlugin implements IStepPluginVersion2 {
             return PluginReturnValue.ERROR;
         }
 
-        try {
-            fileformat = process.readMetadataFile();
-            DigitalDocument dd = fileformat.getDigitalDocument();
+        long phaseStart = System.nanoTime();
+        try (TraceSpan span = Tracing.start("read metadata")) {
+            DigitalDocument dd = FileformatCache.read(process);
+            if (dd == null) {
+                return PluginReturnValue.ERROR;
+            }
             logical = dd.getLogicalDocStruct();
             if (logical.getType().isAnchor()) {
                 anchor = logical;
                 logical = logical.getAllChildren().get(0);
             }
-            int sizeInFolder = files.get(mediaFolder).size();
+            int sizeInFolder = files.listFiles(mediaFolder).size();
             int paginationSize = dd.getPhysicalDocStruct().getAllChildren().size();
             //  pagination length = number of files in media folder
             if (sizeInFolder != paginationSize) {
@@ -282,6 +540,21 @@ public class ArcheExportStepPlugin implements IStepPluginVersion2 {
             // metadata not readable
             return PluginReturnValue.ERROR;
         }
+        report.addPhase(IngestReport.METADATA_READ, phaseStart);
+
+        // size, mime type and image dimensions of all files, read in parallel from the file headers. They are only used for the resources of
+        // the files, which are not part of a validation
+        phaseStart = System.nanoTime();
+        Map<Path, FileTechnicalMetadata> technicalMetadata = new HashMap<>();
+        if (exportFolderEnabled || archeConfiguration.isEnableArcheIngestData()) {
+            try (TraceSpan span = Tracing.start("scan folders")) {
+                technicalMetadata.putAll(technicalMetadataExtractor.extract(files.listFiles(masterFolder)));
+                technicalMetadata.putAll(technicalMetadataExtractor.extract(files.listFiles(mediaFolder)));
+                technicalMetadata.putAll(technicalMetadataExtractor.extract(files.listFiles(altoFolder)));
+                span.attribute("goobi.files", technicalMetadata.size());
+            }
+        }
+        report.addPhase(IngestReport.FOLDER_SCAN, phaseStart);
 
         String language = null;
         String id = null;
@@ -338,6 +611,8 @@ public class ArcheExportStepPlugin implements IStepPluginVersion2 {
         // process level
         String collectionIdentifier = topCollectionIdentifier + "/" + process.getTitel();
 
+        phaseStart = System.nanoTime();
+        TraceSpan modelSpan = Tracing.start("build model");
         Model model = ModelFactory.createDefaultModel();
 
         model.setNsPrefix("api", "https://arche.acdh.oeaw.ac.at/api/");
@@ -348,19 +623,19 @@ public class ArcheExportStepPlugin implements IStepPluginVersion2 {
                 createCollectionResource(language, logical, files, masterFolder, languageCode, model, topCollectionIdentifier, collectionIdentifier,
                         collectionIdentifier);
         String filename = createImageFilename(process.getTitel() + "_master", 1,
-                FilenameUtils.getExtension(files.get(masterFolder).get(0).getFileName().toString()));
+                FilenameUtils.getExtension(files.listFiles(masterFolder).get(0).getFileName().toString()));
         Resource masterFolderResource = createFolderResource(model, process.getTitel() + "_master", collectionIdentifier, processResource,
                 filename, false, docTypeCode);
 
         filename = createImageFilename(process.getTitel() + "_media", 1,
-                FilenameUtils.getExtension(files.get(mediaFolder).get(0).getFileName().toString()));
+                FilenameUtils.getExtension(files.listFiles(mediaFolder).get(0).getFileName().toString()));
         Resource mediaFolderResource = createFolderResource(model, process.getTitel() + "_media", collectionIdentifier, processResource,
                 filename, false, docTypeCode);
 
         Resource altoFolderResource = null;
         if (altoFolder != null) {
             filename = createImageFilename(process.getTitel() + "_ocr", 1,
-                    FilenameUtils.getExtension(files.get(altoFolder).get(0).getFileName().toString()));
+                    FilenameUtils.getExtension(files.listFiles(altoFolder).get(0).getFileName().toString()));
             altoFolderResource = createFolderResource(model, process.getTitel() + "_ocr", collectionIdentifier, processResource,
                     filename, false, docTypeCode);
         }
@@ -382,8 +657,35 @@ public class ArcheExportStepPlugin implements IStepPluginVersion2 {
         // topstruct
         List<Resource> metsResources = createPublicationResource(logical, languageCode, model, collectionIdentifier,
                 anchorUri, null, metadataDefaultLanguage);
+        modelSpan.close();
+        report.addPhase(IngestReport.MODEL_BUILD, phaseStart);
+
+        // folders of the process, in the order they are ingested
+        Map<String, Path> folders = new LinkedHashMap<>();
+        folders.put("_master", masterFolder);
+        folders.put("_media", mediaFolder);
+        if (altoFolder != null) {
+            folders.put("_ocr", altoFolder);
+        }
+
+        if (dryRun) {
+            // only report what an ingest would do, nothing is written or send
+            IngestPlan plan = createPlan(language, logical, anchor, files, folders, languageCode, topCollectionIdentifier, collectionIdentifier,
+                    processResource, anchorUri, metadataDefaultLanguage, docTypeCode, id, access, technicalMetadata);
+            log.info("ARCHE ingest plan for process {}:\n{}", process.getTitel(), plan);
+            Helper.addMessageToProcessJournal(process.getId(), LogType.INFO, "ARCHE ingest plan:\n" + plan);
+            // nothing was ingested, so the step must not be closed
+            Helper.addMessageToProcessJournal(process.getId(), LogType.INFO,
+                    "Dry run: nothing was exported or ingested, the step stays open. Disable dryRun and run the step again to ingest the process.");
+            Helper.setMeldung("Arche ingest plan created");
+            return PluginReturnValue.WAIT;
+        }
+
+        // if the files are exported and ingested, read each file only once and write it to all destinations
+        boolean fanOut = exportFolderEnabled && archeConfiguration.isEnableArcheIngestData();
 
         if (exportFolderEnabled) {
+            TraceSpan exportSpan = Tracing.start("export folder");
 
             // folder
             Model union1 = ModelFactory.createUnion(processResource.getModel(), masterFolderResource.getModel());
@@ -414,7 +716,7 @@ public class ArcheExportStepPlugin implements IStepPluginVersion2 {
             }
 
             // files
-            List<Path> fileList = files.get(masterFolder);
+            List<Path> fileList = files.listFiles(masterFolder);
 
             Path masterDestination = Paths.get(exportFolder, process.getTitel() + "_master");
             if (!StorageProvider.getInstance().isFileExists(masterDestination)) {
@@ -442,14 +744,14 @@ public class ArcheExportStepPlugin implements IStepPluginVersion2 {
                 }
 
                 Resource fileResource = createFileResource(id, topCollectionIdentifier, collectionIdentifier, processResource,
-                        process.getTitel() + "_master", currentFilename, nextFilename, false, access);
+                        process.getTitel() + "_master", currentFilename, nextFilename, false, access, technicalMetadata.get(current));
                 union = ModelFactory.createUnion(union, fileResource.getModel());
 
-                // copy file to destination
-                try {
-                    StorageProvider.getInstance().copyFile(current, Paths.get(masterDestination.toString(), currentFilename));
-                } catch (IOException e) {
-                    log.error(e);
+                // copy file to destination, unless the file is copied while it is read for the ingest
+                if (fanOut) {
+                    pendingExports.put(Paths.get(masterDestination.toString(), currentFilename), current);
+                } else {
+                    copyToExportFolder(current, Paths.get(masterDestination.toString(), currentFilename));
                 }
             }
 
@@ -462,7 +764,7 @@ public class ArcheExportStepPlugin implements IStepPluginVersion2 {
                 }
             }
 
-            fileList = files.get(mediaFolder);
+            fileList = files.listFiles(mediaFolder);
             for (int i = 0; i < fileList.size(); i++) {
                 Path current = fileList.get(i);
                 Path next = null;
@@ -479,14 +781,14 @@ public class ArcheExportStepPlugin implements IStepPluginVersion2 {
                             createImageFilename(process.getTitel() + "_media", i + 2, FilenameUtils.getExtension(next.getFileName().toString()));
                 }
                 Resource fileResource = createFileResource(id, topCollectionIdentifier, collectionIdentifier, processResource,
-                        process.getTitel() + "_media", currentFilename, nextFilename, false, access);
+                        process.getTitel() + "_media", currentFilename, nextFilename, false, access, technicalMetadata.get(current));
                 union = ModelFactory.createUnion(union, fileResource.getModel());
 
-                // copy file to destination
-                try {
-                    StorageProvider.getInstance().copyFile(current, Paths.get(mediaDestination.toString(), currentFilename));
-                } catch (IOException e) {
-                    log.error(e);
+                // copy file to destination, unless the file is copied while it is read for the ingest
+                if (fanOut) {
+                    pendingExports.put(Paths.get(mediaDestination.toString(), currentFilename), current);
+                } else {
+                    copyToExportFolder(current, Paths.get(mediaDestination.toString(), currentFilename));
                 }
             }
 
@@ -500,7 +802,7 @@ public class ArcheExportStepPlugin implements IStepPluginVersion2 {
                         log.error(e);
                     }
                 }
-                fileList = files.get(altoFolder);
+                fileList = files.listFiles(altoFolder);
                 for (int i = 0; i < fileList.size(); i++) {
                     Path current = fileList.get(i);
                     Path next = null;
@@ -516,38 +818,41 @@ public class ArcheExportStepPlugin implements IStepPluginVersion2 {
                                 createImageFilename(process.getTitel() + "_ocr", i + 2, FilenameUtils.getExtension(next.getFileName().toString()));
                     }
                     Resource fileResource = createFileResource(id, topCollectionIdentifier, collectionIdentifier, processResource,
-                            process.getTitel() + "_ocr", currentFilename, nextFilename, false, access);
+                            process.getTitel() + "_ocr", currentFilename, nextFilename, false, access, technicalMetadata.get(current));
                     union = ModelFactory.createUnion(union, fileResource.getModel());
 
-                    // copy file to destination
-                    try {
-                        StorageProvider.getInstance().copyFile(current, Paths.get(altoDestination.toString(), currentFilename));
-                    } catch (IOException e) {
-                        log.error(e);
+                    // copy file to destination, unless the file is copied while it is read for the ingest
+                    if (fanOut) {
+                        pendingExports.put(Paths.get(altoDestination.toString(), currentFilename), current);
+                    } else {
+                        copyToExportFolder(current, Paths.get(altoDestination.toString(), currentFilename));
                     }
                 }
             }
 
+            phaseStart = System.nanoTime();
             try (OutputStream out = new FileOutputStream(exportFolder + process.getTitel() + ".ttl")) {
                 RDFDataMgr.write(out, union, RDFFormat.TURTLE_PRETTY);
             } catch (IOException e) {
                 log.error(e);
             }
+            report.addPhase(IngestReport.TTL_WRITE, phaseStart);
 
             // meta.xml, meta_anchor.xml
             try {
                 Path metaDestination = Paths.get(exportFolder, process.getTitel() + "_meta.xml");
-                StorageProvider.getInstance().copyFile(Paths.get(process.getMetadataFilePath()), metaDestination);
+                copyToExportFolder(Paths.get(process.getMetadataFilePath()), metaDestination);
 
                 Path anchorSource = Paths.get(process.getMetadataFilePath().replace("meta.xml", "meta_anchor.xml"));
                 if (StorageProvider.getInstance().isFileExists(anchorSource)) {
                     Path anchorDestination = Paths.get(exportFolder, process.getTitel() + "_meta_anchor.xml");
-                    StorageProvider.getInstance().copyFile(anchorSource, anchorDestination);
+                    copyToExportFolder(anchorSource, anchorDestination);
                 }
 
             } catch (IOException | SwapException e) {
                 log.error(e);
             }
+            exportSpan.close();
         }
 
         if (archeConfiguration.isEnableArcheIngestValidation() || archeConfiguration.isEnableArcheIngestData()) {
@@ -561,9 +866,19 @@ public class ArcheExportStepPlugin implements IStepPluginVersion2 {
                 log.error(e);
             }
 
-            try (Client client =
-                    ArcheAPI.getClient(archeConfiguration.getArcheUserName(), archeConfiguration.getArchePassword())) {
-                TransactionInfo ti = ArcheAPI.startTransaction(client, archeConfiguration.getArcheApiUrl());
+            Client client = sharedClient;
+            if (client == null) {
+                // one connection pool for all ingests of the application
+                client = ArcheAPI.getSharedClient(archeConfiguration.getArcheUserName(), archeConfiguration.getArchePassword());
+            }
+            TransactionRegistry transactions = TransactionRegistry.getInstance(Paths.get(stateFolder, "transactions"));
+            // transactions left open by an earlier run of the application may lock resources of this ingest
+            transactions.reapStaleTransactions(client);
+            // the transaction is cancelled on every path that does not commit it
+            try (TraceSpan span = Tracing.start("ingest");
+                    ArcheTransaction transaction =
+                            ArcheTransaction.start(client, archeConfiguration.getArcheApiUrl(), transactions, process.getTitel())) {
+                TransactionInfo ti = transaction.getInfo();
                 model = resetModel(topCollectionIdentifier);
                 Resource validationResource = createCollectionResource(language, logical,
                         files, masterFolder, languageCode, model, topCollectionIdentifier, collectionIdentifier,
@@ -571,8 +886,9 @@ public class ArcheExportStepPlugin implements IStepPluginVersion2 {
                 model = resetModel(topCollectionIdentifier);
 
                 boolean success = true;
+                Map<String, String> checksums = new ConcurrentSkipListMap<>();
 
-                String location = ArcheAPI.uploadMetadata(client, archeConfiguration.getArcheApiUrl(), ti, validationResource);
+                String location = uploadMetadata(client, ti, validationResource);
                 if (location == null) {
                     // ingest failed, abort
                     return PluginReturnValue.ERROR;
@@ -585,7 +901,7 @@ public class ArcheExportStepPlugin implements IStepPluginVersion2 {
                             createPublicationResource(anchor, languageCode, model, collectionIdentifier, null, archeConfiguration.getArcheApiUrl(),
                                     metadataDefaultLanguage);
                     for (Resource r : anchorMetsResources) {
-                        location = ArcheAPI.uploadMetadata(client, archeConfiguration.getArcheApiUrl(), ti, r);
+                        location = uploadMetadata(client, ti, r);
                         if (location == null) {
                             // ingest failed, abort
                             return PluginReturnValue.ERROR;
@@ -597,7 +913,7 @@ public class ArcheExportStepPlugin implements IStepPluginVersion2 {
                 metsResources = createPublicationResource(logical, languageCode, model, collectionIdentifier,
                         anchorUri, archeConfiguration.getArcheApiUrl(), metadataDefaultLanguage);
                 for (Resource r : metsResources) {
-                    location = ArcheAPI.uploadMetadata(client, archeConfiguration.getArcheApiUrl(), ti, r);
+                    location = uploadMetadata(client, ti, r);
                     if (location == null) {
                         // ingest failed, abort
                         return PluginReturnValue.ERROR;
@@ -609,12 +925,12 @@ public class ArcheExportStepPlugin implements IStepPluginVersion2 {
                     if (metaAnchorResource != null) {
                         model = resetModel(topCollectionIdentifier);
                         metaAnchorResource = createMetadata(anchor, model, collectionIdentifier, processResource, true);
-                        location = ArcheAPI.uploadMetadata(client, archeConfiguration.getArcheApiUrl(), ti, metaAnchorResource);
+                        location = uploadMetadata(client, ti, metaAnchorResource);
                         if (location == null) {
                             // ingest failed, abort
                             return PluginReturnValue.ERROR;
                         }
-                        success = ArcheAPI.uploadBinary(client, location, ti, metaAnchorFile);
+                        success = uploadXml(client, location, ti, metaAnchorFile);
                         if (!success) {
                             // file upload failed, abort
                             return PluginReturnValue.ERROR;
@@ -622,69 +938,79 @@ public class ArcheExportStepPlugin implements IStepPluginVersion2 {
                     }
                     model = resetModel(topCollectionIdentifier);
                     metaResource = createMetadata(logical, model, collectionIdentifier, processResource, true);
-                    location = ArcheAPI.uploadMetadata(client, archeConfiguration.getArcheApiUrl(), ti, metaResource);
+                    location = uploadMetadata(client, ti, metaResource);
                     if (location == null) {
                         // ingest failed, abort
                         return PluginReturnValue.ERROR;
                     }
-                    success = ArcheAPI.uploadBinary(client, location, ti, metaFile);
-                    if (!success) {
-                        // file upload failed, abort
-                        return PluginReturnValue.ERROR;
-                    }
-
-                    model = resetModel(topCollectionIdentifier);
-                    filename = createImageFilename(process.getTitel() + "_master", 1,
-                            FilenameUtils.getExtension(files.get(masterFolder).get(0).getFileName().toString()));
-                    masterFolderResource = createFolderResource(model, process.getTitel() + "_master", collectionIdentifier, processResource,
-                            filename, true, docTypeCode);
-
-                    ArcheAPI.uploadMetadata(client, archeConfiguration.getArcheApiUrl(), ti, masterFolderResource);
-                    List<Path> fileList = files.get(masterFolder);
-                    success =
-                            ingestFiles(fileList, "_master", id, topCollectionIdentifier, collectionIdentifier, processResource, client, ti, access);
+                    success = uploadXml(client, location, ti, metaFile);
                     if (!success) {
                         // file upload failed, abort
                         return PluginReturnValue.ERROR;
                     }
 
-                    model = resetModel(topCollectionIdentifier);
-                    filename = createImageFilename(process.getTitel() + "_media", 1,
-                            FilenameUtils.getExtension(files.get(mediaFolder).get(0).getFileName().toString()));
-                    masterFolderResource = createFolderResource(model, process.getTitel() + "_media", collectionIdentifier, processResource,
-                            filename, true, docTypeCode);
-
-                    ArcheAPI.uploadMetadata(client, archeConfiguration.getArcheApiUrl(), ti, masterFolderResource);
-                    fileList = files.get(mediaFolder);
-                    success = ingestFiles(fileList, "_media", id, topCollectionIdentifier, collectionIdentifier, processResource, client, ti, access);
-                    if (!success) {
-                        // file upload failed, abort
-                        return PluginReturnValue.ERROR;
+                    // folder resources first, the files refer to them
+                    for (Entry<String, Path> folder : folders.entrySet()) {
+                        model = resetModel(topCollectionIdentifier);
+                        filename = createImageFilename(process.getTitel() + folder.getKey(), 1,
+                                FilenameUtils.getExtension(files.listFiles(folder.getValue()).get(0).getFileName().toString()));
+                        Resource folderResource = createFolderResource(model, process.getTitel() + folder.getKey(), collectionIdentifier,
+                                processResource, filename, true, docTypeCode);
+                        location = uploadMetadata(client, ti, folderResource);
+                        if (location == null) {
+                            // ingest failed, abort
+                            return PluginReturnValue.ERROR;
+                        }
                     }
 
-                    if (altoFolder != null) {
-                        model = resetModel(topCollectionIdentifier);
-                        filename = createImageFilename(process.getTitel() + "_ocr", 1,
-                                FilenameUtils.getExtension(files.get(altoFolder).get(0).getFileName().toString()));
-                        masterFolderResource = createFolderResource(model, process.getTitel() + "_ocr", collectionIdentifier, processResource,
-                                filename, true, docTypeCode);
-
-                        ArcheAPI.uploadMetadata(client, archeConfiguration.getArcheApiUrl(), ti, masterFolderResource);
-                        fileList = files.get(altoFolder);
-                        success =
-                                ingestFiles(fileList, "_ocr", id, topCollectionIdentifier, collectionIdentifier, processResource, client, ti, access);
+                    if (filesPerTransaction > 0) {
+                        // commit the structure, the files follow in separate transactions
+                        if (!commit(transaction)) {
+                            return PluginReturnValue.ERROR;
+                        }
+                        transactionCommitted();
+                        success = ingestFilesInChunks(folders, files, id, topCollectionIdentifier, collectionIdentifier, processResource, client,
+                                transactions, access, fanOut, checksums, technicalMetadata);
+                        if (!success) {
+                            // file upload failed, abort
+                            return PluginReturnValue.ERROR;
+                        }
+                    } else {
+                        Iterable<FileJob> jobs;
+                        if (largestFirst) {
+                            // the sizes of all files are needed before the first upload
+                            List<FileJob> allJobs = new ArrayList<>();
+                            for (Entry<String, Path> folder : folders.entrySet()) {
+                                allJobs.addAll(createFileJobs(process.getTitel() + folder.getKey(), files.listFiles(folder.getValue())));
+                            }
+                            jobs = sortLargestFirst(allJobs, technicalMetadata);
+                        } else {
+                            // scan: the folders are listed when the pipeline reaches them
+                            jobs = () -> folders.entrySet()
+                                    .stream()
+                                    .flatMap(folder -> createFileJobs(process.getTitel() + folder.getKey(), files.listFiles(folder.getValue()))
+                                            .stream())
+                                    .iterator();
+                        }
+                        success = ingestFiles(jobs, id, topCollectionIdentifier, collectionIdentifier, processResource, client, ti, access, fanOut,
+                                checksums, technicalMetadata);
                         if (!success) {
                             // file upload failed, abort
                             return PluginReturnValue.ERROR;
                         }
 
+                        if (!commit(transaction)) {
+                            return PluginReturnValue.ERROR;
+                        }
+                        transactionCommitted();
+                    }
+                    if (fanOut) {
+                        writeChecksums(checksums);
                     }
-
-                    ArcheAPI.finishTransaction(client, archeConfiguration.getArcheApiUrl(), ti);
                     Helper.setMeldung("Arche ingest successful");
                 } else {
 
-                    ArcheAPI.cancelTransaction(client, archeConfiguration.getArcheApiUrl(), ti);
+                    transaction.cancel();
                     Helper.setMeldung("Arche validation successful");
                 }
             } catch (ProcessingException e) {
@@ -696,7 +1022,168 @@ public class ArcheExportStepPlugin implements IStepPluginVersion2 {
         return PluginReturnValue.FINISH;
     }
 
-    private Model resetModel(String topCollectionIdentifier) {
+    /**
+     * Upload a metadata resource, measure the duration of the request and remember the identifier of the resource
+     * 
+     * @param client
+     * @param ti
+     * @param resource
+     * @return
+     */
+
+    private String uploadMetadata(Client client, TransactionInfo ti, Resource resource) {
+        return uploadMetadata(client, ti, resource, serialize(resource));
+    }
+
+    private String uploadMetadata(Client client, TransactionInfo ti, Resource resource, byte[] turtle) {
+        long start = System.nanoTime();
+        String location;
+        try (TraceSpan span = Tracing.start("upload metadata")) {
+            if (span.isRecording()) {
+                span.attribute("arche.identifier", getIdentifier(resource));
+                span.attribute("http.request.body.size", turtle.length);
+            }
+            location = ArcheAPI.uploadMetadata(client, archeConfiguration.getArcheApiUrl(), ti, resource, turtle);
+            if (location == null) {
+                span.error("upload failed");
+            }
+        }
+        report.addPhase(IngestReport.UPLOAD_METADATA, start);
+        if (location != null) {
+            throughput.recordMetadata(System.nanoTime() - start);
+            ingestedIdentifiers.add(getIdentifier(resource));
+        }
+        return location;
+    }
+
+    private byte[] serialize(Resource resource) {
+        long start = System.nanoTime();
+        byte[] turtle = ArcheAPI.serialize(resource.getModel());
+        report.addPhase(IngestReport.TTL_WRITE, start);
+        return turtle;
+    }
+
+    private boolean uploadXml(Client client, String location, TransactionInfo ti, Path file) {
+        long start = System.nanoTime();
+        boolean uploaded;
+        try (TraceSpan span = Tracing.start("upload xml")) {
+            span.attribute("goobi.file", file.getFileName().toString());
+            uploaded = ArcheAPI.uploadBinary(client, location, ti, file, MediaType.APPLICATION_XML, binaryStreams);
+        }
+        report.addPhase(IngestReport.UPLOAD_XML, start);
+        if (uploaded) {
+            report.addUploadedBytes(binaryStreams.size(file));
+        }
+        return uploaded;
+    }
+
+    private boolean commit(ArcheTransaction transaction) {
+        long start = System.nanoTime();
+        boolean committed;
+        try (TraceSpan span = Tracing.start("commit")) {
+            committed = transaction.commit();
+        }
+        report.addPhase(IngestReport.COMMIT, start);
+        return committed;
+    }
+
+    /**
+     * Copy the files of the export folder that were not copied completely while they were uploaded, e.g. because the ingest failed or the files
+     * were already ingested in an earlier run
+     */
+
+    private void completeExport() {
+        for (Entry<Path, Path> export : pendingExports.entrySet()) {
+            copyToExportFolder(export.getValue(), export.getKey());
+        }
+        pendingExports.clear();
+    }
+
+    private void copyToExportFolder(Path source, Path destination) {
+        long start = System.nanoTime();
+        try {
+            StorageProvider.getInstance().copyFile(source, destination);
+            report.addCopiedBytes(binaryStreams.size(destination));
+        } catch (IOException e) {
+            log.error(e);
+        }
+        report.addPhase(IngestReport.FILE_COPY, start);
+    }
+
+    private String getIdentifier(Resource resource) {
+        Model model = resource.getModel();
+        Statement identifier = resource.getProperty(model.createProperty(model.getNsPrefixURI("acdh"), "hasIdentifier"));
+        return identifier == null ? resource.getURI() : identifier.getObject().toString();
+    }
+
+    /**
+     * Create the resources of an ingest without sending them. The requests and bytes are counted, resources already known from earlier
+     * ingests are counted as expected conflicts.
+     * 
+     * @return
+     */
+
+    private IngestPlan createPlan(String language, DocStruct logical, DocStruct anchor, ProcessFolderResolver files, Map<String, Path> folders,
+            String languageCode, String topCollectionIdentifier, String collectionIdentifier, Resource processResource, String anchorUri,
+            String metadataDefaultLanguage, String docTypeCode, String id, String access, Map<Path, FileTechnicalMetadata> technicalMetadata) {
+        IngestPlan plan = new IngestPlan();
+        if (!archeConfiguration.isEnableArcheIngestValidation() && !archeConfiguration.isEnableArcheIngestData()) {
+            return plan;
+        }
+        IdentifierIndex index = identifierIndexEnabled ? new IdentifierIndex(stateFolder) : null;
+        if (index != null && !index.isEmpty()) {
+            plan.enableConflictCount();
+        }
+        String apiUrl = archeConfiguration.getArcheApiUrl();
+        List<Resource> resources = new ArrayList<>();
+        resources.add(createCollectionResource(language, logical, files, folders.get("_master"), languageCode, resetModel(topCollectionIdentifier),
+                topCollectionIdentifier, collectionIdentifier, apiUrl));
+        if (anchor != null) {
+            resources.addAll(createPublicationResource(anchor, languageCode, resetModel(topCollectionIdentifier), collectionIdentifier, null, apiUrl,
+                    metadataDefaultLanguage));
+        }
+        resources.addAll(createPublicationResource(logical, languageCode, resetModel(topCollectionIdentifier), collectionIdentifier, anchorUri,
+                apiUrl, metadataDefaultLanguage));
+
+        if (archeConfiguration.isEnableArcheIngestData()) {
+            try {
+                Path metaFile = Paths.get(process.getMetadataFilePath());
+                if (anchor != null) {
+                    resources.add(createMetadata(anchor, resetModel(topCollectionIdentifier), collectionIdentifier, processResource, true));
+                    plan.addBinary(process.getTitel() + "_meta", binaryStreams.size(Paths.get(metaFile.toString().replace(".xml", "_anchor.xml"))));
+                }
+                resources.add(createMetadata(logical, resetModel(topCollectionIdentifier), collectionIdentifier, processResource, true));
+                plan.addBinary(process.getTitel() + "_meta", binaryStreams.size(metaFile));
+            } catch (IOException | SwapException e) {
+                log.error(e);
+            }
+            for (Entry<String, Path> folder : folders.entrySet()) {
+                String folderName = process.getTitel() + folder.getKey();
+                List<Path> fileList = files.listFiles(folder.getValue());
+                String filename = createImageFilename(folderName, 1, FilenameUtils.getExtension(fileList.get(0).getFileName().toString()));
+                resources.add(createFolderResource(resetModel(topCollectionIdentifier), folderName, collectionIdentifier, processResource, filename,
+                        true, docTypeCode));
+                for (FileJob job : createFileJobs(folderName, fileList)) {
+                    resources.add(createFileResource(id, topCollectionIdentifier, collectionIdentifier, processResource, folderName, job.filename(),
+                            job.nextFilename(), true, access, null));
+                    FileTechnicalMetadata technical = technicalMetadata.get(job.file());
+                    plan.addBinary(folderName, technical == null ? binaryStreams.size(job.file()) : technical.getSize());
+                }
+            }
+        }
+        List<String> identifiers = new ArrayList<>();
+        for (Resource resource : resources) {
+            identifiers.add(getIdentifier(resource));
+        }
+        Set<String> existing = index == null ? Set.of() : index.findExisting(identifiers);
+        for (String identifier : identifiers) {
+            plan.addMetadataRequest(existing.contains(identifier));
+        }
+        plan.setProjectedMillis(throughput.estimateMillis(plan.getMetadataRequests(), plan.getTotalBytes(), pipelineUploadThreads));
+        return plan;
+    }
+
+    Model resetModel(String topCollectionIdentifier) {
         Model model;
         model = ModelFactory.createDefaultModel();
         model.setNsPrefix("api", "https://arche.acdh.oeaw.ac.at/api/");
@@ -705,42 +1192,290 @@ public class ArcheExportStepPlugin implements IStepPluginVersion2 {
         return model;
     }
 
-    private boolean ingestFiles(List<Path> fileList, String folderPrefix, String id, String topCollectionIdentifier,
-            String collectionIdentifier, Resource processResource, Client client, TransactionInfo ti, String access) {
-        boolean success;
-        for (int i = 0; i < fileList.size(); i++) {
-            Path current = fileList.get(i);
-            Path next = null;
-            if (i + 1 < fileList.size()) {
-                next = fileList.get(i + 1);
+    /**
+     * Ingest the files. The files are processed in a pipeline: the resources are created and serialized and the metadata and binaries are
+     * uploaded. Each stage has its own threads, so preparing the next resources overlaps with the uploads.
+     * 
+     * @param jobs the files to ingest
+     * @param id
+     * @param topCollectionIdentifier
+     * @param collectionIdentifier
+     * @param processResource
+     * @param client
+     * @param ti
+     * @param access
+     * @param fanOut
+     * @param checksums
+     * @param technicalMetadata
+     * @return
+     */
+
+    private boolean ingestFiles(Iterable<FileJob> jobs, String id, String topCollectionIdentifier, String collectionIdentifier,
+            Resource processResource, Client client, TransactionInfo ti, String access, boolean fanOut, Map<String, String> checksums,
+            Map<Path, FileTechnicalMetadata> technicalMetadata) {
+        // the pipeline threads inherit this span, the spans of the files are its children
+        try (TraceSpan span = Tracing.start("ingest files")) {
+            return ingestFilesInPipeline(jobs, id, topCollectionIdentifier, collectionIdentifier, processResource, client, ti, access, fanOut,
+                    checksums, technicalMetadata);
+        }
+    }
+
+    private boolean ingestFilesInPipeline(Iterable<FileJob> jobs, String id, String topCollectionIdentifier, String collectionIdentifier,
+            Resource processResource, Client client, TransactionInfo ti, String access, boolean fanOut, Map<String, String> checksums,
+            Map<Path, FileTechnicalMetadata> technicalMetadata) {
+        return StagedPipeline.from("arche-" + process.getId(), jobs, pipelineQueueSize)
+                .then("build", pipelineBuildThreads, job -> {
+                    long start = System.nanoTime();
+                    Resource resource;
+                    try (TraceSpan span = Tracing.start("build file")) {
+                        span.attribute("goobi.file", job.filename());
+                        resource = createFileResource(id, topCollectionIdentifier, collectionIdentifier, processResource, job.folderName(),
+                                job.filename(), job.nextFilename(), true, access, null);
+                    }
+                    report.addPhase(IngestReport.MODEL_BUILD, start);
+                    return new BuiltFile(job, resource);
+                })
+                .then("serialize", pipelineSerializeThreads, built -> new SerializedFile(built.job(), built.resource(), serialize(built.resource())))
+                .run("upload", pipelineUploadThreads, serialized -> {
+                    try (TraceSpan span = Tracing.start("upload file")) {
+                        span.attribute("goobi.file", serialized.job().filename());
+                        boolean uploaded = uploadFile(serialized, client, ti, fanOut, checksums, technicalMetadata);
+                        if (!uploaded) {
+                            span.error("upload failed");
+                        }
+                        return uploaded;
+                    }
+                });
+    }
+
+    /**
+     * Upload the metadata and the content of a file
+     * 
+     * @return true, if both were uploaded
+     */
+
+    private boolean uploadFile(SerializedFile serialized, Client client, TransactionInfo ti, boolean fanOut, Map<String, String> checksums,
+            Map<Path, FileTechnicalMetadata> technicalMetadata) {
+        FileJob job = serialized.job();
+        String fileUri = uploadMetadata(client, ti, serialized.resource(), serialized.turtle());
+        if (fileUri == null) {
+            return false;
+        }
+        if (!archeConfiguration.isEnableArcheIngestData()) {
+            return true;
+        }
+        FileTechnicalMetadata technical = technicalMetadata.get(job.file());
+        String mimeType = technical == null ? null : technical.getMimeType();
+        long start = System.nanoTime();
+        boolean uploaded;
+        if (fanOut) {
+            uploaded = uploadAndExportBinary(client, fileUri, ti, job.file(), mimeType, job.folderName(), job.filename(), checksums);
+        } else {
+            uploaded = ArcheAPI.uploadBinary(client, fileUri, ti, job.file(), mimeType, binaryStreams);
+        }
+        report.addPhase(IngestReport.UPLOAD_BINARY, start);
+        if (uploaded) {
+            long size = technical == null ? binaryStreams.size(job.file()) : technical.getSize();
+            throughput.recordBinary(size, System.nanoTime() - start);
+            report.addUploadedBytes(size);
+            if (fanOut) {
+                report.addCopiedBytes(size);
             }
+        }
+        return uploaded;
+    }
 
-            String currentFilename =
-                    createImageFilename(process.getTitel() + folderPrefix, i + 1, FilenameUtils.getExtension(current.getFileName().toString()));
+    /**
+     * Ingest the files in several transactions with at most filesPerTransaction files each. Committed chunks are recorded in the state folder
+     * and skipped when the ingest is repeated.
+     * 
+     * @return
+     */
 
-            String nextFilename = null;
-            if (next != null) {
-                nextFilename =
-                        createImageFilename(process.getTitel() + folderPrefix, i + 2, FilenameUtils.getExtension(next.getFileName().toString()));
+    private boolean ingestFilesInChunks(Map<String, Path> folders, ProcessFolderResolver files, String id, String topCollectionIdentifier,
+            String collectionIdentifier, Resource processResource, Client client, TransactionRegistry transactions, String access, boolean fanOut,
+            Map<String, String> checksums, Map<Path, FileTechnicalMetadata> technicalMetadata) {
+        List<FileJob> jobs = new ArrayList<>();
+        StringBuilder names = new StringBuilder();
+        for (Entry<String, Path> folder : folders.entrySet()) {
+            for (FileJob job : createFileJobs(process.getTitel() + folder.getKey(), files.listFiles(folder.getValue()))) {
+                jobs.add(job);
+                // a replaced file with the same name must be ingested again
+                names.append(job.file()).append(' ').append(getFileStamp(job.file(), technicalMetadata.get(job.file()))).append('\n');
             }
+        }
+        String signature = filesPerTransaction + "-" + DigestUtils.sha256Hex(names.toString());
+        ChunkProgress progress = ChunkProgress.load(stateFolder, archeConfiguration.getArcheApiUrl(), process.getId(), signature);
+        checksums.putAll(progress.getChecksums());
 
-            Resource fileResource = createFileResource(id, topCollectionIdentifier, collectionIdentifier, processResource,
-                    process.getTitel() + folderPrefix, currentFilename, nextFilename, true, access);
-            String fileUri = ArcheAPI.uploadMetadata(client, archeConfiguration.getArcheApiUrl(), ti, fileResource);
-            if (archeConfiguration.isEnableArcheIngestData()) {
-                success = ArcheAPI.uploadBinary(client, fileUri, ti, current);
-                if (!success) {
-                    // file upload failed, abort
+        int chunks = (jobs.size() + filesPerTransaction - 1) / filesPerTransaction;
+        for (int chunk = 0; chunk < chunks; chunk++) {
+            if (progress.isDone(chunk)) {
+                log.debug("Chunk {} of process {} was already ingested", chunk + 1, process.getTitel());
+                continue;
+            }
+            List<FileJob> chunkJobs = jobs.subList(chunk * filesPerTransaction, Math.min(jobs.size(), (chunk + 1) * filesPerTransaction));
+            if (largestFirst) {
+                // the chunks stay the same, only the order within a chunk changes
+                chunkJobs = sortLargestFirst(chunkJobs, technicalMetadata);
+            }
+            try (TraceSpan span = Tracing.start("chunk " + (chunk + 1));
+                    ArcheTransaction transaction =
+                            ArcheTransaction.start(client, archeConfiguration.getArcheApiUrl(), transactions, process.getTitel())) {
+                span.attribute("goobi.files", chunkJobs.size());
+                if (!ingestFiles(chunkJobs, id, topCollectionIdentifier, collectionIdentifier, processResource, client, transaction.getInfo(),
+                        access, fanOut, checksums, technicalMetadata)) {
+                    return false;
+                }
+                if (!commit(transaction)) {
                     return false;
                 }
             }
+            transactionCommitted();
+            progress.markDone(chunk, checksums);
+            log.info("Ingested chunk {} of {} of process {}", chunk + 1, chunks, process.getTitel());
         }
+        progress.delete();
         return true;
     }
 
-    private List<Resource> createPublicationResource(DocStruct docstruct, String languageCode, Model model, String collectionIdentifier,
+    /**
+     * Size and modification date of a file, used to detect changed files
+     * 
+     * @param file
+     * @param technical known metadata of the file or null
+     * @return
+     */
+
+    private String getFileStamp(Path file, FileTechnicalMetadata technical) {
+        StorageProvider storage = StorageProvider.getInstance();
+        try {
+            long size = technical == null ? storage.getFileSize(file) : technical.getSize();
+            return size + " " + storage.getLastModifiedDate(file);
+        } catch (IOException e) {
+            log.error("Cannot read size and date of {}", file, e);
+            // unknown, so the chunks are ingested again
+            return "unknown " + System.nanoTime();
+        }
+    }
+
+    /**
+     * Record the identifiers and request durations of a committed transaction
+     */
+
+    private void transactionCommitted() {
+        if (identifierIndexEnabled) {
+            new IdentifierIndex(stateFolder).addAll(ingestedIdentifiers);
+        }
+        ingestedIdentifiers.clear();
+        throughput.save();
+    }
+
+    /**
+     * Order the files by size, largest first. The upload threads take the next file as soon as they are free, so the large files are spread over
+     * all threads and the small files fill the gaps at the end, instead of a single large upload keeping the transaction open.
+     * 
+     * @param jobs
+     * @param technicalMetadata
+     * @return
+     */
+
+    private List<FileJob> sortLargestFirst(List<FileJob> jobs, Map<Path, FileTechnicalMetadata> technicalMetadata) {
+        Map<Path, Long> sizes = new HashMap<>();
+        for (FileJob job : jobs) {
+            FileTechnicalMetadata technical = technicalMetadata.get(job.file());
+            sizes.put(job.file(), technical == null ? binaryStreams.size(job.file()) : technical.getSize());
+        }
+        List<FileJob> sorted = new ArrayList<>(jobs);
+        sorted.sort(Comparator.comparingLong((FileJob job) -> sizes.get(job.file())).reversed());
+        return sorted;
+    }
+
+    private List<FileJob> createFileJobs(String folderName, List<Path> fileList) {
+        List<FileJob> jobs = new ArrayList<>(fileList.size());
+        for (int i = 0; i < fileList.size(); i++) {
+            Path current = fileList.get(i);
+            String currentFilename = createImageFilename(folderName, i + 1, FilenameUtils.getExtension(current.getFileName().toString()));
+            String nextFilename = null;
+            if (i + 1 < fileList.size()) {
+                nextFilename =
+                        createImageFilename(folderName, i + 2, FilenameUtils.getExtension(fileList.get(i + 1).getFileName().toString()));
+            }
+            jobs.add(new FileJob(current, folderName, currentFilename, nextFilename));
+        }
+        return jobs;
+    }
+
+    /**
+     * Read the file once and pass the content to the ARCHE upload, the export folder and the checksum at the same time. The copy is written to a
+     * temporary file and only moved into the export folder if the whole file was read, otherwise it is deleted and the file is copied after the
+     * ingest.
+     * 
+     * @param client
+     * @param fileUri
+     * @param ti
+     * @param source
+     * @param mimeType
+     * @param folderName
+     * @param filename
+     * @param checksums
+     * @return
+     */
+
+    private boolean uploadAndExportBinary(Client client, String fileUri, TransactionInfo ti, Path source, String mimeType, String folderName,
+            String filename, Map<String, String> checksums) {
+        Path destination = Paths.get(exportFolder, folderName, filename);
+        Path partial = Paths.get(exportFolder, folderName, filename + ".part");
+        MessageDigest digest = DigestUtils.getSha256Digest();
+        boolean success = false;
+        FanOutInputStream tee = null;
+        try (InputStream in = binaryStreams.open(source);
+                OutputStream copy = StorageProvider.getInstance().newOutputStream(partial)) {
+            tee = new FanOutInputStream(in, copy, new DigestOutputStream(OutputStream.nullOutputStream(), digest));
+            success = ArcheAPI.uploadBinary(client, fileUri, ti, filename, mimeType, tee, binaryStreams.size(source));
+        } catch (IOException e) {
+            log.error(e);
+            success = false;
+        } finally {
+            // the copy is complete, if the upload read the whole file, even if ARCHE rejected it
+            try {
+                if (tee != null && tee.isComplete()) {
+                    StorageProvider.getInstance().move(partial, destination);
+                    pendingExports.remove(destination);
+                    checksums.put(folderName + "/" + filename, Hex.encodeHexString(digest.digest()));
+                } else if (StorageProvider.getInstance().isFileExists(partial)) {
+                    StorageProvider.getInstance().deleteFile(partial);
+                }
+            } catch (IOException e) {
+                log.error("Cannot move the copy of {} into the export folder", source, e);
+            }
+        }
+        return success;
+    }
+
+    /**
+     * Write the checksums of the exported files into a sha256sum compatible file in the export folder
+     * 
+     * @param checksums
+     */
+
+    private void writeChecksums(Map<String, String> checksums) {
+        Path checksumFile = Paths.get(exportFolder, process.getTitel() + ".sha256");
+        try (OutputStream out = StorageProvider.getInstance().newOutputStream(checksumFile)) {
+            for (Entry<String, String> entry : checksums.entrySet()) {
+                out.write((entry.getValue() + "  " + entry.getKey() + "\n").getBytes(StandardCharsets.UTF_8));
+            }
+        } catch (IOException e) {
+            log.error(e);
+        }
+    }
+
+    List<Resource> createPublicationResource(DocStruct docstruct, String languageCode, Model model, String collectionIdentifier,
             String anchorResourceId, String resourceIdentifier, String defaultLanguageCode) {
 
+        ResourceBuildEvent buildEvent = new ResourceBuildEvent();
+        buildEvent.begin();
+        long start = System.nanoTime();
         String pubId = null;
         for (Metadata md : docstruct.getAllMetadata()) {
             switch (md.getType().getName()) {
@@ -908,6 +1643,7 @@ public class ArcheExportStepPlugin implements IStepPluginVersion2 {
                 }
             }
         }
+        resourceBuilt(buildEvent, "publication", resources.isEmpty() ? null : resources.get(0), start);
         return resources;
     }
 
@@ -989,9 +1725,32 @@ public class ArcheExportStepPlugin implements IStepPluginVersion2 {
         return identifier;
     }
 
-    private Resource createFileResource(String id, String topCollectionIdentifier, String collectionIdentifier, Resource processResource,
-            String folderName, String currentFile, String nextFile, boolean ingest, String accessStatus) {
+    /**
+     * Record the time to build a resource in the metrics and the flight recorder
+     * 
+     * @param event
+     * @param type
+     * @param resource the created resource or null
+     * @param start
+     */
+
+    private void resourceBuilt(ResourceBuildEvent event, String type, Resource resource, long start) {
+        ArcheMetrics.getInstance().recordModelBuild(type, System.nanoTime() - start);
+        event.end();
+        if (event.shouldCommit() && resource != null) {
+            event.type = type;
+            event.resource = resource.getURI();
+            event.statements = resource.getModel().size();
+            event.commit();
+        }
+    }
+
+    Resource createFileResource(String id, String topCollectionIdentifier, String collectionIdentifier, Resource processResource,
+            String folderName, String currentFile, String nextFile, boolean ingest, String accessStatus, FileTechnicalMetadata technical) {
 
+        ResourceBuildEvent buildEvent = new ResourceBuildEvent();
+        buildEvent.begin();
+        long start = System.nanoTime();
         Model model = ModelFactory.createDefaultModel();
         model.setNsPrefix("api", "https://arche.acdh.oeaw.ac.at/api/");
         model.setNsPrefix("acdh", "https://vocabs.acdh.oeaw.ac.at/schema#");
@@ -1053,12 +1812,29 @@ public class ArcheExportStepPlugin implements IStepPluginVersion2 {
 
         }
 
+        // technical metadata, during the ingest these values are filled in by ARCHE from the uploaded binary
+        if (technical != null) {
+            resource.addProperty(model.createProperty(model.getNsPrefixURI("acdh"), "hasFormat"), technical.getMimeType());
+            resource.addProperty(model.createProperty(model.getNsPrefixURI("acdh"), "hasBinarySize"), String.valueOf(technical.getSize()),
+                    XSDDatatype.XSDlong);
+            if (technical.getWidth() != null && technical.getHeight() != null) {
+                resource.addProperty(model.createProperty(model.getNsPrefixURI("acdh"), "hasPixelWidth"), String.valueOf(technical.getWidth()),
+                        XSDDatatype.XSDnonNegativeInteger);
+                resource.addProperty(model.createProperty(model.getNsPrefixURI("acdh"), "hasPixelHeight"), String.valueOf(technical.getHeight()),
+                        XSDDatatype.XSDnonNegativeInteger);
+            }
+        }
+
+        resourceBuilt(buildEvent, "file", resource, start);
         return resource;
     }
 
-    private Resource createCollectionResource(String language, DocStruct logical, Map<Path, List<Path>> files, Path masterFolder, String languageCode,
+    Resource createCollectionResource(String language, DocStruct logical, ProcessFolderResolver files, Path masterFolder, String languageCode,
             Model model, String topCollectionIdentifier, String collectionIdentifier, String resourceIdentifier) {
 
+        ResourceBuildEvent buildEvent = new ResourceBuildEvent();
+        buildEvent.begin();
+        long start = System.nanoTime();
         String sortTitle = null;
         String orderNumber = null;
         String maintitle = null;
@@ -1183,7 +1959,7 @@ public class ArcheExportStepPlugin implements IStepPluginVersion2 {
         }
 
         //        hasExtent   0-1     langString  46  --- See note ---    We would need a string such as "544 files", where the total numer of master images is computed.
-        processResource.addProperty(model.createProperty(model.getNsPrefixURI("acdh"), "hasExtent"), files.get(masterFolder).size() + " images",
+        processResource.addProperty(model.createProperty(model.getNsPrefixURI("acdh"), "hasExtent"), files.listFiles(masterFolder).size() + " images",
                 "en");
 
         //        hasNote 0-1     langString  59  --- See note ---    "We would like to insert here a note about the uncertainty of the date provided in the ARCHE property ""hasDate"". Therefore, if the Goobi field ""DateOfOrigin"" presents square brackets (e.g. [1862]), then add acdh:hasNote ""Date is inferred.""@en, ""Datum ist abgeleitet.""@de
@@ -1218,6 +1994,7 @@ public class ArcheExportStepPlugin implements IStepPluginVersion2 {
         processResource.addProperty(model.createProperty(model.getNsPrefixURI("acdh"), "isPartOf"),
                 model.createResource(topCollectionIdentifier));
 
+        resourceBuilt(buildEvent, "collection", processResource, start);
         return processResource;
     }
 
@@ -1247,6 +2024,9 @@ public class ArcheExportStepPlugin implements IStepPluginVersion2 {
 
     private Resource createMetadata(DocStruct docstruct, Model model, String collectionIdentifier, Resource processResource, boolean ingest) {
 
+        ResourceBuildEvent buildEvent = new ResourceBuildEvent();
+        buildEvent.begin();
+        long start = System.nanoTime();
         String metadataId = null;
         String title = null;
         if (docstruct.getType().isAnchor()) {
@@ -1319,12 +2099,16 @@ public class ArcheExportStepPlugin implements IStepPluginVersion2 {
         //        hasCurator  0-n     Agent   178 --- See note ---    Inherit value from the containing Process
         inheritValue(model, processResource, metaResource, "hasCurator");
 
+        resourceBuilt(buildEvent, "metadata", metaResource, start);
         return metaResource;
     }
 
-    private Resource createFolderResource(Model model, String folderName, String collectionIdentifier, Resource processResource, String filename,
+    Resource createFolderResource(Model model, String folderName, String collectionIdentifier, Resource processResource, String filename,
             boolean ingest, String doctTypeCode) {
 
+        ResourceBuildEvent buildEvent = new ResourceBuildEvent();
+        buildEvent.begin();
+        long start = System.nanoTime();
         String id = collectionIdentifier + "/" + folderName;
         String resourceIdentifier = null;
         if (ingest) {
@@ -1377,6 +2161,7 @@ public class ArcheExportStepPlugin implements IStepPluginVersion2 {
                     model.createResource(collectionIdentifier + "/" + folderName + "/" + filename));
         }
 
+        resourceBuilt(buildEvent, "folder", resource, start);
         return resource;
     }
 
@@ -1430,25 +2215,4 @@ public class ArcheExportStepPlugin implements IStepPluginVersion2 {
         return builder.toString();
     }
 
-    /**
-     * Represents a single configurable Goobi metadata field → ARCHE property mapping for use in createPublicationResource().
-     */
-    private static class MetadataFieldMapping {
-        /** Goobi metadata type name, e.g. "shelfmarksource" */
-        final String metadataName;
-        /** ARCHE property local name, e.g. "hasNonLinkedIdentifier" */
-        final String archeField;
-        /**
-         * Language mode. One of: DOC_LANGUAGE → per-document language code DEFAULT_LANGUAGE → project default language code DATE → typed XSDdate
-         * literal (no language tag) NO_LANGUAGE → plain untagged string literal or any explicit BCP-47 tag, e.g. "und", "en"
-         */
-        final String languageMode;
-
-        MetadataFieldMapping(String metadataName, String archeField, String languageMode) {
-            this.metadataName = metadataName;
-            this.archeField = archeField;
-            this.languageMode = languageMode;
-        }
-    }
-
 }
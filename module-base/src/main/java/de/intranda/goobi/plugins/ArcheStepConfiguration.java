@@ -0,0 +1,241 @@
+package de.intranda.goobi.plugins;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.configuration.HierarchicalConfiguration;
+import org.apache.commons.configuration.XMLConfiguration;
+import org.apache.commons.configuration.tree.xpath.XPathExpressionEngine;
+import org.apache.commons.lang3.StringUtils;
+import org.goobi.api.rest.AdaptiveLimiter;
+import org.goobi.api.rest.ArcheAPI;
+import org.goobi.api.rest.ArcheGovernor;
+import org.goobi.api.rest.BinaryStreamFactory;
+import org.goobi.api.rest.WireFormat;
+
+import de.sub.goobi.config.ConfigPlugins;
+import de.sub.goobi.config.ConfigurationHelper;
+import lombok.Getter;
+
+/**
+ * Immutable snapshot of the step configuration. The snapshot can be shared between plugin instances, e.g. when many processes are ingested in
+ * one batch.
+ */
+@Getter
+public class ArcheStepConfiguration {
+
+    private final Map<String, String> languageCodes;
+
+    private final Map<String, String> licenseMapping;
+
+    private final Map<String, String> doctypes;
+
+    private final Map<String, String> accessValues;
+
+    private final String viewerUrl;
+    private final String permalinkUrl;
+    private final List<MetadataFieldMapping> metadataMappings;
+    private final List<String[]> propertyMappings;
+
+    /** configured export folder or null, if the export is disabled */
+    private final String exportFolder;
+
+    private final int metadataCacheSize;
+
+    private final BinaryStreamFactory binaryStreams;
+
+    /** concurrent S3 reads of the file headers, shared by all ingests */
+    private final int maxS3HeaderReads;
+
+    /** folder for local state of the plugin, e.g. the queue of background ingests */
+    private final String stateFolder;
+
+    private final boolean asyncEnabled;
+
+    private final int asyncThreads;
+
+    /** capacity of the queues between the stages of the file ingest */
+    private final int pipelineQueueSize;
+    private final int pipelineBuildThreads;
+    private final int pipelineSerializeThreads;
+    private final int pipelineUploadThreads;
+
+    /** upload the largest files first, so no large upload is left at the end of the ingest */
+    private final boolean largestFirst;
+
+    /** only create a plan of the ingest, without export or ingest */
+    private final boolean dryRun;
+
+    /** record the identifiers of each ingest in the state folder, used by dry runs to count the expected updates */
+    private final boolean identifierIndexEnabled;
+
+    /** maximum number of files committed in one transaction, 0 if all resources are ingested in a single transaction */
+    private final int filesPerTransaction;
+
+    /** bounds of the adaptive limit of concurrent ARCHE requests */
+    private final int minConcurrency;
+    private final int maxConcurrency;
+    private final int initialConcurrency;
+
+    /** number of retries, if ARCHE answers with 429 or 503 */
+    private final int maxRetries;
+
+    /** additional concurrent requests reserved for metadata requests */
+    private final int metadataLane;
+
+    /** caps of all ingests of the application and the share of this project, if the caps are reached */
+    private final int governorMaxRequests;
+    private final int governorMaxTransactions;
+    private final int governorWeight;
+
+    /** publish the metrics in the global Micrometer registry */
+    private final boolean micrometerEnabled;
+
+    /** write the trace spans of each run to a file */
+    private final boolean tracingEnabled;
+
+    /** record the ARCHE requests of each run to a file for replay */
+    private final boolean recordingEnabled;
+
+    /** RDF format of the metadata requests */
+    private final WireFormat wireFormat;
+    /** compress the metadata requests with gzip */
+    private final boolean compressRequests;
+
+    /**
+     * Read the default configuration block of the plugin, the one for all projects and steps
+     *
+     * @param pluginTitle
+     * @return
+     */
+
+    public static ArcheStepConfiguration loadDefault(String pluginTitle) {
+        XMLConfiguration config = ConfigPlugins.getPluginConfig(pluginTitle);
+        config.setExpressionEngine(new XPathExpressionEngine());
+        return new ArcheStepConfiguration(config.configurationAt("//config[./project = '*'][./step = '*']"));
+    }
+
+    public ArcheStepConfiguration(HierarchicalConfiguration config) {
+        Map<String, String> codes = new HashMap<>();
+        for (HierarchicalConfiguration hc : config.configurationsAt("/language/code")) {
+            codes.put(hc.getString("@iso639-2"), hc.getString("@iso639-1"));
+        }
+        languageCodes = Collections.unmodifiableMap(codes);
+
+        Map<String, String> licenses = new HashMap<>();
+        for (HierarchicalConfiguration hc : config.configurationsAt("/licenses/license")) {
+            licenses.put(hc.getString("@internalName"), hc.getString("@archeField"));
+        }
+        licenseMapping = Collections.unmodifiableMap(licenses);
+
+        Map<String, String> tags = new HashMap<>();
+        for (HierarchicalConfiguration hc : config.configurationsAt("/tags/tag")) {
+            tags.put(hc.getString("@doctype"), hc.getString("@code"));
+        }
+        doctypes = Collections.unmodifiableMap(tags);
+
+        Map<String, String> access = new HashMap<>();
+        access.put("public", "https://vocabs.acdh.oeaw.ac.at/archeaccessrestrictions/public");
+        access.put("academic", "https://vocabs.acdh.oeaw.ac.at/archeaccessrestrictions/academic");
+        access.put("restricted", "https://vocabs.acdh.oeaw.ac.at/archeaccessrestrictions/restricted");
+        accessValues = Collections.unmodifiableMap(access);
+
+        String viewer = config.getString("/viewerUrl", "https://viewer.acdh.oeaw.ac.at/viewer");
+        if (viewer.endsWith("/")) {
+            viewer = viewer.substring(0, viewer.length() - 1);
+        }
+        viewerUrl = viewer;
+        String permalink = config.getString("/permalinkUrl", "https://permalink.obvsg.at/");
+        if (!permalink.endsWith("/")) {
+            permalink = permalink + "/";
+        }
+        permalinkUrl = permalink;
+
+        List<MetadataFieldMapping> mappings = new ArrayList<>();
+        for (HierarchicalConfiguration hc : config.configurationsAt("/metadataMappings/metadataMapping")) {
+            mappings.add(new MetadataFieldMapping(
+                    hc.getString("@metadataName"),
+                    hc.getString("@archeField"),
+                    hc.getString("@language", "NO_LANGUAGE")));
+        }
+        metadataMappings = Collections.unmodifiableList(mappings);
+
+        List<String[]> properties = new ArrayList<>();
+        for (HierarchicalConfiguration hc : config.configurationsAt("/propertyMappings/propertyMapping")) {
+            properties.add(new String[] {
+                    hc.getString("@goobiProperty"),
+                    hc.getString("@archeField") });
+        }
+        propertyMappings = Collections.unmodifiableList(properties);
+
+        metadataCacheSize = config.getInt("/metadataCache/@size", FileformatCache.DEFAULT_SIZE);
+
+        binaryStreams = new BinaryStreamFactory(
+                config.getLong("/s3Streaming/@rangeThreshold", BinaryStreamFactory.DEFAULT_RANGE_THRESHOLD),
+                config.getInt("/s3Streaming/@chunkSize", BinaryStreamFactory.DEFAULT_CHUNK_SIZE),
+                config.getInt("/s3Streaming/@parallelism", BinaryStreamFactory.DEFAULT_PARALLELISM));
+        maxS3HeaderReads = config.getInt("/s3Streaming/@headerReads", TechnicalMetadataExtractor.DEFAULT_MAX_S3_READS);
+
+        String state = config.getString("/stateFolder");
+        if (StringUtils.isBlank(state)) {
+            state = ConfigurationHelper.getInstance().getTemporaryFolder() + "arche";
+        }
+        stateFolder = state;
+        asyncEnabled = config.getBoolean("/async/@enabled", false);
+        asyncThreads = Math.max(config.getInt("/async/@threads", 2), 1);
+
+        pipelineQueueSize = config.getInt("/pipeline/@queueSize", 50);
+        pipelineBuildThreads = config.getInt("/pipeline/@buildThreads", 1);
+        pipelineSerializeThreads = config.getInt("/pipeline/@serializeThreads", 2);
+        pipelineUploadThreads = config.getInt("/pipeline/@uploadThreads", 2);
+        largestFirst = config.getBoolean("/pipeline/@largestFirst", true);
+
+        dryRun = config.getBoolean("/dryRun", false);
+        identifierIndexEnabled = config.getBoolean("/dryRun/@identifierIndex", false);
+        filesPerTransaction = Math.max(config.getInt("/transactions/@filesPerTransaction", 0), 0);
+
+        minConcurrency = config.getInt("/concurrency/@min", AdaptiveLimiter.DEFAULT_MIN_LIMIT);
+        maxConcurrency = config.getInt("/concurrency/@max", AdaptiveLimiter.DEFAULT_MAX_LIMIT);
+        initialConcurrency = config.getInt("/concurrency/@initial", AdaptiveLimiter.DEFAULT_INITIAL_LIMIT);
+        maxRetries = config.getInt("/concurrency/@maxRetries", ArcheAPI.DEFAULT_MAX_RETRIES);
+        metadataLane = config.getInt("/concurrency/@metadataLane", AdaptiveLimiter.DEFAULT_RESERVED_LANE);
+
+        governorMaxRequests = config.getInt("/governor/@maxRequests", ArcheGovernor.DEFAULT_MAX_REQUESTS);
+        governorMaxTransactions = config.getInt("/governor/@maxTransactions", ArcheGovernor.DEFAULT_MAX_TRANSACTIONS);
+        governorWeight = Math.max(config.getInt("/governor/@weight", 1), 1);
+
+        micrometerEnabled = config.getBoolean("/metrics/@micrometer", false);
+        tracingEnabled = config.getBoolean("/tracing/@enabled", false);
+        recordingEnabled = config.getBoolean("/recording/@enabled", false);
+
+        wireFormat = WireFormat.fromName(config.getString("/wireFormat/@format"));
+        compressRequests = config.getBoolean("/wireFormat/@gzip", false);
+
+        String destination = config.getString("/exportFolder");
+        exportFolder = StringUtils.isNotBlank(destination) ? destination : null;
+    }
+
+    /**
+     * Represents a single configurable Goobi metadata field → ARCHE property mapping for use in createPublicationResource().
+     */
+    public static class MetadataFieldMapping {
+        /** Goobi metadata type name, e.g. "shelfmarksource" */
+        final String metadataName;
+        /** ARCHE property local name, e.g. "hasNonLinkedIdentifier" */
+        final String archeField;
+        /**
+         * Language mode. One of: DOC_LANGUAGE → per-document language code DEFAULT_LANGUAGE → project default language code DATE → typed XSDdate
+         * literal (no language tag) NO_LANGUAGE → plain untagged string literal or any explicit BCP-47 tag, e.g. "und", "en"
+         */
+        final String languageMode;
+
+        MetadataFieldMapping(String metadataName, String archeField, String languageMode) {
+            this.metadataName = metadataName;
+            this.archeField = archeField;
+            this.languageMode = languageMode;
+        }
+    }
+}
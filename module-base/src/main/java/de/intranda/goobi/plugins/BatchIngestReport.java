@@ -0,0 +1,78 @@
+package de.intranda.goobi.plugins;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import org.goobi.production.enums.PluginReturnValue;
+
+/**
+ * Result of a batch ingest, contains one entry per process
+ */
+public class BatchIngestReport {
+
+    /**
+     * Result of a single process
+     *
+     * @param processId
+     * @param processTitle
+     * @param result
+     * @param durationMillis
+     * @param message error message or null
+     */
+    public record ProcessResult(Integer processId, String processTitle, PluginReturnValue result, long durationMillis, String message) {
+
+        public boolean isSuccessful() {
+            return result == PluginReturnValue.FINISH;
+        }
+    }
+
+    private final ConcurrentLinkedQueue<ProcessResult> results = new ConcurrentLinkedQueue<>();
+
+    void add(ProcessResult result) {
+        results.add(result);
+    }
+
+    /**
+     * @return all results, ordered by process id
+     */
+    public List<ProcessResult> getResults() {
+        List<ProcessResult> list = new ArrayList<>(results);
+        list.sort(Comparator.comparing(ProcessResult::processId));
+        return list;
+    }
+
+    public long getSuccessCount() {
+        return results.stream().filter(ProcessResult::isSuccessful).count();
+    }
+
+    public long getErrorCount() {
+        return results.size() - getSuccessCount();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("ARCHE batch ingest: ")
+                .append(getSuccessCount())
+                .append(" successful, ")
+                .append(getErrorCount())
+                .append(" failed\n");
+        for (ProcessResult r : getResults()) {
+            sb.append(r.processId())
+                    .append('\t')
+                    .append(r.processTitle())
+                    .append('\t')
+                    .append(r.result())
+                    .append('\t')
+                    .append(r.durationMillis())
+                    .append(" ms");
+            if (r.message() != null) {
+                sb.append('\t').append(r.message());
+            }
+            sb.append('\n');
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,119 @@
+package de.intranda.goobi.plugins;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Properties;
+
+import org.apache.commons.codec.digest.DigestUtils;
+
+import lombok.extern.log4j.Log4j2;
+
+/**
+ * Progress of an ingest that is split into several transactions. The committed chunks are stored in the state folder, so a repeated ingest
+ * continues with the first chunk that was not committed. The progress is stored per process and ARCHE instance, it is only used as long as the
+ * files of the process, their sizes and modification dates and the chunk size are unchanged, this is checked with a signature.
+ */
+@Log4j2
+public class ChunkProgress {
+
+    private static final String SIGNATURE = "signature";
+    private static final String DONE_PREFIX = "done.";
+    private static final String CHECKSUM_PREFIX = "checksum.";
+
+    private final Path progressFile;
+
+    private final Properties properties;
+
+    private ChunkProgress(Path progressFile, Properties properties) {
+        this.progressFile = progressFile;
+        this.properties = properties;
+    }
+
+    /**
+     * Load the progress of the process. If no progress exists or it was created for other files, an empty progress is returned.
+     *
+     * @param stateFolder
+     * @param apiUrl URL of the ARCHE instance, a progress of another instance is not used
+     * @param processId
+     * @param signature
+     * @return
+     */
+
+    public static ChunkProgress load(String stateFolder, String apiUrl, Integer processId, String signature) {
+        Path progressFile = Path.of(stateFolder, "progress", processId + "-" + DigestUtils.sha256Hex(apiUrl).substring(0, 16) + ".properties");
+        Properties properties = new Properties();
+        if (Files.exists(progressFile)) {
+            try (InputStream in = Files.newInputStream(progressFile)) {
+                properties.load(in);
+            } catch (IOException e) {
+                log.error("Cannot read ingest progress {}", progressFile, e);
+            }
+            if (!signature.equals(properties.getProperty(SIGNATURE))) {
+                log.info("Files of process {} changed, ingest all chunks again", processId);
+                properties.clear();
+            }
+        }
+        properties.setProperty(SIGNATURE, signature);
+        return new ChunkProgress(progressFile, properties);
+    }
+
+    public boolean isDone(int chunk) {
+        return properties.containsKey(DONE_PREFIX + chunk);
+    }
+
+    /**
+     * @return checksums of the files in the committed chunks
+     */
+    public Map<String, String> getChecksums() {
+        Map<String, String> checksums = new HashMap<>();
+        for (String key : properties.stringPropertyNames()) {
+            if (key.startsWith(CHECKSUM_PREFIX)) {
+                checksums.put(key.substring(CHECKSUM_PREFIX.length()), properties.getProperty(key));
+            }
+        }
+        return checksums;
+    }
+
+    /**
+     * Mark the chunk as committed and store the progress
+     *
+     * @param chunk
+     * @param checksums checksums of the exported files so far
+     */
+
+    public void markDone(int chunk, Map<String, String> checksums) {
+        properties.setProperty(DONE_PREFIX + chunk, String.valueOf(System.currentTimeMillis()));
+        for (Entry<String, String> entry : checksums.entrySet()) {
+            properties.setProperty(CHECKSUM_PREFIX + entry.getKey(), entry.getValue());
+        }
+        try {
+            Files.createDirectories(progressFile.getParent());
+            Path tmp = Files.createTempFile(progressFile.getParent(), "progress", ".tmp");
+            try (OutputStream out = Files.newOutputStream(tmp)) {
+                properties.store(out, null);
+            }
+            Files.move(tmp, progressFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            log.error("Cannot write ingest progress {}", progressFile, e);
+        }
+    }
+
+    /**
+     * Remove the progress after all chunks were committed
+     */
+
+    public void delete() {
+        try {
+            Files.deleteIfExists(progressFile);
+        } catch (IOException e) {
+            log.error(e);
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package de.intranda.goobi.plugins;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * Technical metadata of a single file, read from the file headers only
+ */
+@Getter
+@AllArgsConstructor
+public class FileTechnicalMetadata {
+
+    /** file size in bytes */
+    private final long size;
+
+    /** sniffed mime type, e.g. image/tiff */
+    private final String mimeType;
+
+    /** image width in pixel or null, if the file is not an image or the format is not supported */
+    private final Integer width;
+
+    /** image height in pixel or null, if the file is not an image or the format is not supported */
+    private final Integer height;
+}
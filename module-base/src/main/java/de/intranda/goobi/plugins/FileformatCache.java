@@ -0,0 +1,119 @@
+package de.intranda.goobi.plugins;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Objects;
+
+import org.goobi.beans.Process;
+
+import de.sub.goobi.helper.StorageProvider;
+import de.sub.goobi.helper.exceptions.SwapException;
+import lombok.extern.log4j.Log4j2;
+import ugh.dl.DigitalDocument;
+import ugh.dl.Fileformat;
+import ugh.exceptions.UGHException;
+
+/**
+ * Keeps the parsed metadata files of the last processes in memory. If several steps of the same process use this plugin (e.g. validation and
+ * ingest), or a step is retried, the METS file is parsed only once. An entry is only used as long as modification date and size of meta.xml and
+ * meta_anchor.xml are unchanged.
+ *
+ * The cached document is shared by all runs of the application, so it is never handed out: each caller gets its own copy, which it may change
+ * without affecting other runs. Copying the document is considerably cheaper than parsing and validating the METS file again.
+ */
+@Log4j2
+public class FileformatCache {
+
+    public static final int DEFAULT_SIZE = 20;
+
+    private static LruCache<Integer, CachedDocument> cache = new LruCache<>(DEFAULT_SIZE);
+    private static int cacheSize = DEFAULT_SIZE;
+
+    private record FileStamp(long lastModified, long size) {
+    }
+
+    private record CachedDocument(FileStamp meta, FileStamp anchor, DigitalDocument document) {
+    }
+
+    private FileformatCache() {
+    }
+
+    /**
+     * Change the number of cached processes. A size of 0 disables the cache.
+     *
+     * @param size
+     */
+
+    public static synchronized void setSize(int size) {
+        if (size != cacheSize) {
+            cacheSize = size;
+            cache = new LruCache<>(Math.max(size, 1));
+        }
+    }
+
+    /**
+     * Get the document of the metadata file of the process, from the cache if the files did not change since they were read
+     *
+     * @param process
+     * @return a copy of the document that belongs to the caller, or null if the metadata file cannot be read
+     * @throws UGHException
+     * @throws IOException
+     * @throws SwapException
+     */
+
+    public static DigitalDocument read(Process process) throws UGHException, IOException, SwapException {
+        LruCache<Integer, CachedDocument> current;
+        synchronized (FileformatCache.class) {
+            if (cacheSize <= 0) {
+                Fileformat fileformat = process.readMetadataFile();
+                return fileformat == null ? null : fileformat.getDigitalDocument();
+            }
+            current = cache;
+        }
+        Path metaFile = Paths.get(process.getMetadataFilePath());
+        Path anchorFile = Paths.get(process.getMetadataFilePath().replace("meta.xml", "meta_anchor.xml"));
+        FileStamp meta = stamp(metaFile);
+        FileStamp anchor = stamp(anchorFile);
+
+        CachedDocument cached = current.get(process.getId());
+        if (cached != null && Objects.equals(cached.meta(), meta) && Objects.equals(cached.anchor(), anchor)) {
+            log.debug("Use cached metadata of process {}", process.getId());
+            return copy(cached.document());
+        }
+
+        Fileformat fileformat = process.readMetadataFile();
+        if (fileformat == null) {
+            return null;
+        }
+        DigitalDocument document = fileformat.getDigitalDocument();
+        // the parsed document is only kept in the cache, the caller works on a copy of it
+        current.put(process.getId(), new CachedDocument(meta, anchor, document));
+        return copy(document);
+    }
+
+    /**
+     * Remove a process from the cache
+     *
+     * @param processId
+     */
+
+    public static synchronized void invalidate(Integer processId) {
+        cache.remove(processId);
+    }
+
+    private static DigitalDocument copy(DigitalDocument document) throws UGHException {
+        // copies of the same document are made one after the other, the document must not change while it is copied
+        synchronized (document) {
+            return document.copyDigitalDocument();
+        }
+    }
+
+    private static FileStamp stamp(Path file) throws IOException {
+        StorageProvider storage = StorageProvider.getInstance();
+        if (!storage.isFileExists(file)) {
+            return null;
+        }
+        return new FileStamp(storage.getLastModifiedDate(file), storage.getFileSize(file));
+    }
+}
@@ -0,0 +1,106 @@
+package de.intranda.goobi.plugins;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+
+import lombok.extern.log4j.Log4j2;
+
+/**
+ * Local index of the identifiers that were ingested into ARCHE. It is used to estimate how many resources already exist and are updated instead
+ * of created. The identifiers are stored line by line in a file in the state folder, new identifiers are appended after each ingest.
+ *
+ * The index is not kept in memory: a lookup reads the file once and only keeps the identifiers that were asked for, so the memory use depends on
+ * the size of one process and not on the number of ingested processes.
+ */
+@Log4j2
+public class IdentifierIndex {
+
+    /** all instances append to the same files */
+    private static final Object WRITE_LOCK = new Object();
+
+    private final Path indexFile;
+
+    /**
+     * Use the index stored in the state folder
+     *
+     * @param stateFolder
+     */
+
+    public IdentifierIndex(String stateFolder) {
+        this.indexFile = Path.of(stateFolder, "identifiers.txt");
+    }
+
+    /**
+     * @return true, if no identifiers were recorded yet
+     */
+    public boolean isEmpty() {
+        try {
+            return !Files.exists(indexFile) || Files.size(indexFile) == 0;
+        } catch (IOException e) {
+            log.error("Cannot read identifier index {}", indexFile, e);
+            return true;
+        }
+    }
+
+    /**
+     * Find the identifiers that were already ingested
+     *
+     * @param identifiers
+     * @return the given identifiers that are contained in the index
+     */
+
+    public Set<String> findExisting(Collection<String> identifiers) {
+        Set<String> wanted = new HashSet<>(identifiers);
+        Set<String> existing = new HashSet<>();
+        if (wanted.isEmpty() || !Files.exists(indexFile)) {
+            return existing;
+        }
+        try (BufferedReader reader = Files.newBufferedReader(indexFile, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null && existing.size() < wanted.size()) {
+                if (wanted.contains(line)) {
+                    existing.add(line);
+                }
+            }
+        } catch (IOException e) {
+            log.error("Cannot read identifier index {}", indexFile, e);
+        }
+        return existing;
+    }
+
+    /**
+     * Add the identifiers of a finished ingest and append the ones that are not in the index yet to the index file
+     *
+     * @param ingested
+     */
+
+    public void addAll(Collection<String> ingested) {
+        synchronized (WRITE_LOCK) {
+            Set<String> added = new HashSet<>(ingested);
+            added.removeAll(findExisting(added));
+            if (added.isEmpty()) {
+                return;
+            }
+            try {
+                Files.createDirectories(indexFile.getParent());
+                try (BufferedWriter writer = Files.newBufferedWriter(indexFile, StandardCharsets.UTF_8, StandardOpenOption.CREATE,
+                        StandardOpenOption.APPEND)) {
+                    for (String identifier : added) {
+                        writer.write(identifier);
+                        writer.newLine();
+                    }
+                }
+            } catch (IOException e) {
+                log.error("Cannot write identifier index {}", indexFile, e);
+            }
+        }
+    }
+}
@@ -0,0 +1,272 @@
+package de.intranda.goobi.plugins;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.goobi.beans.Step;
+import org.goobi.production.enums.LogType;
+import org.goobi.production.enums.PluginReturnValue;
+
+import de.sub.goobi.helper.Helper;
+import de.sub.goobi.helper.HelperSchritte;
+import de.sub.goobi.helper.enums.StepStatus;
+import de.sub.goobi.helper.exceptions.DAOException;
+import de.sub.goobi.persistence.managers.StepManager;
+import lombok.extern.log4j.Log4j2;
+
+/**
+ * Durable queue for ingests running in the background. Each job is stored as a small file in the queue folder, so accepted jobs survive a
+ * restart of the application. A job file ends with .pending while it waits and with .running while it is executed. Jobs that were running
+ * when the application stopped are started again when the queue is created, which happens with the first run of the plugin, see
+ * {@link #resumeAfterRestart(String)}.
+ *
+ * When a job is finished, the step is closed. If the ingest failed or could not be started, the step is set to error.
+ */
+@Log4j2
+public class IngestJobQueue {
+
+    private static final String PENDING = ".pending";
+    private static final String RUNNING = ".running";
+
+    private static IngestJobQueue instance;
+
+    /** true in processes that must not run the jobs of the application, e.g. a batch ingest from the command line */
+    private static volatile boolean resumeDisabled;
+    /** true after the queue folder was checked for jobs of an earlier run */
+    private static boolean resumeChecked;
+
+    private final Path queueFolder;
+    private final int threads;
+
+    private final ExecutorService executor;
+
+    private IngestJobQueue(Path queueFolder, int threads) throws IOException {
+        this.queueFolder = queueFolder;
+        this.threads = threads;
+        Files.createDirectories(queueFolder);
+        AtomicInteger counter = new AtomicInteger();
+        executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(), r -> {
+            Thread t = new Thread(r, "arche-ingest-" + counter.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        resume();
+    }
+
+    /**
+     * Get the queue, it is created on first use. Jobs from an earlier run of the application are restarted at this point. The queue is shared by
+     * all projects, so the folder and the number of threads of the first call are used until the application is restarted.
+     *
+     * @param queueFolder
+     * @param threads number of ingests running at the same time
+     * @return
+     * @throws IOException
+     */
+
+    public static synchronized IngestJobQueue getInstance(Path queueFolder, int threads) throws IOException {
+        if (instance == null) {
+            instance = new IngestJobQueue(queueFolder, threads);
+        } else {
+            if (!instance.queueFolder.equals(queueFolder)) {
+                log.warn("ARCHE ingest queue already uses {}, ignore configured folder {}", instance.queueFolder, queueFolder);
+            }
+            if (instance.threads != threads) {
+                log.warn("ARCHE ingest queue already runs {} threads, ignore configured number {} until restart", instance.threads, threads);
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * Continue the jobs of an earlier run of the application, only the first call checks for jobs. The queue folder and the number of threads
+     * are taken from the default configuration block of the plugin (project and step *). The queue is only created if there are jobs, otherwise
+     * it is created with the next background ingest.
+     *
+     * @param pluginTitle
+     */
+
+    static synchronized void resumeAfterRestart(String pluginTitle) {
+        if (resumeDisabled || resumeChecked) {
+            return;
+        }
+        resumeChecked = true;
+        try {
+            ArcheStepConfiguration stepConfiguration = ArcheStepConfiguration.loadDefault(pluginTitle);
+            Path queueFolder = Paths.get(stepConfiguration.getStateFolder(), "queue");
+            if (hasJobs(queueFolder)) {
+                getInstance(queueFolder, stepConfiguration.getAsyncThreads());
+            }
+        } catch (IOException | RuntimeException e) {
+            // the ingest of the current step must not fail because of old jobs
+            log.error("Cannot resume the ARCHE ingest queue", e);
+        }
+    }
+
+    /**
+     * Do not continue the jobs of the application in this process
+     */
+
+    static void disableResume() {
+        resumeDisabled = true;
+    }
+
+    private static boolean hasJobs(Path queueFolder) throws IOException {
+        if (!Files.isDirectory(queueFolder)) {
+            return false;
+        }
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(queueFolder, "*{" + PENDING + "," + RUNNING + "}")) {
+            return stream.iterator().hasNext();
+        }
+    }
+
+    /**
+     * Add the step to the queue. If the step is already waiting or running, it is not added a second time.
+     *
+     * @param step
+     * @throws IOException
+     */
+
+    public synchronized void enqueue(Step step) throws IOException {
+        Path pending = jobFile(step.getId(), PENDING);
+        if (Files.exists(pending) || Files.exists(jobFile(step.getId(), RUNNING))) {
+            log.info("Step {} is already in the ARCHE ingest queue", step.getId());
+            return;
+        }
+        Properties job = new Properties();
+        job.setProperty("stepId", String.valueOf(step.getId()));
+        job.setProperty("processId", String.valueOf(step.getProcessId()));
+        job.setProperty("created", String.valueOf(System.currentTimeMillis()));
+
+        // write into a temporary file first, so a crash never leaves an incomplete job
+        Path tmp = Files.createTempFile(queueFolder, "job", ".tmp");
+        try (OutputStream out = Files.newOutputStream(tmp)) {
+            job.store(out, null);
+        }
+        Files.move(tmp, pending, StandardCopyOption.ATOMIC_MOVE);
+        schedule(step.getId());
+    }
+
+    /**
+     * Restart jobs that were running when the application stopped and schedule all waiting jobs in the order they were created
+     *
+     * @throws IOException
+     */
+
+    private void resume() throws IOException {
+        List<Path> jobs = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(queueFolder, "*" + RUNNING)) {
+            for (Path running : stream) {
+                Path pending = queueFolder.resolve(running.getFileName().toString().replace(RUNNING, PENDING));
+                Files.move(running, pending, StandardCopyOption.ATOMIC_MOVE);
+            }
+        }
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(queueFolder, "*" + PENDING)) {
+            for (Path pending : stream) {
+                jobs.add(pending);
+            }
+        }
+        jobs.sort(Comparator.comparingLong(this::getCreationTime));
+        for (Path job : jobs) {
+            Integer stepId = Integer.valueOf(job.getFileName().toString().replace("step-", "").replace(PENDING, ""));
+            log.info("Resume ARCHE ingest of step {}", stepId);
+            schedule(stepId);
+        }
+    }
+
+    private long getCreationTime(Path job) {
+        Properties properties = new Properties();
+        try (InputStream in = Files.newInputStream(job)) {
+            properties.load(in);
+            return Long.parseLong(properties.getProperty("created", "0"));
+        } catch (IOException | NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private void schedule(Integer stepId) {
+        executor.submit(() -> execute(stepId));
+    }
+
+    private void execute(Integer stepId) {
+        Path pending = jobFile(stepId, PENDING);
+        Path running = jobFile(stepId, RUNNING);
+        try {
+            Files.move(pending, running, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            log.error("Cannot start ARCHE ingest job for step {}", stepId, e);
+            // the job is dropped, so the step must not stay in work
+            Step step = StepManager.getStepById(stepId);
+            if (step != null) {
+                finishStep(step, PluginReturnValue.ERROR);
+            }
+            deleteJob(pending);
+            return;
+        }
+        Step step = null;
+        try {
+            step = StepManager.getStepById(stepId);
+            if (step == null) {
+                log.error("Step {} of ARCHE ingest job does not exist anymore", stepId);
+            } else {
+                ArcheExportStepPlugin plugin = new ArcheExportStepPlugin();
+                plugin.initialize(step, "");
+                PluginReturnValue result = plugin.runSynchronously();
+                finishStep(step, result);
+            }
+        } catch (Throwable e) {
+            // also errors like OutOfMemoryError, if the step cannot be set to error either, the job file is kept and runs again after a restart
+            log.error("ARCHE ingest of step {} failed", stepId, e);
+            if (step != null) {
+                // the job is removed, so the step must not stay in work
+                finishStep(step, PluginReturnValue.ERROR);
+            }
+        }
+        deleteJob(running);
+    }
+
+    private void deleteJob(Path job) {
+        try {
+            Files.deleteIfExists(job);
+        } catch (IOException e) {
+            log.error(e);
+        }
+    }
+
+    private void finishStep(Step step, PluginReturnValue result) {
+        if (result == PluginReturnValue.ERROR) {
+            Helper.addMessageToProcessJournal(step.getProcessId(), LogType.ERROR, "ARCHE ingest failed in step " + step.getTitel());
+            step.setBearbeitungsstatusEnum(StepStatus.ERROR);
+            step.setBearbeitungsende(new Date());
+            try {
+                StepManager.saveStep(step);
+            } catch (DAOException e) {
+                log.error(e);
+            }
+        } else if (result == PluginReturnValue.WAIT) {
+            // dry run, nothing was ingested and the step stays open
+            log.info("Step {} stays open after a dry run", step.getId());
+        } else {
+            new HelperSchritte().CloseStepObjectAutomatic(step);
+        }
+    }
+
+    private Path jobFile(Integer stepId, String suffix) {
+        return queueFolder.resolve("step-" + stepId + suffix);
+    }
+}
@@ -0,0 +1,72 @@
+package de.intranda.goobi.plugins;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import lombok.Getter;
+
+/**
+ * Result of a dry run: the requests and bytes an ingest of the process would need
+ */
+@Getter
+public class IngestPlan {
+
+    /** number of metadata POST requests */
+    private int metadataRequests;
+
+    /** number of binary PUT requests */
+    private int binaryRequests;
+
+    /** bytes per folder, in the order of the ingest */
+    private final Map<String, Long> bytesPerFolder = new LinkedHashMap<>();
+
+    /** number of resources that already exist in ARCHE and are updated with PATCH, or -1 if no identifier index exists */
+    private int expectedConflicts = -1;
+
+    /** projected duration in milliseconds, or -1 if no throughput was measured yet */
+    private long projectedMillis = -1;
+
+    void addMetadataRequest(boolean conflict) {
+        metadataRequests++;
+        if (conflict) {
+            expectedConflicts = Math.max(expectedConflicts, 0) + 1;
+        }
+    }
+
+    void addBinary(String folder, long bytes) {
+        binaryRequests++;
+        bytesPerFolder.merge(folder, bytes, Long::sum);
+    }
+
+    void enableConflictCount() {
+        expectedConflicts = Math.max(expectedConflicts, 0);
+    }
+
+    void setProjectedMillis(long projectedMillis) {
+        this.projectedMillis = projectedMillis;
+    }
+
+    public long getTotalBytes() {
+        return bytesPerFolder.values().stream().mapToLong(Long::longValue).sum();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("Metadata requests (POST): ").append(metadataRequests).append('\n');
+        sb.append("Binary uploads (PUT): ").append(binaryRequests).append('\n');
+        for (Entry<String, Long> entry : bytesPerFolder.entrySet()) {
+            sb.append("Bytes in ").append(entry.getKey()).append(": ").append(entry.getValue()).append('\n');
+        }
+        sb.append("Total bytes: ").append(getTotalBytes()).append('\n');
+        sb.append("Expected updates (409/PATCH): ").append(expectedConflicts < 0 ? "unknown" : String.valueOf(expectedConflicts)).append('\n');
+        if (projectedMillis < 0) {
+            sb.append("Projected duration: unknown, no ingest was measured yet");
+        } else {
+            long seconds = projectedMillis / 1000;
+            sb.append(String.format("Projected duration: %d:%02d:%02d", seconds / 3600, (seconds / 60) % 60, seconds % 60));
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,146 @@
+package de.intranda.goobi.plugins;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.goobi.api.rest.RequestStatistics;
+
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonObject;
+
+import lombok.Getter;
+import lombok.extern.log4j.Log4j2;
+
+/**
+ * Performance report of a single run: the time spent in each phase, the transferred bytes and the ARCHE requests by status code. Phases running
+ * in several threads at the same time are summed, so their total can exceed the duration of the run.
+ */
+@Log4j2
+public class IngestReport {
+
+    public static final String METADATA_READ = "metadataRead";
+    public static final String FOLDER_SCAN = "folderScan";
+    public static final String MODEL_BUILD = "modelBuild";
+    public static final String TTL_WRITE = "ttlWrite";
+    public static final String FILE_COPY = "fileCopy";
+    public static final String UPLOAD_METADATA = "uploadMetadata";
+    public static final String UPLOAD_BINARY = "uploadBinary";
+    public static final String UPLOAD_XML = "uploadXml";
+    public static final String COMMIT = "commit";
+
+    private final Instant started = Instant.now();
+    private final long startNanos = System.nanoTime();
+
+    private final Map<String, LongAdder> phaseNanos = new ConcurrentHashMap<>();
+    private final Map<String, LongAdder> phaseCounts = new ConcurrentHashMap<>();
+
+    private final LongAdder uploadedBytes = new LongAdder();
+    private final LongAdder copiedBytes = new LongAdder();
+
+    @Getter
+    private final RequestStatistics requests = new RequestStatistics();
+
+    private long durationNanos = -1;
+    private String result;
+
+    /**
+     * Add the duration of a phase
+     *
+     * @param phase
+     * @param start value of System.nanoTime() at the start of the phase
+     */
+
+    public void addPhase(String phase, long start) {
+        phaseNanos.computeIfAbsent(phase, k -> new LongAdder()).add(System.nanoTime() - start);
+        phaseCounts.computeIfAbsent(phase, k -> new LongAdder()).increment();
+    }
+
+    public void addUploadedBytes(long bytes) {
+        uploadedBytes.add(bytes);
+    }
+
+    public void addCopiedBytes(long bytes) {
+        copiedBytes.add(bytes);
+    }
+
+    /**
+     * Finish the report
+     *
+     * @param result result of the run, e.g. FINISH or ERROR
+     */
+
+    public void finish(String result) {
+        this.result = result;
+        durationNanos = System.nanoTime() - startNanos;
+    }
+
+    public String toJson() {
+        JsonObject report = new JsonObject();
+        report.addProperty("started", started.toString());
+        report.addProperty("durationMillis", toMillis(durationNanos >= 0 ? durationNanos : System.nanoTime() - startNanos));
+        report.addProperty("result", result);
+
+        JsonObject phases = new JsonObject();
+        for (Map.Entry<String, LongAdder> entry : new TreeMap<>(phaseNanos).entrySet()) {
+            JsonObject phase = new JsonObject();
+            phase.addProperty("millis", toMillis(entry.getValue().sum()));
+            phase.addProperty("count", phaseCounts.get(entry.getKey()).sum());
+            phases.add(entry.getKey(), phase);
+        }
+        report.add("phases", phases);
+
+        JsonObject bytes = new JsonObject();
+        bytes.addProperty("uploaded", uploadedBytes.sum());
+        bytes.addProperty("copied", copiedBytes.sum());
+        report.add("bytes", bytes);
+
+        JsonObject requestCounts = new JsonObject();
+        requestCounts.addProperty("total", requests.getRequests());
+        requestCounts.addProperty("failed", requests.getFailures());
+        requestCounts.addProperty("retries", requests.getRetries());
+        JsonObject status = new JsonObject();
+        requests.getStatusCounts().forEach((code, count) -> status.addProperty(String.valueOf(code), count));
+        requestCounts.add("status", status);
+        report.add("requests", requestCounts);
+
+        JsonObject throughput = new JsonObject();
+        LongAdder binaryNanos = phaseNanos.get(UPLOAD_BINARY);
+        long binarySum = binaryNanos == null ? 0 : binaryNanos.sum();
+        // bytes per second of a single upload thread
+        throughput.addProperty("binaryBytesPerSecond", binarySum > 0 ? uploadedBytes.sum() * 1_000_000_000d / binarySum : 0);
+        long runNanos = durationNanos >= 0 ? durationNanos : System.nanoTime() - startNanos;
+        throughput.addProperty("requestsPerSecond", runNanos > 0 ? requests.getRequests() * 1_000_000_000d / runNanos : 0);
+        report.add("throughput", throughput);
+
+        return new GsonBuilder().setPrettyPrinting().create().toJson(report);
+    }
+
+    /**
+     * Write the report as JSON file. Errors are only logged, the report must not fail the ingest.
+     *
+     * @param file
+     */
+
+    public void write(Path file) {
+        try {
+            Files.createDirectories(file.getParent());
+            try (Writer writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+                writer.write(toJson());
+            }
+        } catch (IOException e) {
+            log.error("Cannot write ingest report {}", file, e);
+        }
+    }
+
+    private static long toMillis(long nanos) {
+        return nanos / 1_000_000;
+    }
+}
@@ -0,0 +1,125 @@
+package de.intranda.goobi.plugins;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.lang3.StringUtils;
+import org.goobi.beans.Process;
+
+import de.sub.goobi.config.ConfigurationHelper;
+import de.sub.goobi.helper.StorageProvider;
+import de.sub.goobi.helper.exceptions.SwapException;
+import lombok.extern.log4j.Log4j2;
+
+/**
+ * Resolves the master, media and ALTO folders of a process directly from the process configuration instead of listing the whole process
+ * directory. Folder contents are listed on first access only, sorted by filename and kept for the rest of the run.
+ */
+@Log4j2
+public class ProcessFolderResolver {
+
+    private final Process process;
+
+    private Path masterFolder;
+    private Path mediaFolder;
+    private Path altoFolder;
+    private boolean resolved;
+
+    private final Map<Path, List<Path>> listings = new HashMap<>();
+
+    public ProcessFolderResolver(Process process) {
+        this.process = process;
+    }
+
+    private void resolve() throws IOException, SwapException {
+        if (!resolved) {
+            masterFolder = existingFolder(process.getImagesOrigDirectory(false));
+            mediaFolder = existingFolder(process.getImagesTifDirectory(false));
+            altoFolder = existingFolder(process.getOcrAltoDirectory());
+            resolved = true;
+        }
+    }
+
+    private Path existingFolder(String folderName) {
+        if (StringUtils.isBlank(folderName)) {
+            return null;
+        }
+        Path folder = Paths.get(folderName);
+        return StorageProvider.getInstance().isFileExists(folder) ? folder : null;
+    }
+
+    /**
+     * @return the master folder or null, if it does not exist
+     * @throws IOException
+     * @throws SwapException
+     */
+    public Path getMasterFolder() throws IOException, SwapException {
+        resolve();
+        return masterFolder;
+    }
+
+    /**
+     * @return the media folder or null, if it does not exist
+     * @throws IOException
+     * @throws SwapException
+     */
+    public Path getMediaFolder() throws IOException, SwapException {
+        resolve();
+        return mediaFolder;
+    }
+
+    /**
+     * @return the ALTO folder or null, if it does not exist
+     * @throws IOException
+     * @throws SwapException
+     */
+    public Path getAltoFolder() throws IOException, SwapException {
+        resolve();
+        return altoFolder;
+    }
+
+    /**
+     * Get the files of a folder, sorted by name. The folder is listed on the first call only.
+     *
+     * @param folder
+     * @return
+     */
+
+    public List<Path> listFiles(Path folder) {
+        if (folder == null) {
+            return Collections.emptyList();
+        }
+        return listings.computeIfAbsent(folder, this::readFolder);
+    }
+
+    private List<Path> readFolder(Path folder) {
+        if (ConfigurationHelper.getInstance().useS3()) {
+            // the storage provider lists only the objects with the folder prefix
+            return StorageProvider.getInstance().listFiles(folder.toString());
+        }
+        List<Path> content = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(folder, p -> Files.isRegularFile(p) && !isHidden(p))) {
+            for (Path p : stream) {
+                content.add(p);
+            }
+        } catch (IOException e) {
+            log.error(e);
+            return Collections.emptyList();
+        }
+        content.sort(Comparator.comparing(p -> p.getFileName().toString()));
+        return content;
+    }
+
+    private static boolean isHidden(Path p) {
+        return p.getFileName().toString().startsWith(".");
+    }
+}
@@ -0,0 +1,26 @@
+package de.intranda.goobi.plugins;
+
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight recorder event for building the RDF model of a resource
+ */
+@Name("org.goobi.arche.ResourceBuild")
+@Label("Resource Build")
+@Category({ "Goobi", "ARCHE" })
+@StackTrace(false)
+public class ResourceBuildEvent extends Event {
+
+    @Label("Type")
+    String type;
+
+    @Label("Resource")
+    String resource;
+
+    @Label("Statements")
+    long statements;
+}
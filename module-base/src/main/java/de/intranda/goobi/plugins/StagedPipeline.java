@@ -0,0 +1,237 @@
+package de.intranda.goobi.plugins;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.goobi.api.rest.ArcheMetrics;
+
+import lombok.extern.log4j.Log4j2;
+
+/**
+ * Processes elements in a chain of stages. Each stage has its own threads and is connected to the next stage by a bounded queue, so all stages
+ * work at the same time. When a queue is full, the previous stage waits until the next stage has caught up.
+ *
+ * If a stage fails for any element, including errors like an OutOfMemoryError, no new elements are started and the pipeline result is false.
+ * The remaining elements are still taken from the queues, so no stage waits forever.
+ *
+ * The number of elements waiting before each stage is published in the {@link ArcheMetrics}, summed over all pipelines.
+ *
+ * @param <T> type of the elements passed to the next stage
+ */
+@Log4j2
+public final class StagedPipeline<T> {
+
+    /**
+     * A stage transforming one element into the element for the next stage. The result must not be null.
+     */
+    @FunctionalInterface
+    public interface Stage<I, O> {
+        O apply(I input) throws Exception; //NOSONAR
+    }
+
+    /**
+     * The last stage of the pipeline
+     */
+    @FunctionalInterface
+    public interface Sink<I> {
+        /**
+         * @param input
+         * @return false, if the element could not be processed and the pipeline must stop
+         */
+        boolean accept(I input) throws Exception; //NOSONAR
+    }
+
+    private static final Object END = new Object();
+
+    private record StageDefinition(String name, int threads, Stage<Object, Object> function) {
+    }
+
+    private final String name;
+    private final Iterable<?> source;
+    private final int queueSize;
+    private final List<StageDefinition> stages;
+
+    private StagedPipeline(String name, Iterable<?> source, int queueSize, List<StageDefinition> stages) {
+        this.name = name;
+        this.source = source;
+        this.queueSize = queueSize;
+        this.stages = stages;
+    }
+
+    /**
+     * Create a pipeline. The source is read in the calling thread, it can list the elements lazily.
+     *
+     * @param name used as prefix for the thread names
+     * @param source
+     * @param queueSize capacity of the queues between the stages
+     * @return
+     */
+
+    public static <T> StagedPipeline<T> from(String name, Iterable<T> source, int queueSize) {
+        return new StagedPipeline<>(name, source, Math.max(queueSize, 1), new ArrayList<>());
+    }
+
+    /**
+     * Add a stage
+     *
+     * @param stageName
+     * @param threads number of threads working on this stage
+     * @param function
+     * @return
+     */
+
+    @SuppressWarnings("unchecked")
+    public <R> StagedPipeline<R> then(String stageName, int threads, Stage<? super T, ? extends R> function) {
+        List<StageDefinition> next = new ArrayList<>(stages);
+        next.add(new StageDefinition(stageName, Math.max(threads, 1), (Stage<Object, Object>) function));
+        return new StagedPipeline<>(name, source, queueSize, next);
+    }
+
+    /**
+     * Add the last stage and process all elements of the source. The method returns when all elements are processed or the pipeline was
+     * stopped.
+     *
+     * @param stageName
+     * @param threads
+     * @param sink
+     * @return true, if all elements were processed successfully
+     */
+
+    @SuppressWarnings("unchecked")
+    public boolean run(String stageName, int threads, Sink<? super T> sink) {
+        List<StageDefinition> all = new ArrayList<>(stages);
+        Sink<Object> last = (Sink<Object>) sink;
+        all.add(new StageDefinition(stageName, Math.max(threads, 1), in -> last.accept(in) ? in : null));
+
+        AtomicBoolean failed = new AtomicBoolean();
+        List<BlockingQueue<Object>> queues = new ArrayList<>();
+        List<AtomicInteger> depths = new ArrayList<>();
+        for (int i = 0; i < all.size(); i++) {
+            queues.add(new ArrayBlockingQueue<>(queueSize));
+            depths.add(ArcheMetrics.getInstance().queueDepth(all.get(i).name()));
+        }
+        int totalThreads = all.stream().mapToInt(StageDefinition::threads).sum();
+        CountDownLatch done = new CountDownLatch(totalThreads);
+
+        for (int i = 0; i < all.size(); i++) {
+            StageDefinition stage = all.get(i);
+            BlockingQueue<Object> in = queues.get(i);
+            AtomicInteger inDepth = depths.get(i);
+            // the output of the sink is not used
+            BlockingQueue<Object> out = i == all.size() - 1 ? null : queues.get(i + 1);
+            AtomicInteger outDepth = i == all.size() - 1 ? null : depths.get(i + 1);
+            AtomicInteger running = new AtomicInteger(stage.threads());
+            for (int t = 0; t < stage.threads(); t++) {
+                Thread thread = new Thread(() -> {
+                    try {
+                        work(stage, in, inDepth, out, outDepth, failed);
+                    } catch (Throwable e) { //NOSONAR a stage thread must not end without releasing the previous stage
+                        log.error("Stage {} of pipeline {} failed", stage.name(), name, e);
+                        failed.set(true);
+                        drain(in, inDepth);
+                    } finally {
+                        // the last thread of a stage tells the next stage that no more elements will come
+                        if (running.decrementAndGet() == 0 && out != null) {
+                            putQuietly(out, END);
+                        }
+                        done.countDown();
+                    }
+                }, name + "-" + stage.name() + "-" + (t + 1));
+                thread.setDaemon(true);
+                thread.start();
+            }
+        }
+
+        BlockingQueue<Object> first = queues.get(0);
+        Iterator<?> iterator = source.iterator();
+        try {
+            while (!failed.get() && iterator.hasNext()) {
+                first.put(iterator.next());
+                depths.get(0).incrementAndGet();
+            }
+        } catch (InterruptedException e) {
+            failed.set(true);
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException e) {
+            log.error("Cannot read the elements of pipeline {}", name, e);
+            failed.set(true);
+        }
+        putQuietly(first, END);
+
+        try {
+            done.await();
+        } catch (InterruptedException e) {
+            failed.set(true);
+            Thread.currentThread().interrupt();
+        }
+        return !failed.get();
+    }
+
+    private void work(StageDefinition stage, BlockingQueue<Object> in, AtomicInteger inDepth, BlockingQueue<Object> out, AtomicInteger outDepth,
+            AtomicBoolean failed) {
+        try {
+            while (true) {
+                Object element = in.take();
+                if (element == END) {
+                    // leave the marker for the other threads of this stage
+                    in.put(END);
+                    return;
+                }
+                inDepth.decrementAndGet();
+                if (failed.get()) {
+                    // keep reading to release the previous stages, but do not start new work
+                    continue;
+                }
+                Object result = apply(stage, element);
+                if (result == null) {
+                    failed.set(true);
+                } else if (out != null) {
+                    out.put(result);
+                    outDepth.incrementAndGet();
+                }
+            }
+        } catch (InterruptedException e) {
+            failed.set(true);
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private Object apply(StageDefinition stage, Object element) {
+        try {
+            return stage.function().apply(element);
+        } catch (Exception | Error e) { //NOSONAR errors of a single element, e.g. from an image reader, must stop the pipeline as well
+            log.error("Stage {} of pipeline {} failed", stage.name(), name, e);
+            return null;
+        }
+    }
+
+    /**
+     * Take the remaining elements of a queue until the end marker, so the previous stage is not blocked
+     */
+
+    private static void drain(BlockingQueue<Object> in, AtomicInteger inDepth) {
+        try {
+            Object element;
+            while ((element = in.take()) != END) {
+                inDepth.decrementAndGet();
+            }
+            in.put(END);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void putQuietly(BlockingQueue<Object> queue, Object element) {
+        try {
+            queue.put(element);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
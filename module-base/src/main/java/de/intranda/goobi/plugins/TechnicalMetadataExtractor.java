@@ -0,0 +1,293 @@
+package de.intranda.goobi.plugins;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.AbstractMap;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Semaphore;
+import java.util.stream.Collectors;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+
+import org.apache.commons.io.FilenameUtils;
+import org.goobi.api.rest.S3RangeSource;
+
+import de.sub.goobi.config.ConfigurationHelper;
+import de.sub.goobi.helper.StorageProvider;
+import lombok.extern.log4j.Log4j2;
+
+/**
+ * Extracts size, mime type and image dimensions of files in parallel. Only the file headers are read, image data is never decoded. The results
+ * are cached by path and modification date, so files that did not change are not read again in later runs.
+ *
+ * On S3 each file costs two requests: one for size and modification date and one ranged read of the first {@value #S3_HEADER_SIZE} bytes. The
+ * dimensions are taken from these bytes only, if they are not contained, e.g. in a TIFF file with the directory at the end, they are left out
+ * instead of downloading the whole file. The number of concurrent S3 reads of all ingests is limited and the waiting reads are served in order.
+ */
+@Log4j2
+public class TechnicalMetadataExtractor {
+
+    private static final int HEADER_SIZE = 16;
+
+    /** bytes read from S3 to detect mime type and image dimensions */
+    static final int S3_HEADER_SIZE = 64 * 1024;
+
+    public static final int DEFAULT_MAX_S3_READS = 8;
+
+    private static final int CACHE_SIZE = 100000;
+
+    private static final LruCache<CacheKey, FileTechnicalMetadata> CACHE = new LruCache<>(CACHE_SIZE);
+
+    private static final ForkJoinPool POOL = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+
+    /** concurrent S3 reads of all ingests, fair so the reads of one large process do not overtake the others */
+    private static Semaphore s3Reads = new Semaphore(DEFAULT_MAX_S3_READS, true);
+    private static int maxS3Reads = DEFAULT_MAX_S3_READS;
+
+    private record CacheKey(Path path, long lastModified) {
+    }
+
+    /**
+     * Set the maximum number of concurrent S3 reads of all ingests. Reads that already wait keep the previous limit.
+     *
+     * @param reads
+     */
+
+    public static synchronized void setMaxS3Reads(int reads) {
+        int value = Math.max(reads, 1);
+        if (value != maxS3Reads) {
+            maxS3Reads = value;
+            s3Reads = new Semaphore(value, true);
+        }
+    }
+
+    private static synchronized Semaphore getS3Reads() {
+        return s3Reads;
+    }
+
+    /**
+     * Extract the technical metadata of all files, using all available cores
+     *
+     * @param files
+     * @return map with an entry for each readable file
+     */
+
+    public Map<Path, FileTechnicalMetadata> extract(Collection<Path> files) {
+        try {
+            return POOL.submit(() -> files.parallelStream()
+                    .map(f -> new AbstractMap.SimpleImmutableEntry<>(f, extract(f)))
+                    .filter(e -> e.getValue() != null)
+                    .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue)))
+                    .get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            log.error(e);
+        }
+        return Map.of();
+    }
+
+    /**
+     * Extract the technical metadata of a single file
+     *
+     * @param file
+     * @return the metadata or null, if the file cannot be read
+     */
+
+    public FileTechnicalMetadata extract(Path file) {
+        if (ConfigurationHelper.getInstance().useS3()) {
+            Semaphore reads = getS3Reads();
+            try {
+                reads.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return null;
+            }
+            try {
+                return extractFromS3(file);
+            } finally {
+                reads.release();
+            }
+        }
+        StorageProvider storage = StorageProvider.getInstance();
+        try {
+            CacheKey key = new CacheKey(file, storage.getLastModifiedDate(file));
+            FileTechnicalMetadata cached = CACHE.get(key);
+            if (cached != null) {
+                return cached;
+            }
+            long size = storage.getFileSize(file);
+            byte[] header = new byte[HEADER_SIZE];
+            int headerLength;
+            try (InputStream in = storage.newInputStream(file)) {
+                headerLength = in.readNBytes(header, 0, HEADER_SIZE);
+            }
+            String mimeType = sniffMimeType(header, headerLength, file.getFileName().toString());
+            Integer width = null;
+            Integer height = null;
+            if (mimeType.startsWith("image/")) {
+                // local files allow random access, so only the header blocks are read
+                int[] dimension;
+                try (ImageInputStream iis = ImageIO.createImageInputStream(file.toFile())) {
+                    dimension = readDimension(iis);
+                }
+                if (dimension != null) {
+                    width = dimension[0];
+                    height = dimension[1];
+                }
+            }
+            FileTechnicalMetadata metadata = new FileTechnicalMetadata(size, mimeType, width, height);
+            CACHE.put(key, metadata);
+            return metadata;
+        } catch (IOException e) {
+            log.error("Cannot read technical metadata of {}", file, e);
+            return null;
+        }
+    }
+
+    /**
+     * Extract the technical metadata of a file in the S3 bucket with one HEAD request and one ranged read of the header
+     *
+     * @param file
+     * @return the metadata or null, if the file cannot be read
+     */
+
+    private FileTechnicalMetadata extractFromS3(Path file) {
+        try {
+            S3RangeSource source = S3RangeSource.forPath(file);
+            CacheKey key = new CacheKey(file, source.lastModified());
+            FileTechnicalMetadata cached = CACHE.get(key);
+            if (cached != null) {
+                return cached;
+            }
+            long size = source.length();
+            byte[] header = new byte[0];
+            if (size > 0) {
+                try (InputStream in = source.openRange(0, Math.min(size, S3_HEADER_SIZE))) {
+                    header = in.readNBytes(S3_HEADER_SIZE);
+                }
+            }
+            String mimeType = sniffMimeType(header, Math.min(header.length, HEADER_SIZE), file.getFileName().toString());
+            Integer width = null;
+            Integer height = null;
+            if (mimeType.startsWith("image/")) {
+                int[] dimension = readDimension(header);
+                if (dimension != null) {
+                    width = dimension[0];
+                    height = dimension[1];
+                } else {
+                    log.debug("Dimensions of {} are not within the first {} bytes", file, S3_HEADER_SIZE);
+                }
+            }
+            FileTechnicalMetadata metadata = new FileTechnicalMetadata(size, mimeType, width, height);
+            CACHE.put(key, metadata);
+            return metadata;
+        } catch (IOException e) {
+            log.error("Cannot read technical metadata of {}", file, e);
+            return null;
+        }
+    }
+
+    /**
+     * Read the image dimension from the first bytes of a file
+     *
+     * @param header
+     * @return width and height or null, if they are not contained in the bytes
+     */
+
+    static int[] readDimension(byte[] header) {
+        try (ImageInputStream iis = ImageIO.createImageInputStream(new ByteArrayInputStream(header))) {
+            return readDimension(iis);
+        } catch (IOException | IndexOutOfBoundsException e) {
+            // the image directory is behind the header
+            return null;
+        }
+    }
+
+    /**
+     * Detect the mime type from the magic number of the file, use the file extension as fallback
+     *
+     * @param header first bytes of the file
+     * @param length number of bytes in the header
+     * @param filename
+     * @return
+     */
+
+    static String sniffMimeType(byte[] header, int length, String filename) {
+        if (startsWith(header, length, 0x49, 0x49, 0x2A, 0x00) || startsWith(header, length, 0x4D, 0x4D, 0x00, 0x2A)) {
+            return "image/tiff";
+        }
+        if (startsWith(header, length, 0xFF, 0xD8, 0xFF)) {
+            return "image/jpeg";
+        }
+        if (startsWith(header, length, 0x89, 0x50, 0x4E, 0x47)) {
+            return "image/png";
+        }
+        if (startsWith(header, length, 0x00, 0x00, 0x00, 0x0C, 0x6A, 0x50, 0x20, 0x20)) {
+            return "image/jp2";
+        }
+        if (startsWith(header, length, 0x25, 0x50, 0x44, 0x46)) {
+            return "application/pdf";
+        }
+        String text = new String(header, 0, length, StandardCharsets.UTF_8).replace("\uFEFF", "").trim();
+        if (text.startsWith("<")) {
+            return "application/xml";
+        }
+        switch (FilenameUtils.getExtension(filename).toLowerCase()) {
+            case "xml":
+                return "application/xml";
+            case "jpg", "jpeg":
+                return "image/jpeg";
+            case "tif", "tiff":
+                return "image/tiff";
+            default:
+                return "application/octet-stream";
+        }
+    }
+
+    private static boolean startsWith(byte[] header, int length, int... magic) {
+        if (length < magic.length) {
+            return false;
+        }
+        for (int i = 0; i < magic.length; i++) {
+            if ((header[i] & 0xff) != magic[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Read the image dimension from the header. The image reader is asked for width and height only, the raster data is not read.
+     *
+     * @param iis
+     * @return width and height or null, if no image reader can handle the file
+     * @throws IOException
+     */
+
+    private static int[] readDimension(ImageInputStream iis) throws IOException {
+        if (iis == null) {
+            return null;
+        }
+        Iterator<ImageReader> readers = ImageIO.getImageReaders(iis);
+        if (!readers.hasNext()) {
+            return null;
+        }
+        ImageReader reader = readers.next();
+        try {
+            reader.setInput(iis, true, true);
+            return new int[] { reader.getWidth(0), reader.getHeight(0) };
+        } finally {
+            reader.dispose();
+        }
+    }
+}
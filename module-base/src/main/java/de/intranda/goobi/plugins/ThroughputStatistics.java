@@ -0,0 +1,116 @@
+package de.intranda.goobi.plugins;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Properties;
+import java.util.concurrent.atomic.LongAdder;
+
+import lombok.extern.log4j.Log4j2;
+
+/**
+ * Measures the duration of the ARCHE requests during an ingest. After a successful ingest the measured values are merged into the statistics
+ * stored in the state folder. The stored values are used to estimate the duration of future ingests.
+ */
+@Log4j2
+public class ThroughputStatistics {
+
+    /** weight of the last ingest in the stored average */
+    private static final double WEIGHT = 0.3;
+
+    private final Path statisticsFile;
+
+    private final LongAdder metadataRequests = new LongAdder();
+    private final LongAdder metadataNanos = new LongAdder();
+    private final LongAdder binaryBytes = new LongAdder();
+    private final LongAdder binaryNanos = new LongAdder();
+
+    public ThroughputStatistics(String stateFolder) {
+        statisticsFile = Path.of(stateFolder, "throughput.properties");
+    }
+
+    public void recordMetadata(long nanos) {
+        metadataRequests.increment();
+        metadataNanos.add(nanos);
+    }
+
+    public void recordBinary(long bytes, long nanos) {
+        binaryBytes.add(bytes);
+        binaryNanos.add(nanos);
+    }
+
+    /**
+     * Estimate the duration of an ingest from the stored statistics
+     *
+     * @param metadataRequestCount
+     * @param bytes
+     * @param parallelUploads
+     * @return the duration in milliseconds or -1, if no statistics are available
+     */
+
+    public long estimateMillis(long metadataRequestCount, long bytes, int parallelUploads) {
+        Properties stored = load();
+        double millisPerRequest = Double.parseDouble(stored.getProperty("millisPerMetadataRequest", "-1"));
+        double bytesPerMilli = Double.parseDouble(stored.getProperty("bytesPerMilli", "-1"));
+        if (millisPerRequest < 0 || (bytes > 0 && bytesPerMilli <= 0)) {
+            return -1;
+        }
+        double millis = metadataRequestCount * millisPerRequest + (bytes > 0 ? bytes / bytesPerMilli : 0);
+        return Math.round(millis / Math.max(parallelUploads, 1));
+    }
+
+    /**
+     * Merge the values measured since the last call into the stored statistics
+     */
+
+    public void save() {
+        synchronized (ThroughputStatistics.class) {
+            Properties stored = load();
+            long requests = metadataRequests.sumThenReset();
+            long requestNanos = metadataNanos.sumThenReset();
+            long bytes = binaryBytes.sumThenReset();
+            long bytesNanos = binaryNanos.sumThenReset();
+            if (requests > 0) {
+                double current = requestNanos / 1_000_000d / requests;
+                stored.setProperty("millisPerMetadataRequest", String.valueOf(merge(stored, "millisPerMetadataRequest", current)));
+            }
+            if (bytesNanos > 0 && bytes > 0) {
+                double current = bytes / (bytesNanos / 1_000_000d);
+                stored.setProperty("bytesPerMilli", String.valueOf(merge(stored, "bytesPerMilli", current)));
+            }
+            try {
+                Files.createDirectories(statisticsFile.getParent());
+                Path tmp = Files.createTempFile(statisticsFile.getParent(), "throughput", ".tmp");
+                try (OutputStream out = Files.newOutputStream(tmp)) {
+                    stored.store(out, "measured ARCHE throughput");
+                }
+                Files.move(tmp, statisticsFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException e) {
+                log.error("Cannot write throughput statistics {}", statisticsFile, e);
+            }
+        }
+    }
+
+    private static double merge(Properties stored, String key, double current) {
+        double previous = Double.parseDouble(stored.getProperty(key, "-1"));
+        if (previous <= 0) {
+            return current;
+        }
+        return WEIGHT * current + (1 - WEIGHT) * previous;
+    }
+
+    private Properties load() {
+        Properties properties = new Properties();
+        if (Files.exists(statisticsFile)) {
+            try (InputStream in = Files.newInputStream(statisticsFile)) {
+                properties.load(in);
+            } catch (IOException e) {
+                log.error("Cannot read throughput statistics {}", statisticsFile, e);
+            }
+        }
+        return properties;
+    }
+}
@@ -1,7 +1,9 @@
 package de.intranda.goobi.plugins;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 
 import java.io.File;
 import java.io.IOException;
@@ -9,8 +11,11 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
 
 import org.easymock.EasyMock;
 import org.goobi.beans.Process;
@@ -45,6 +50,9 @@ import ugh.fileformats.mets.MetsMods;
 @PowerMockIgnore({ "javax.management.*", "javax.xml.*", "org.xml.*", "org.w3c.*", "javax.net.ssl.*", "jdk.internal.reflect.*" })
 public class ArcheExportPluginTest {
 
+    /** number of pages in meta.xml */
+    private static final int PAGES = 10;
+
     private static String resourcesFolder;
 
     @Rule
@@ -88,6 +96,27 @@ public class ArcheExportPluginTest {
         assertNotNull(s);
     }
 
+    @Test
+    public void testTechnicalMetadataOfProcessImages() throws IOException {
+        Path images = processDirectory.toPath().resolve("images");
+        List<Path> files = List.of(images.resolve("00469418X_master").resolve("00000001.tif"), images.resolve("00469418X_media").resolve("00000001.jpg"));
+        Map<Path, FileTechnicalMetadata> metadata = new TechnicalMetadataExtractor().extract(files);
+        assertEquals(2, metadata.size());
+        for (Entry<Path, FileTechnicalMetadata> entry : metadata.entrySet()) {
+            FileTechnicalMetadata technical = entry.getValue();
+            assertEquals(entry.getKey().toString().endsWith(".tif") ? "image/tiff" : "image/jpeg", technical.getMimeType());
+            // the images of the process generator
+            assertEquals(Integer.valueOf(200), technical.getWidth());
+            assertEquals(Integer.valueOf(300), technical.getHeight());
+            assertEquals(Files.size(entry.getKey()), technical.getSize());
+
+            // the header read from S3
+            byte[] content = Files.readAllBytes(entry.getKey());
+            assertArrayEquals(new int[] { 200, 300 }, TechnicalMetadataExtractor.readDimension(content));
+            assertNull(TechnicalMetadataExtractor.readDimension(Arrays.copyOf(content, 16)));
+        }
+    }
+
     @Before
     public void setUp() throws Exception {
         metadataDirectory = folder.newFolder("metadata");
@@ -116,6 +145,7 @@ public class ArcheExportPluginTest {
         EasyMock.expect(configurationHelper.isUseMasterDirectory()).andReturn(true).anyTimes();
         EasyMock.expect(configurationHelper.getConfigurationFolder()).andReturn(resourcesFolder).anyTimes();
         EasyMock.expect(configurationHelper.getNumberOfMetaBackups()).andReturn(0).anyTimes();
+        EasyMock.expect(configurationHelper.getTemporaryFolder()).andReturn(folder.getRoot().getAbsolutePath() + File.separator).anyTimes();
         EasyMock.replay(configurationHelper);
 
         PowerMock.mockStatic(VariableReplacer.class);
@@ -195,6 +225,8 @@ public class ArcheExportPluginTest {
         File mediaDirectory = new File(imageDirectory.getAbsolutePath(), "00469418X_media");
         mediaDirectory.mkdir();
 
-        // TODO add some file
+        // the smallest valid images, one for each page of meta.xml, their technical metadata is tested
+        ProcessGenerator.writeImages(masterDirectory.toPath(), "tif", PAGES, 0);
+        ProcessGenerator.writeImages(mediaDirectory.toPath(), "jpg", PAGES, 0);
     }
 }
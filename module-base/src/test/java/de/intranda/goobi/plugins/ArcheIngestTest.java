@@ -0,0 +1,143 @@
+package de.intranda.goobi.plugins;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.apache.commons.configuration.XMLConfiguration;
+import org.apache.commons.configuration.tree.xpath.XPathExpressionEngine;
+import org.goobi.api.ArcheConfiguration;
+import org.goobi.api.rest.MockArche;
+import org.goobi.production.enums.PluginReturnValue;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import ugh.dl.Prefs;
+
+/**
+ * Complete ingests of a generated process against a {@link MockArche}
+ */
+public class ArcheIngestTest {
+
+    private static final int PAGES = 3;
+    private static final String TITLE = "AC12345678";
+
+    private static String resourcesFolder;
+    private static Prefs prefs;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private MockArche arche;
+    private GeneratedProcess process;
+    private Path exportFolder;
+
+    @BeforeClass
+    public static void setUpClass() throws Exception {
+        resourcesFolder = "src/test/resources/"; // for junit tests in eclipse
+        if (!Files.exists(Paths.get(resourcesFolder))) {
+            resourcesFolder = "target/test-classes/"; // to run mvn test from cli or in jenkins
+        }
+        System.setProperty("log4j.configurationFile", resourcesFolder + "log4j2.xml");
+        prefs = new Prefs();
+        prefs.loadPrefs(resourcesFolder + "ruleset.xml");
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        arche = new MockArche();
+        arche.setCredentials("test", "test");
+        process = new ProcessGenerator(prefs).pages(PAGES)
+                .alto(false)
+                .masterSize(10_000)
+                .mediaSize(5_000)
+                .generate(folder.newFolder("metadata").toPath(), 1, TITLE);
+        exportFolder = folder.newFolder("export").toPath();
+        FileformatCache.invalidate(process.getId());
+    }
+
+    @After
+    public void tearDown() {
+        arche.close();
+        FileformatCache.invalidate(process.getId());
+    }
+
+    @Test
+    public void testIngest() throws Exception {
+        assertEquals(PluginReturnValue.FINISH, createPlugin().runSynchronously());
+
+        assertEquals(0, arche.getTransactionCount());
+        // collection, publication, folders and one resource per file
+        assertTrue(arche.getResourceCount() > 2 * PAGES);
+        assertTrue(arche.getRequestCounts().get("PUT binary") >= 2 * PAGES);
+        assertExportComplete();
+    }
+
+    @Test
+    public void testFailedIngestIsRolledBack() throws Exception {
+        arche.failRequests("PUT binary", 500);
+        assertEquals(PluginReturnValue.ERROR, createPlugin().runSynchronously());
+
+        // nothing is committed and the transaction is cancelled
+        assertEquals(0, arche.getResourceCount());
+        assertEquals(0, arche.getTransactionCount());
+        assertTrue(arche.getRequestCounts().get("DELETE transaction") > 0);
+        // the export does not depend on the ingest
+        assertExportComplete();
+    }
+
+    private ArcheExportStepPlugin createPlugin() throws Exception {
+        ArcheExportStepPlugin plugin = new ArcheExportStepPlugin();
+        plugin.initialize(process.getStep(), new ArcheStepConfiguration(createStepConfiguration()),
+                new ArcheConfiguration(load("<config_plugin><api enableValidation=\"false\" enableIngest=\"true\"><archeApiUrl>"
+                        + arche.getBaseURI() + "</archeApiUrl><archeUserName>test</archeUserName><archePassword>test</archePassword></api>"
+                        + "<viewerUrl>https://viewer.example.org/viewer</viewerUrl></config_plugin>")));
+        return plugin;
+    }
+
+    private XMLConfiguration createStepConfiguration() throws Exception {
+        return load("<config><stateFolder>" + folder.newFolder("state") + "</stateFolder><exportFolder>" + exportFolder + "</exportFolder>"
+                + "<language><code iso639-1=\"de\" iso639-2=\"ger\" /></language>"
+                + "<tags><tag doctype=\"Monograph\" code=\"TEXT\" /></tags>"
+                + "<licenses><license internalName=\"CC BY 4.0\" archeField=\"https://vocabs.acdh.oeaw.ac.at/archelicenses/cc-by-4-0\" />"
+                + "</licenses></config>");
+    }
+
+    private static XMLConfiguration load(String xml) throws Exception {
+        XMLConfiguration config = new XMLConfiguration();
+        config.load(new StringReader(xml));
+        config.setExpressionEngine(new XPathExpressionEngine());
+        return config;
+    }
+
+    /**
+     * All files are in the export folder and no partial copy is left
+     */
+
+    private void assertExportComplete() throws IOException {
+        for (String type : new String[] { "_master", "_media" }) {
+            List<String> names = list(exportFolder.resolve(TITLE).resolve(TITLE + type));
+            assertEquals(names.toString(), PAGES, names.size());
+            assertFalse(names.toString(), names.stream().anyMatch(name -> name.endsWith(".part")));
+        }
+    }
+
+    private static List<String> list(Path directory) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.map(file -> file.getFileName().toString()).sorted().collect(Collectors.toList());
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package de.intranda.goobi.plugins;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+
+import org.junit.After;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import ugh.dl.DigitalDocument;
+import ugh.dl.DocStruct;
+import ugh.dl.Prefs;
+
+public class FileformatCacheTest {
+
+    private static final int PAGES = 3;
+
+    private static Prefs prefs;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @BeforeClass
+    public static void setUpClass() throws Exception {
+        String resourcesFolder = "src/test/resources/"; // for junit tests in eclipse
+        if (!Files.exists(Paths.get(resourcesFolder))) {
+            resourcesFolder = "target/test-classes/"; // to run mvn test from cli or in jenkins
+        }
+        System.setProperty("log4j.configurationFile", resourcesFolder + "log4j2.xml");
+        prefs = new Prefs();
+        prefs.loadPrefs(resourcesFolder + "ruleset.xml");
+    }
+
+    @After
+    public void tearDown() {
+        FileformatCache.setSize(FileformatCache.DEFAULT_SIZE);
+    }
+
+    private GeneratedProcess generate(int id) throws Exception {
+        GeneratedProcess process = new ProcessGenerator(prefs).pages(PAGES)
+                .alto(false)
+                .masterSize(1_000)
+                .mediaSize(1_000)
+                .generate(folder.newFolder("metadata" + id).toPath(), id, "AC" + id);
+        FileformatCache.invalidate(id);
+        return process;
+    }
+
+    @Test
+    public void testEachReadGetsOwnCopy() throws Exception {
+        GeneratedProcess process = generate(1001);
+        DigitalDocument first = FileformatCache.read(process);
+        DocStruct physical = first.getPhysicalDocStruct();
+        physical.removeChild(physical.getAllChildren().get(0));
+
+        DigitalDocument second = FileformatCache.read(process);
+        assertEquals(1, process.getReadCount());
+        assertNotSame(first, second);
+        // the change of the first caller is not visible
+        assertEquals(PAGES, second.getPhysicalDocStruct().getAllChildren().size());
+    }
+
+    @Test
+    public void testLeastRecentlyUsedProcessIsRemoved() throws Exception {
+        FileformatCache.setSize(2);
+        GeneratedProcess first = generate(1011);
+        GeneratedProcess second = generate(1012);
+        GeneratedProcess third = generate(1013);
+        FileformatCache.read(first);
+        FileformatCache.read(second);
+        // the first process was used last, the second one is removed
+        FileformatCache.read(first);
+        FileformatCache.read(third);
+
+        FileformatCache.read(first);
+        FileformatCache.read(third);
+        assertEquals(1, first.getReadCount());
+        assertEquals(1, third.getReadCount());
+        FileformatCache.read(second);
+        assertEquals(2, second.getReadCount());
+    }
+
+    @Test
+    public void testChangedFileIsReadAgain() throws Exception {
+        GeneratedProcess process = generate(1021);
+        Path metaFile = Paths.get(process.getMetadataFilePath());
+        FileformatCache.read(process);
+        FileformatCache.read(process);
+        assertEquals(1, process.getReadCount());
+
+        // new modification date
+        FileTime modified = FileTime.fromMillis(Files.getLastModifiedTime(metaFile).toMillis() + 10_000);
+        Files.setLastModifiedTime(metaFile, modified);
+        FileformatCache.read(process);
+        assertEquals(2, process.getReadCount());
+
+        // new size with the same modification date
+        Files.writeString(metaFile, "\n", StandardOpenOption.APPEND);
+        Files.setLastModifiedTime(metaFile, modified);
+        FileformatCache.read(process);
+        assertEquals(3, process.getReadCount());
+        FileformatCache.read(process);
+        assertEquals(3, process.getReadCount());
+    }
+
+    @Test
+    public void testDisabledCacheReadsEveryTime() throws Exception {
+        FileformatCache.setSize(0);
+        GeneratedProcess process = generate(1031);
+        FileformatCache.read(process);
+        FileformatCache.read(process);
+        assertEquals(2, process.getReadCount());
+    }
+}
@@ -0,0 +1,117 @@
+package de.intranda.goobi.plugins;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.goobi.beans.Process;
+import org.goobi.beans.Project;
+import org.goobi.beans.Step;
+import org.goobi.beans.User;
+
+import de.sub.goobi.helper.enums.StepStatus;
+import ugh.dl.Fileformat;
+import ugh.dl.Prefs;
+import ugh.exceptions.PreferencesException;
+import ugh.exceptions.ReadException;
+import ugh.fileformats.mets.MetsMods;
+
+/**
+ * A process written by the {@link ProcessGenerator}. The process folders are resolved inside the generated directory and the metadata is read
+ * with the given ruleset, so neither the Goobi configuration nor the database is needed.
+ */
+public class GeneratedProcess extends Process {
+
+    private static final long serialVersionUID = -3015727452839117346L;
+
+    private final Path directory;
+    private final transient Prefs prefs;
+    private final transient AtomicInteger reads = new AtomicInteger();
+
+    GeneratedProcess(Path directory, Prefs prefs, int id, String title) {
+        this.directory = directory;
+        this.prefs = prefs;
+        setId(id);
+        setTitel(title);
+        Project project = new Project();
+        project.setTitel("generated");
+        project.setProjectIdentifier("generated");
+        setProjekt(project);
+
+        Step step = new Step();
+        step.setReihenfolge(1);
+        step.setProzess(this);
+        step.setTitel("ARCHE export");
+        step.setBearbeitungsstatusEnum(StepStatus.OPEN);
+        User user = new User();
+        user.setVorname("Firstname");
+        user.setNachname("Lastname");
+        step.setBearbeitungsbenutzer(user);
+        List<Step> steps = new ArrayList<>();
+        steps.add(step);
+        setSchritte(steps);
+    }
+
+    /**
+     * @return the step of the export
+     */
+
+    public Step getStep() {
+        return getSchritte().get(0);
+    }
+
+    /**
+     * @return the process directory
+     */
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    /**
+     * @return number of times the metadata file was parsed
+     */
+
+    public int getReadCount() {
+        return reads.get();
+    }
+
+    @Override
+    public String getProcessDataDirectory() {
+        return directory.toString() + "/";
+    }
+
+    @Override
+    public String getMetadataFilePath() {
+        return directory.resolve("meta.xml").toString();
+    }
+
+    @Override
+    public String getImagesOrigDirectory(boolean useFallBack) {
+        return directory.resolve("images").resolve(getTitel() + "_master").toString() + "/";
+    }
+
+    @Override
+    public String getImagesTifDirectory(boolean useFallBack) {
+        return directory.resolve("images").resolve(getTitel() + "_media").toString() + "/";
+    }
+
+    @Override
+    public String getOcrAltoDirectory() {
+        return directory.resolve("ocr").resolve(getTitel() + "_alto").toString() + "/";
+    }
+
+    @Override
+    public Fileformat readMetadataFile() throws ReadException, IOException {
+        reads.incrementAndGet();
+        try {
+            Fileformat fileformat = new MetsMods(prefs);
+            fileformat.read(getMetadataFilePath());
+            return fileformat;
+        } catch (PreferencesException e) {
+            throw new IOException(e);
+        }
+    }
+}
@@ -0,0 +1,292 @@
+package de.intranda.goobi.plugins;
+
+import java.awt.Color;
+import java.awt.GradientPaint;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.imageio.ImageIO;
+
+import ugh.dl.ContentFile;
+import ugh.dl.DigitalDocument;
+import ugh.dl.DocStruct;
+import ugh.dl.FileSet;
+import ugh.dl.Metadata;
+import ugh.dl.Person;
+import ugh.dl.Prefs;
+import ugh.exceptions.UGHException;
+import ugh.fileformats.mets.MetsMods;
+
+/**
+ * Writes processes of any size for tests and benchmarks: meta.xml, meta_anchor.xml for a volume of a multi volume work, and the master, media
+ * and ALTO folders with one file per page. The images are valid TIFF and JPEG files, padded to the configured size, so the headers can be
+ * read like real images. The content depends only on the parameters.
+ */
+public class ProcessGenerator {
+
+    private static final String[] PERSON_ROLES = { "Author", "Editor", "Contributor", "Printer" };
+    private static final int IMAGE_WIDTH = 200;
+    private static final int IMAGE_HEIGHT = 300;
+    private static final int WORDS_PER_LINE = 10;
+
+    /** encoded images by format, they are only padded for each page */
+    private static final Map<String, byte[]> IMAGES = new ConcurrentHashMap<>();
+
+    private final Prefs prefs;
+    private int pages = 100;
+    private boolean anchor;
+    private boolean alto = true;
+    private int persons = 2;
+    private long masterSize = 1_000_000;
+    private long mediaSize = 200_000;
+    private int wordsPerPage = 300;
+
+    /**
+     * @param prefs ruleset with the types of the test ruleset: Monograph, MultiVolumeWork, Volume, BoundBook and page
+     */
+
+    public ProcessGenerator(Prefs prefs) {
+        this.prefs = prefs;
+    }
+
+    public ProcessGenerator pages(int pages) {
+        this.pages = pages;
+        return this;
+    }
+
+    /**
+     * Write a volume of a multi volume work with meta_anchor.xml instead of a monograph
+     */
+
+    public ProcessGenerator anchor(boolean anchor) {
+        this.anchor = anchor;
+        return this;
+    }
+
+    /**
+     * Write an ALTO file for each page
+     */
+
+    public ProcessGenerator alto(boolean alto) {
+        this.alto = alto;
+        return this;
+    }
+
+    public ProcessGenerator persons(int persons) {
+        this.persons = persons;
+        return this;
+    }
+
+    /**
+     * Size of each master file in bytes, the files are not smaller than the encoded image
+     */
+
+    public ProcessGenerator masterSize(long masterSize) {
+        this.masterSize = masterSize;
+        return this;
+    }
+
+    /**
+     * Size of each media file in bytes, the files are not smaller than the encoded image
+     */
+
+    public ProcessGenerator mediaSize(long mediaSize) {
+        this.mediaSize = mediaSize;
+        return this;
+    }
+
+    public ProcessGenerator wordsPerPage(int wordsPerPage) {
+        this.wordsPerPage = wordsPerPage;
+        return this;
+    }
+
+    /**
+     * Write the process to {metadataFolder}/{id}
+     *
+     * @param metadataFolder
+     * @param id process id
+     * @param title process title, used as catalogue identifier and in the folder names
+     * @return the process
+     * @throws IOException
+     * @throws UGHException
+     */
+
+    public GeneratedProcess generate(Path metadataFolder, int id, String title) throws IOException, UGHException {
+        GeneratedProcess process = new GeneratedProcess(metadataFolder.resolve(String.valueOf(id)), prefs, id, title);
+        Path masterFolder = Files.createDirectories(Path.of(process.getImagesOrigDirectory(false)));
+        Path mediaFolder = Files.createDirectories(Path.of(process.getImagesTifDirectory(false)));
+        Files.createDirectories(process.getDirectory().resolve("logs"));
+        writeImages(masterFolder, "tif", pages, masterSize);
+        writeImages(mediaFolder, "jpg", pages, mediaSize);
+        if (alto) {
+            writeAlto(Files.createDirectories(Path.of(process.getOcrAltoDirectory())), pages, wordsPerPage);
+        }
+        writeMetadata(process, mediaFolder, title);
+        return process;
+    }
+
+    /**
+     * Create the logical structure in memory: a monograph, or a multi volume work with one volume
+     *
+     * @param dd the document, its logical structure is set
+     * @param title process title, used as catalogue identifier
+     * @return the monograph or the volume
+     * @throws UGHException
+     */
+
+    public DocStruct createLogicalStructure(DigitalDocument dd, String title) throws UGHException {
+        DocStruct logical;
+        if (anchor) {
+            DocStruct work = dd.createDocStruct(prefs.getDocStrctTypeByName("MultiVolumeWork"));
+            addMetadata(work, "TitleDocMain", "Generated multi volume work");
+            addMetadata(work, "CatalogIDDigital", title + "_anchor");
+            addMetadata(work, "DocLanguage", "ger");
+            logical = dd.createDocStruct(prefs.getDocStrctTypeByName("Volume"));
+            work.addChild(logical);
+            addMetadata(logical, "CurrentNo", "1");
+            dd.setLogicalDocStruct(work);
+        } else {
+            logical = dd.createDocStruct(prefs.getDocStrctTypeByName("Monograph"));
+            dd.setLogicalDocStruct(logical);
+        }
+        addMetadata(logical, "TitleDocMain", "Generated publication with " + pages + " pages");
+        addMetadata(logical, "TitleDocSub1", "generated for tests and benchmarks");
+        addMetadata(logical, "TitleDocMainShort", "Generated publication");
+        addMetadata(logical, "CatalogIDDigital", title);
+        addMetadata(logical, "DocLanguage", "ger");
+        addMetadata(logical, "PublicationYear", "1875");
+        addMetadata(logical, "PlaceOfPublication", "Wien");
+        addMetadata(logical, "PublisherName", "Generated Publishing House");
+        addMetadata(logical, "shelfmarksource", "GEN-" + pages);
+        for (int i = 0; i < persons; i++) {
+            Person person = new Person(prefs.getMetadataTypeByName(PERSON_ROLES[i % PERSON_ROLES.length]));
+            person.setFirstname("Firstname" + i);
+            person.setLastname("Lastname" + i);
+            // every second person has an authority identifier
+            if (i % 2 == 1) {
+                person.setAuthorityID("gnd");
+                person.setAuthorityURI("https://d-nb.info/gnd/");
+                person.setAuthorityValue(String.valueOf(100000000 + i));
+            }
+            logical.addPerson(person);
+        }
+        return logical;
+    }
+
+    private void writeMetadata(GeneratedProcess process, Path mediaFolder, String title) throws UGHException {
+        DigitalDocument dd = new DigitalDocument();
+        DocStruct logical = createLogicalStructure(dd, title);
+
+        DocStruct physical = dd.createDocStruct(prefs.getDocStrctTypeByName("BoundBook"));
+        addMetadata(physical, "pathimagefiles", mediaFolder.toString());
+        dd.setPhysicalDocStruct(physical);
+        FileSet fileSet = new FileSet();
+        dd.setFileSet(fileSet);
+        for (int i = 1; i <= pages; i++) {
+            DocStruct page = dd.createDocStruct(prefs.getDocStrctTypeByName("page"));
+            physical.addChild(page);
+            addMetadata(page, "physPageNumber", String.valueOf(i));
+            addMetadata(page, "logicalPageNumber", String.valueOf(i));
+            logical.addReferenceTo(page, "logical_physical");
+            ContentFile file = new ContentFile();
+            file.setLocation(mediaFolder.resolve(getFilename(i, "jpg")).toString());
+            file.setMimetype("image/jpeg");
+            fileSet.addFile(file);
+            page.addContentFile(file);
+        }
+
+        MetsMods mets = new MetsMods(prefs);
+        mets.setDigitalDocument(dd);
+        // ugh writes the anchor to meta_anchor.xml
+        mets.write(process.getMetadataFilePath());
+    }
+
+    private void addMetadata(DocStruct docstruct, String type, String value) throws UGHException {
+        Metadata md = new Metadata(prefs.getMetadataTypeByName(type));
+        md.setValue(value);
+        docstruct.addMetadata(md);
+    }
+
+    /**
+     * Write images named 00000001.tif, 00000002.tif, ...
+     *
+     * @param folder
+     * @param extension tif or jpg
+     * @param pages number of files
+     * @param size size of each file in bytes
+     * @throws IOException
+     */
+
+    public static void writeImages(Path folder, String extension, int pages, long size) throws IOException {
+        byte[] image = IMAGES.computeIfAbsent(extension, ProcessGenerator::encodeImage);
+        // the readers ignore the data after the image, so the same padded bytes are used for all pages
+        byte[] content = Arrays.copyOf(image, (int) Math.max(size, image.length));
+        for (int i = 1; i <= pages; i++) {
+            Files.write(folder.resolve(getFilename(i, extension)), content);
+        }
+    }
+
+    /**
+     * Write ALTO files named 00000001.xml, 00000002.xml, ...
+     *
+     * @param folder
+     * @param pages number of files
+     * @param wordsPerPage
+     * @throws IOException
+     */
+
+    public static void writeAlto(Path folder, int pages, int wordsPerPage) throws IOException {
+        for (int i = 1; i <= pages; i++) {
+            StringBuilder xml = new StringBuilder("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+            xml.append("<alto xmlns=\"http://www.loc.gov/standards/alto/ns-v4#\">\n");
+            xml.append("  <Description><MeasurementUnit>pixel</MeasurementUnit><sourceImageInformation><fileName>")
+                    .append(getFilename(i, "tif"))
+                    .append("</fileName></sourceImageInformation></Description>\n");
+            xml.append("  <Layout><Page ID=\"Page").append(i).append("\" PHYSICAL_IMG_NR=\"").append(i).append("\" WIDTH=\"").append(IMAGE_WIDTH);
+            xml.append("\" HEIGHT=\"").append(IMAGE_HEIGHT).append("\"><PrintSpace><TextBlock ID=\"Block1\">\n");
+            for (int word = 0; word < wordsPerPage; word++) {
+                int line = word / WORDS_PER_LINE;
+                if (word % WORDS_PER_LINE == 0) {
+                    xml.append("    <TextLine ID=\"Line").append(line + 1).append("\">");
+                }
+                xml.append("<String CONTENT=\"word").append(word).append("\" HPOS=\"").append(word % WORDS_PER_LINE * 20);
+                xml.append("\" VPOS=\"").append(line * 10).append("\" WIDTH=\"18\" HEIGHT=\"9\"/>");
+                if (word % WORDS_PER_LINE == WORDS_PER_LINE - 1 || word == wordsPerPage - 1) {
+                    xml.append("</TextLine>\n");
+                }
+            }
+            xml.append("  </TextBlock></PrintSpace></Page></Layout>\n</alto>\n");
+            Files.writeString(folder.resolve(getFilename(i, "xml")), xml, StandardCharsets.UTF_8);
+        }
+    }
+
+    private static String getFilename(int page, String extension) {
+        return String.format("%08d.%s", page, extension);
+    }
+
+    private static byte[] encodeImage(String extension) {
+        BufferedImage image = new BufferedImage(IMAGE_WIDTH, IMAGE_HEIGHT, BufferedImage.TYPE_BYTE_GRAY);
+        Graphics2D graphics = image.createGraphics();
+        graphics.setPaint(new GradientPaint(0, 0, Color.WHITE, IMAGE_WIDTH, IMAGE_HEIGHT, Color.LIGHT_GRAY));
+        graphics.fillRect(0, 0, IMAGE_WIDTH, IMAGE_HEIGHT);
+        graphics.dispose();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            if (!ImageIO.write(image, "tif".equals(extension) ? "tiff" : "jpeg", out)) {
+                throw new IOException("No image writer for " + extension);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,63 @@
+package de.intranda.goobi.plugins;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.junit.Test;
+
+public class StagedPipelineTest {
+
+    private static final List<Integer> ELEMENTS = IntStream.range(0, 100).boxed().collect(Collectors.toList());
+
+    @Test
+    public void testAllElementsProcessed() {
+        AtomicInteger sum = new AtomicInteger();
+        assertTrue(StagedPipeline.from("test", ELEMENTS, 2)
+                .then("double", 3, i -> i * 2)
+                .run("sum", 2, i -> {
+                    sum.addAndGet(i);
+                    return true;
+                }));
+        assertEquals(9900, sum.get());
+    }
+
+    @Test
+    public void testFailedElementStopsPipeline() {
+        assertFalse(StagedPipeline.from("test", ELEMENTS, 2).then("parse", 2, i -> {
+            if (i == 10) {
+                throw new IllegalStateException("cannot parse " + i);
+            }
+            return i;
+        }).run("upload", 1, i -> true));
+    }
+
+    @Test(timeout = 10000)
+    public void testErrorInSingleThreadStageDoesNotBlock() {
+        // the queue of one element is full after the error, the source must still be able to finish
+        assertFalse(StagedPipeline.from("test", ELEMENTS, 1).then("read image", 1, i -> {
+            if (i == 3) {
+                throw new OutOfMemoryError("test");
+            }
+            return i;
+        }).run("upload", 1, i -> true));
+    }
+
+    @Test(timeout = 10000)
+    public void testErrorInSinkFailsPipeline() {
+        AtomicInteger uploaded = new AtomicInteger();
+        assertFalse(StagedPipeline.from("test", ELEMENTS, 1).run("upload", 3, i -> {
+            if (i == 50) {
+                throw new NoClassDefFoundError("test");
+            }
+            uploaded.incrementAndGet();
+            return true;
+        }));
+        assertTrue(uploaded.get() < ELEMENTS.size());
+    }
+}
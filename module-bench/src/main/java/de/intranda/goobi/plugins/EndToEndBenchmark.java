@@ -0,0 +1,218 @@
+package de.intranda.goobi.plugins;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.configuration.XMLConfiguration;
+import org.apache.commons.io.FileUtils;
+import org.goobi.api.ArcheConfiguration;
+import org.goobi.api.rest.ArcheReplay;
+import org.goobi.api.rest.MockArche;
+import org.goobi.production.enums.PluginReturnValue;
+
+import com.google.gson.GsonBuilder;
+
+/**
+ * Runs complete ingests of a generated process against a local {@link MockArche} and reports pages/sec, MB/sec, peak heap and the requests
+ * per endpoint. Unlike the JMH benchmarks, it measures the whole run of the plugin: reading the METS file, scanning the folders, building the
+ * resources and uploading metadata and files.
+ *
+ * <pre>
+ * java -cp module-bench/target/benchmarks.jar de.intranda.goobi.plugins.EndToEndBenchmark --pages 2000 --latency 20 --json e2e.json
+ * </pre>
+ *
+ * With --replay the answers of a recorded production ingest are replayed by an {@link ArcheReplay} instead, at the recorded durations or
+ * accelerated by --speed.
+ */
+public class EndToEndBenchmark {
+
+    private static final String TITLE = "AC12345678";
+
+    /** options with their default values */
+    private final Map<String, String> options = new LinkedHashMap<>();
+
+    private EndToEndBenchmark(String[] args) {
+        options.put("pages", "1000");
+        options.put("anchor", "false");
+        options.put("alto", "true");
+        options.put("master-size", "500000");
+        options.put("media-size", "100000");
+        options.put("warmup", "1");
+        options.put("iterations", "3");
+        options.put("latency", "0");
+        options.put("commit-duration", "0");
+        options.put("bandwidth", "0");
+        options.put("error-rate", "0");
+        options.put("replay", "");
+        options.put("speed", "1");
+        options.put("config", "");
+        options.put("json", "");
+        for (int i = 0; i < args.length; i++) {
+            String name = args[i].replaceFirst("^--", "");
+            if (!options.containsKey(name) || i + 1 >= args.length) {
+                throw new IllegalArgumentException("Unknown option or missing value: " + args[i] + ", options: " + options.keySet());
+            }
+            options.put(name, args[++i]);
+        }
+    }
+
+    /**
+     * Result of one ingest
+     */
+    private record Run(String result, double seconds, double pagesPerSecond, double megabytesPerSecond, long peakHeapBytes, int requests,
+            Map<String, Integer> requestsByEndpoint) {
+    }
+
+    public static void main(String[] args) throws Exception {
+        new EndToEndBenchmark(args).run();
+    }
+
+    private void run() throws Exception {
+        int pages = intOption("pages");
+        Path work = Files.createTempDirectory("arche-e2e");
+        try {
+            System.out.printf("Generate process with %d pages in %s%n", pages, work);
+            GeneratedProcess process = new ProcessGenerator(SyntheticProcess.getPrefs()).pages(pages)
+                    .anchor(Boolean.parseBoolean(options.get("anchor")))
+                    .alto(Boolean.parseBoolean(options.get("alto")))
+                    .masterSize(Long.parseLong(options.get("master-size")))
+                    .mediaSize(Long.parseLong(options.get("media-size")))
+                    .generate(work.resolve("metadata"), 1, TITLE);
+
+            List<Run> runs = new ArrayList<>();
+            int warmup = intOption("warmup");
+            int iterations = intOption("iterations");
+            for (int i = 0; i < warmup + iterations; i++) {
+                Run run = ingest(process, work.resolve("state-" + i), pages);
+                boolean measured = i >= warmup;
+                System.out.printf("%s %d: %s in %.2f s, %.1f pages/s, %.1f MB/s, peak heap %d MB, %d requests%n",
+                        measured ? "Iteration" : "Warmup", measured ? i - warmup + 1 : i + 1, run.result(), run.seconds(), run.pagesPerSecond(),
+                        run.megabytesPerSecond(), run.peakHeapBytes() / 1_000_000, run.requests());
+                if (measured) {
+                    runs.add(run);
+                }
+            }
+            if (!runs.isEmpty()) {
+                System.out.printf("Requests: %s%n", runs.get(runs.size() - 1).requestsByEndpoint());
+                System.out.printf("Median: %.1f pages/s, %.1f MB/s%n", median(runs.stream().mapToDouble(Run::pagesPerSecond).toArray()),
+                        median(runs.stream().mapToDouble(Run::megabytesPerSecond).toArray()));
+            }
+            writeJson(runs);
+        } finally {
+            FileUtils.deleteDirectory(work.toFile());
+        }
+    }
+
+    /**
+     * Result of the plugin run, without the numbers of the server
+     */
+    private record Measurement(String result, double seconds, long peakHeapBytes) {
+    }
+
+    private Run ingest(GeneratedProcess process, Path stateFolder, int pages) throws Exception {
+        String replay = options.get("replay");
+        if (!replay.isEmpty()) {
+            // a recording of another process, the requests are answered by endpoint in the recorded order
+            try (ArcheReplay arche = new ArcheReplay(Paths.get(replay), Double.parseDouble(options.get("speed")))) {
+                Measurement measurement = measure(process, stateFolder, arche.getBaseURI());
+                return new Run(measurement.result(), measurement.seconds(), pages / measurement.seconds(),
+                        arche.getReceivedBytes() / 1e6 / measurement.seconds(), measurement.peakHeapBytes(), arche.getRequestCount(),
+                        arche.getRequestCounts());
+            }
+        }
+        try (MockArche arche = new MockArche()) {
+            arche.setLatency(Long.parseLong(options.get("latency")));
+            arche.setCommitDuration(Long.parseLong(options.get("commit-duration")));
+            arche.setBandwidth(Long.parseLong(options.get("bandwidth")));
+            arche.setErrorRate(Double.parseDouble(options.get("error-rate")), 503);
+
+            Measurement measurement = measure(process, stateFolder, arche.getBaseURI());
+            return new Run(measurement.result(), measurement.seconds(), pages / measurement.seconds(),
+                    arche.getReceivedBytes() / 1e6 / measurement.seconds(), measurement.peakHeapBytes(), arche.getRequestCount(),
+                    arche.getRequestCounts());
+        }
+    }
+
+    private Measurement measure(GeneratedProcess process, Path stateFolder, String baseURI) throws Exception {
+        ArcheExportStepPlugin plugin = new ArcheExportStepPlugin();
+        plugin.initialize(process.getStep(), new ArcheStepConfiguration(createStepConfiguration(stateFolder)),
+                new ArcheConfiguration(createArcheConfiguration(baseURI)));
+        // every run reads and parses the METS file
+        FileformatCache.invalidate(process.getId());
+
+        System.gc();
+        List<MemoryPoolMXBean> heap = new ArrayList<>();
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                pool.resetPeakUsage();
+                heap.add(pool);
+            }
+        }
+        long start = System.nanoTime();
+        PluginReturnValue result = plugin.run();
+        double seconds = (System.nanoTime() - start) / 1e9;
+        long peakHeap = heap.stream().mapToLong(pool -> pool.getPeakUsage().getUsed()).sum();
+        return new Measurement(result.name(), seconds, peakHeap);
+    }
+
+    private XMLConfiguration createStepConfiguration(Path stateFolder) throws Exception {
+        String file = options.get("config");
+        if (file.isEmpty()) {
+            return SyntheticProcess.createStepConfiguration(8, stateFolder);
+        }
+        // a step configuration to compare, e.g. with other pipeline settings; the state folder is replaced for each run
+        XMLConfiguration config = SyntheticProcess.load(Files.readString(Paths.get(file), StandardCharsets.UTF_8));
+        config.setProperty("stateFolder", stateFolder.toString());
+        return config;
+    }
+
+    private static XMLConfiguration createArcheConfiguration(String baseURI) throws Exception {
+        return SyntheticProcess.load("<config_plugin><api enableValidation=\"false\" enableIngest=\"true\"><archeApiUrl>" + baseURI
+                + "</archeApiUrl><archeUserName>bench</archeUserName><archePassword>bench</archePassword></api>"
+                + "<viewerUrl>https://viewer.example.org/viewer</viewerUrl></config_plugin>");
+    }
+
+    private void writeJson(List<Run> runs) throws IOException {
+        String file = options.get("json");
+        if (!file.isEmpty()) {
+            Map<String, Object> json = new LinkedHashMap<>();
+            json.put("options", options);
+            List<Map<String, Object>> results = new ArrayList<>();
+            for (Run run : runs) {
+                Map<String, Object> result = new LinkedHashMap<>();
+                result.put("result", run.result());
+                result.put("seconds", run.seconds());
+                result.put("pagesPerSecond", run.pagesPerSecond());
+                result.put("megabytesPerSecond", run.megabytesPerSecond());
+                result.put("peakHeapBytes", run.peakHeapBytes());
+                result.put("requests", run.requests());
+                result.put("requestsByEndpoint", run.requestsByEndpoint());
+                results.add(result);
+            }
+            json.put("runs", results);
+            Files.writeString(Paths.get(file), new GsonBuilder().setPrettyPrinting().create().toJson(json), StandardCharsets.UTF_8);
+        }
+    }
+
+    private int intOption(String name) {
+        return Integer.parseInt(options.get(name));
+    }
+
+    private static double median(double[] values) {
+        double[] sorted = values.clone();
+        Arrays.sort(sorted);
+        int middle = sorted.length / 2;
+        return sorted.length % 2 == 1 ? sorted[middle] : (sorted[middle - 1] + sorted[middle]) / 2;
+    }
+}
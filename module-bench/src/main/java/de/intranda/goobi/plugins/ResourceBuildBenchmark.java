@@ -0,0 +1,141 @@
+package de.intranda.goobi.plugins;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.Resource;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Time to build the RDF resources of a process: the publication with its persons and mapped metadata, the collection of the process and the
+ * folder and file resources of all pages.
+ *
+ * Warmup, iterations, forks and heap are fixed, so the results of different commits are comparable, as long as they are measured on the same
+ * machine.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 2, jvmArgsAppend = { "-Xms2g", "-Xmx2g" })
+public class ResourceBuildBenchmark {
+
+    /**
+     * Metadata of the publication, the number of pages does not matter here
+     */
+    @State(Scope.Benchmark)
+    public static class PublicationState {
+
+        @Param({ "false", "true" })
+        boolean anchor;
+
+        @Param({ "2", "200" })
+        int persons;
+
+        @Param({ "8", "200" })
+        int mappings;
+
+        SyntheticProcess process;
+        private Path stateFolder;
+
+        @Setup(Level.Trial)
+        public void setUp() throws Exception {
+            stateFolder = Files.createTempDirectory("arche-bench");
+            process = new SyntheticProcess(1, anchor, persons, mappings, stateFolder);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws IOException {
+            FileUtils.deleteDirectory(stateFolder.toFile());
+        }
+    }
+
+    /**
+     * Pages of the process with the default metadata
+     */
+    @State(Scope.Benchmark)
+    public static class PageState {
+
+        @Param({ "100", "1000", "10000" })
+        int pages;
+
+        SyntheticProcess process;
+        Resource processResource;
+        private Path stateFolder;
+
+        @Setup(Level.Trial)
+        public void setUp() throws Exception {
+            stateFolder = Files.createTempDirectory("arche-bench");
+            process = new SyntheticProcess(pages, false, 2, 8, stateFolder);
+            processResource = process.createProcessResource();
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws IOException {
+            FileUtils.deleteDirectory(stateFolder.toFile());
+        }
+    }
+
+    @Benchmark
+    public List<Resource> publication(PublicationState state) {
+        SyntheticProcess process = state.process;
+        List<Resource> resources = new ArrayList<>();
+        String anchorUri = null;
+        if (process.anchor != null) {
+            Model model = process.plugin.resetModel(SyntheticProcess.TOP_COLLECTION);
+            List<Resource> anchorResources = process.plugin.createPublicationResource(process.anchor, SyntheticProcess.LANGUAGE_CODE, model,
+                    SyntheticProcess.COLLECTION, null, null, "en");
+            anchorUri = anchorResources.get(0).getURI();
+            resources.addAll(anchorResources);
+        }
+        Model model = process.plugin.resetModel(SyntheticProcess.TOP_COLLECTION);
+        resources.addAll(process.plugin.createPublicationResource(process.logical, SyntheticProcess.LANGUAGE_CODE, model,
+                SyntheticProcess.COLLECTION, anchorUri, null, "en"));
+        return resources;
+    }
+
+    @Benchmark
+    public Resource collection(PublicationState state) {
+        return state.process.createProcessResource();
+    }
+
+    @Benchmark
+    public void files(PageState state, Blackhole blackhole) {
+        SyntheticProcess process = state.process;
+        ArcheExportStepPlugin plugin = process.plugin;
+        for (Path folder : List.of(process.masterFolder, process.mediaFolder)) {
+            String folderName = folder.getFileName().toString();
+            List<Path> fileList = process.files.listFiles(folder);
+            Model model = plugin.resetModel(SyntheticProcess.TOP_COLLECTION);
+            blackhole.consume(plugin.createFolderResource(model, folderName, SyntheticProcess.COLLECTION, state.processResource,
+                    fileList.get(0).getFileName().toString(), false, SyntheticProcess.DOC_TYPE));
+            for (int i = 0; i < fileList.size(); i++) {
+                String current = fileList.get(i).getFileName().toString();
+                String next = i + 1 < fileList.size() ? fileList.get(i + 1).getFileName().toString() : null;
+                FileTechnicalMetadata technical = new FileTechnicalMetadata(4_000_000L + i, "image/tiff", 2000, 3000);
+                blackhole.consume(plugin.createFileResource(SyntheticProcess.TITLE, SyntheticProcess.TOP_COLLECTION, SyntheticProcess.COLLECTION,
+                        state.processResource, folderName, current, next, false, "https://vocabs.acdh.oeaw.ac.at/archeaccessrestrictions/public",
+                        technical));
+            }
+        }
+    }
+}
@@ -0,0 +1,210 @@
+package de.intranda.goobi.plugins;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.configuration.ConfigurationException;
+import org.apache.commons.configuration.XMLConfiguration;
+import org.apache.commons.configuration.tree.xpath.XPathExpressionEngine;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.Resource;
+import org.goobi.api.ArcheConfiguration;
+import org.goobi.beans.Process;
+import org.goobi.beans.Project;
+import org.goobi.beans.Step;
+
+import ugh.dl.DigitalDocument;
+import ugh.dl.DocStruct;
+import ugh.dl.Prefs;
+import ugh.exceptions.UGHException;
+
+/**
+ * A process with generated metadata and files for the benchmarks. The plugin, the configuration and the logical structure are created in
+ * memory, no database, Goobi configuration folder or image folder is needed. The metadata is created by the {@link ProcessGenerator}, the
+ * content depends only on the parameters, so results of different commits can be compared.
+ */
+class SyntheticProcess {
+
+    static final String LANGUAGE = "ger";
+    static final String LANGUAGE_CODE = "de";
+    static final String TITLE = "AC12345678";
+    static final String TOP_COLLECTION = "https://id.acdh.oeaw.ac.at/bench";
+    static final String COLLECTION = TOP_COLLECTION + "/" + TITLE;
+    static final String DOC_TYPE = "TEXT";
+
+    /** metadata with a mapping in the default configuration: name, ARCHE field, language mode */
+    private static final String[][] MAPPED_METADATA = {
+            { "PlaceOfPublication", "hasCity", "DOC_LANGUAGE" },
+            { "PublisherName", "hasPublisher", "NO_LANGUAGE" },
+            { "shelfmarksource", "hasNonLinkedIdentifier", "NO_LANGUAGE" },
+            { "CurrentNo", "hasSeriesInformation", "und" },
+            { "PublicationYear", "hasDate", "DATE" } };
+
+    /** agents the files and folders inherit from the process */
+    private static final String[] INHERITED_AGENTS =
+            { "hasCurator", "hasDepositor", "hasLicensor", "hasMetadataCreator", "hasOwner", "hasRightsHolder" };
+
+    private static Prefs prefs;
+
+    final ArcheExportStepPlugin plugin;
+    final Process process;
+    final DocStruct logical;
+    final DocStruct anchor;
+    final Path masterFolder = Paths.get("/bench", TITLE + "_master");
+    final Path mediaFolder = Paths.get("/bench", TITLE + "_media");
+    final ProcessFolderResolver files;
+
+    /**
+     * Create the process
+     *
+     * @param pages number of master and media files
+     * @param withAnchor create a volume of a multi volume work instead of a monograph
+     * @param persons number of persons of the publication, every second one has an authority identifier
+     * @param mappings number of configured metadata mappings, only the first ones match the metadata of the process
+     * @param stateFolder local data folder of the plugin
+     */
+
+    SyntheticProcess(int pages, boolean withAnchor, int persons, int mappings, Path stateFolder)
+            throws IOException, ConfigurationException, UGHException {
+        Project project = new Project();
+        project.setTitel("bench");
+        process = new Process();
+        process.setTitel(TITLE);
+        process.setId(1);
+        process.setProjekt(project);
+        Step step = new Step();
+        step.setTitel("ARCHE export");
+        step.setProzess(process);
+
+        plugin = new ArcheExportStepPlugin();
+        plugin.initialize(step, new ArcheStepConfiguration(createStepConfiguration(mappings, stateFolder)),
+                new ArcheConfiguration(createArcheConfiguration()));
+
+        // the same metadata as the processes of the end-to-end benchmark, but without files and physical structure
+        ProcessGenerator generator = new ProcessGenerator(getPrefs()).pages(pages).anchor(withAnchor).persons(persons);
+        DigitalDocument dd = new DigitalDocument();
+        logical = generator.createLogicalStructure(dd, TITLE);
+        anchor = withAnchor ? dd.getLogicalDocStruct() : null;
+
+        Map<Path, List<Path>> folders = new HashMap<>();
+        folders.put(masterFolder, createFileList(masterFolder, "tif", pages));
+        folders.put(mediaFolder, createFileList(mediaFolder, "jpg", pages));
+        files = new InMemoryFolders(process, folders);
+    }
+
+    /**
+     * Build the collection resource of the process with the agents the files and folders inherit
+     *
+     * @return
+     */
+
+    Resource createProcessResource() {
+        Model model = plugin.resetModel(TOP_COLLECTION);
+        Resource processResource = plugin.createCollectionResource(LANGUAGE, logical, files, masterFolder, LANGUAGE_CODE, model, TOP_COLLECTION,
+                COLLECTION, COLLECTION);
+        // the agents are configured as process properties in production
+        for (String agent : INHERITED_AGENTS) {
+            processResource.addProperty(model.createProperty(model.getNsPrefixURI("acdh"), agent),
+                    model.createResource("https://id.acdh.oeaw.ac.at/bench-" + agent));
+        }
+        return processResource;
+    }
+
+    private static List<Path> createFileList(Path folder, String extension, int pages) {
+        List<Path> fileList = new ArrayList<>(pages);
+        for (int i = 1; i <= pages; i++) {
+            fileList.add(folder.resolve(String.format("%08d.%s", i, extension)));
+        }
+        return Collections.unmodifiableList(fileList);
+    }
+
+    static XMLConfiguration createStepConfiguration(int mappings, Path stateFolder) throws ConfigurationException {
+        StringBuilder xml = new StringBuilder("<config>");
+        xml.append("<stateFolder>").append(stateFolder).append("</stateFolder>");
+        xml.append("<language><code iso639-1=\"de\" iso639-2=\"ger\" /><code iso639-1=\"en\" iso639-2=\"eng\" /></language>");
+        xml.append("<tags><tag doctype=\"Monograph\" code=\"TEXT\" /><tag doctype=\"Volume\" code=\"TEXT\" /></tags>");
+        xml.append("<licenses><license internalName=\"CC BY 4.0\" archeField=\"https://vocabs.acdh.oeaw.ac.at/archelicenses/cc-by-4-0\" />");
+        xml.append("</licenses>");
+        xml.append("<metadataMappings>");
+        for (int i = 0; i < mappings; i++) {
+            if (i < MAPPED_METADATA.length) {
+                String[] mapping = MAPPED_METADATA[i];
+                appendMapping(xml, mapping[0], mapping[1], mapping[2]);
+            } else {
+                // metadata the process does not have, it is only compared
+                appendMapping(xml, "UnusedMetadata" + i, "hasNote", "DEFAULT_LANGUAGE");
+            }
+        }
+        xml.append("</metadataMappings>");
+        xml.append("</config>");
+        return load(xml.toString());
+    }
+
+    private static void appendMapping(StringBuilder xml, String metadataName, String archeField, String language) {
+        xml.append("<metadataMapping metadataName=\"")
+                .append(metadataName)
+                .append("\" archeField=\"")
+                .append(archeField)
+                .append("\" language=\"")
+                .append(language)
+                .append("\" />");
+    }
+
+    private static XMLConfiguration createArcheConfiguration() throws ConfigurationException {
+        return load("<config_plugin><api enableValidation=\"false\" enableIngest=\"false\"><archeApiUrl>https://arche.example.org/api/</archeApiUrl>"
+                + "</api><viewerUrl>https://viewer.example.org/viewer</viewerUrl></config_plugin>");
+    }
+
+    static XMLConfiguration load(String xml) throws ConfigurationException {
+        XMLConfiguration config = new XMLConfiguration();
+        config.load(new StringReader(xml));
+        config.setExpressionEngine(new XPathExpressionEngine());
+        return config;
+    }
+
+    static synchronized Prefs getPrefs() throws IOException, UGHException {
+        if (prefs == null) {
+            // the ruleset is packaged into the benchmark jar, ugh reads it from a file
+            Path ruleset = Files.createTempFile("ruleset", ".xml");
+            try (InputStream in = SyntheticProcess.class.getResourceAsStream("/ruleset.xml")) {
+                if (in == null) {
+                    throw new IOException("ruleset.xml is missing in the benchmark jar");
+                }
+                Files.copy(in, ruleset, StandardCopyOption.REPLACE_EXISTING);
+            }
+            Prefs loaded = new Prefs();
+            loaded.loadPrefs(ruleset.toString());
+            Files.delete(ruleset);
+            prefs = loaded;
+        }
+        return prefs;
+    }
+
+    /**
+     * Lists the generated files instead of the file system
+     */
+    private static class InMemoryFolders extends ProcessFolderResolver {
+
+        private final Map<Path, List<Path>> folders;
+
+        InMemoryFolders(Process process, Map<Path, List<Path>> folders) {
+            super(process);
+            this.folders = folders;
+        }
+
+        @Override
+        public List<Path> listFiles(Path folder) {
+            return folders.getOrDefault(folder, Collections.emptyList());
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package de.intranda.goobi.plugins;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.ModelFactory;
+import org.apache.jena.rdf.model.Resource;
+import org.apache.jena.riot.RDFDataMgr;
+import org.goobi.api.rest.WireFormat;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of writing and parsing the request bodies in each {@link WireFormat}, with and without gzip, for the typical resources of an ingest:
+ * a file, a publication with persons and the collection of a process. The body size and the number of statements of each combination are
+ * reported as the secondary results bodyBytes and statements of the write benchmark.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = { "-Xms1g", "-Xmx1g" })
+public class WireFormatBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class CodecState {
+
+        @Param({ "TURTLE_PRETTY", "TURTLE_STREAMING", "NTRIPLES", "THRIFT" })
+        WireFormat format;
+
+        @Param({ "false", "true" })
+        boolean gzip;
+
+        @Param({ "file", "publication", "collection" })
+        String shape;
+
+        Model model;
+        byte[] body;
+
+        @Setup(Level.Trial)
+        public void setUp() throws Exception {
+            Path stateFolder = Files.createTempDirectory("arche-bench");
+            try {
+                SyntheticProcess process = new SyntheticProcess(2, false, 20, 8, stateFolder);
+                model = createModel(process);
+            } finally {
+                FileUtils.deleteDirectory(stateFolder.toFile());
+            }
+            body = serialize(this);
+        }
+
+        private Model createModel(SyntheticProcess process) {
+            Resource processResource = process.createProcessResource();
+            switch (shape) {
+                case "file":
+                    return process.plugin.createFileResource(SyntheticProcess.TITLE, SyntheticProcess.TOP_COLLECTION, SyntheticProcess.COLLECTION,
+                            processResource, SyntheticProcess.TITLE + "_master", "00000001.tif", "00000002.tif", false, null,
+                            new FileTechnicalMetadata(4_000_000L, "image/tiff", 2000, 3000))
+                            .getModel();
+                case "publication":
+                    List<Resource> resources = process.plugin.createPublicationResource(process.logical, SyntheticProcess.LANGUAGE_CODE,
+                            process.plugin.resetModel(SyntheticProcess.TOP_COLLECTION), SyntheticProcess.COLLECTION, null, null, "en");
+                    return resources.get(0).getModel();
+                default:
+                    return processResource.getModel();
+            }
+        }
+    }
+
+    /**
+     * Size of the written body, the fields are set and not counted up, so the result of each iteration is the size of one body
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class BodySize {
+
+        public long bodyBytes;
+
+        public long statements;
+    }
+
+    @Benchmark
+    public byte[] write(CodecState state, BodySize size) throws IOException {
+        byte[] body = serialize(state);
+        size.bodyBytes = body.length;
+        size.statements = state.model.size();
+        return body;
+    }
+
+    @Benchmark
+    public Model read(CodecState state) throws IOException {
+        Model model = ModelFactory.createDefaultModel();
+        try (InputStream in = state.gzip ? new GZIPInputStream(new ByteArrayInputStream(state.body)) : new ByteArrayInputStream(state.body)) {
+            RDFDataMgr.read(model, in, state.format.getFormat().getLang());
+        }
+        return model;
+    }
+
+    private static byte[] serialize(CodecState state) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (OutputStream out = state.gzip ? new GZIPOutputStream(bytes) : bytes) {
+            RDFDataMgr.write(out, state.model, state.format.getFormat());
+        }
+        return bytes.toByteArray();
+    }
+}
@@ -27,7 +27,17 @@ public class ArcheConfiguration {
     private XMLConfiguration config;
 
     public ArcheConfiguration(String configurationFile) {
-        config = ConfigPlugins.getPluginConfig(configurationFile);
+        this(ConfigPlugins.getPluginConfig(configurationFile));
+    }
+
+    /**
+     * Read the configuration from an already loaded file, e.g. in tests and benchmarks without a Goobi configuration folder
+     * 
+     * @param config
+     */
+
+    public ArcheConfiguration(XMLConfiguration config) {
+        this.config = config;
         config.setExpressionEngine(new XPathExpressionEngine());
 
         archeUserName = config.getString("/api/archeUserName");
@@ -0,0 +1,256 @@
+package org.goobi.api.rest;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+import lombok.extern.log4j.Log4j2;
+
+/**
+ * Limits the number of concurrent ARCHE requests with an AIMD algorithm. The limit grows by one per round of successful requests, as long as the
+ * latency stays close to the lowest latency seen so far. It is reduced by 10% when the latency rises to twice the baseline and halved when ARCHE
+ * answers with 429 or 503.
+ *
+ * Only requests with a comparable duration are used as latency samples, binary uploads depend on the file size and only count as success or
+ * overload. Small requests may use a reserved lane of additional slots, so metadata requests are not stuck behind long binary uploads.
+ *
+ * The {@link ArcheGovernor} queues the requests fairly and only hands out as many as the current limit allows, so the limiter itself rarely
+ * blocks. It is told about each change of the limit.
+ *
+ * The current limit is published via JMX as org.goobi.api.rest:type=AdaptiveLimiter.
+ */
+@Log4j2
+public class AdaptiveLimiter implements AdaptiveLimiterMXBean {
+
+    public static final int DEFAULT_MIN_LIMIT = 1;
+    public static final int DEFAULT_MAX_LIMIT = 32;
+    public static final int DEFAULT_INITIAL_LIMIT = 4;
+    public static final int DEFAULT_RESERVED_LANE = 1;
+
+    /** latency factor compared to the baseline that counts as rising latency */
+    private static final double LATENCY_TOLERANCE = 2.0;
+
+    private static final AdaptiveLimiter INSTANCE = new AdaptiveLimiter(DEFAULT_MIN_LIMIT, DEFAULT_MAX_LIMIT, DEFAULT_INITIAL_LIMIT);
+
+    public enum Outcome {
+        /** the request was answered normally */
+        SUCCESS,
+        /** ARCHE is overloaded, 429 or 503 */
+        OVERLOAD,
+        /** the request failed without an answer, e.g. a connection problem */
+        ERROR
+    }
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition available = lock.newCondition();
+
+    private int minLimit;
+    private int maxLimit;
+    private double limit;
+    private int inFlight;
+    /** additional slots only used by small requests */
+    private int reservedLane = DEFAULT_RESERVED_LANE;
+
+    /** lowest latency, slowly drifting up to follow permanent changes */
+    private double baselineNanos;
+    /** smoothed current latency */
+    private double smoothedNanos;
+    /** number of samples to wait after a decrease, before the limit is decreased again */
+    private int cooldown;
+
+    /** called after the limit has changed, outside of the lock */
+    private volatile Runnable limitListener;
+
+    AdaptiveLimiter(int minLimit, int maxLimit, int initialLimit) {
+        configure(minLimit, maxLimit, initialLimit);
+    }
+
+    /**
+     * Get the limiter used for all ARCHE requests of the application
+     *
+     * @return
+     */
+
+    public static AdaptiveLimiter getInstance() {
+        return INSTANCE;
+    }
+
+    static {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(INSTANCE, new ObjectName("org.goobi.api.rest:type=AdaptiveLimiter"));
+        } catch (JMException e) {
+            log.warn("Cannot register ARCHE limiter in JMX", e);
+        }
+    }
+
+    /**
+     * Change the bounds of the limit. The current limit is kept, if it is within the new bounds.
+     *
+     * @param minLimit
+     * @param maxLimit
+     * @param initialLimit used if the current limit is outside of the bounds
+     */
+
+    public void configure(int minLimit, int maxLimit, int initialLimit) {
+        boolean changed;
+        lock.lock();
+        try {
+            int previous = (int) limit;
+            this.minLimit = Math.max(minLimit, 1);
+            this.maxLimit = Math.max(maxLimit, this.minLimit);
+            if (limit < this.minLimit || limit > this.maxLimit) {
+                limit = Math.min(Math.max(initialLimit, this.minLimit), this.maxLimit);
+            }
+            changed = (int) limit != previous;
+            available.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        if (changed) {
+            notifyListener();
+        }
+    }
+
+    /**
+     * Set the callback that is run after each change of the limit
+     *
+     * @param listener
+     */
+
+    void setLimitListener(Runnable listener) {
+        limitListener = listener;
+    }
+
+    /**
+     * Set the number of additional slots for small requests
+     *
+     * @param slots
+     */
+
+    public void setReservedLane(int slots) {
+        lock.lock();
+        try {
+            reservedLane = Math.max(slots, 0);
+            available.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Wait until a request can be sent
+     *
+     * @throws InterruptedException
+     */
+
+    public void acquire() throws InterruptedException {
+        acquire(false);
+    }
+
+    /**
+     * Wait until a request can be sent
+     *
+     * @param small true for small requests, they may use the reserved lane
+     * @throws InterruptedException
+     */
+
+    public void acquire(boolean small) throws InterruptedException {
+        lock.lock();
+        try {
+            while (inFlight >= (int) limit + (small ? reservedLane : 0)) {
+                available.await();
+            }
+            inFlight++;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Report the result of a request and adjust the limit
+     *
+     * @param nanos duration of the request
+     * @param outcome
+     * @param latencySample true, if the duration can be compared with other requests
+     */
+
+    public void release(long nanos, Outcome outcome, boolean latencySample) {
+        boolean changed;
+        lock.lock();
+        try {
+            inFlight--;
+            int previous = (int) limit;
+            if (cooldown > 0) {
+                cooldown--;
+            }
+            if (outcome == Outcome.OVERLOAD) {
+                if (cooldown == 0) {
+                    limit = Math.max(minLimit, limit / 2);
+                    cooldown = (int) limit;
+                }
+            } else if (outcome == Outcome.SUCCESS) {
+                if (latencySample && isLatencyRising(nanos)) {
+                    if (cooldown == 0) {
+                        limit = Math.max(minLimit, limit * 0.9);
+                        cooldown = (int) limit;
+                    }
+                } else if (inFlight + 1 >= (int) limit) {
+                    // grow only if the limit was actually used
+                    limit = Math.min(maxLimit, limit + 1 / limit);
+                }
+            }
+            changed = (int) limit != previous;
+            if (changed) {
+                log.debug("ARCHE request limit changed from {} to {}", previous, (int) limit);
+            }
+            available.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        if (changed) {
+            notifyListener();
+        }
+    }
+
+    private void notifyListener() {
+        // outside of the lock, the governor takes its own lock first and then reads the limit
+        Runnable listener = limitListener;
+        if (listener != null) {
+            listener.run();
+        }
+    }
+
+    private boolean isLatencyRising(long nanos) {
+        if (baselineNanos == 0) {
+            baselineNanos = nanos;
+            smoothedNanos = nanos;
+            return false;
+        }
+        smoothedNanos = 0.8 * smoothedNanos + 0.2 * nanos;
+        baselineNanos = Math.min(nanos, baselineNanos + (smoothedNanos - baselineNanos) * 0.01);
+        return smoothedNanos > baselineNanos * LATENCY_TOLERANCE;
+    }
+
+    @Override
+    public int getLimit() {
+        lock.lock();
+        try {
+            return (int) limit;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int getInFlight() {
+        lock.lock();
+        try {
+            return inFlight;
+        } finally {
+            lock.unlock();
+        }
+    }
+}
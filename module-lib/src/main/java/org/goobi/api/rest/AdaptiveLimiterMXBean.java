@@ -0,0 +1,17 @@
+package org.goobi.api.rest;
+
+/**
+ * JMX view of the {@link AdaptiveLimiter}
+ */
+public interface AdaptiveLimiterMXBean {
+
+    /**
+     * @return current number of requests that may run at the same time
+     */
+    int getLimit();
+
+    /**
+     * @return number of requests running right now
+     */
+    int getInFlight();
+}
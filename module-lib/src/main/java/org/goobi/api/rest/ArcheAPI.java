@@ -1,27 +1,48 @@
 package org.goobi.api.rest;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.ConnectException;
+import java.net.NoRouteToHostException;
+import java.net.SocketTimeoutException;
+import java.net.UnknownHostException;
 import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
 import org.apache.jena.rdf.model.Model;
-import org.apache.jena.rdf.model.Property;
+import org.apache.jena.rdf.model.ResIterator;
 import org.apache.jena.rdf.model.Resource;
-import org.apache.jena.rdf.model.Statement;
-import org.apache.jena.rdf.model.StmtIterator;
+import org.apache.jena.riot.RDFDataMgr;
+import org.apache.jena.riot.RDFFormat;
 import org.apache.jena.util.ResourceUtils;
+import org.glassfish.jersey.client.ClientConfig;
+import org.glassfish.jersey.client.ClientProperties;
 import org.glassfish.jersey.client.HttpUrlConnectorProvider;
+import org.glassfish.jersey.client.RequestEntityProcessing;
+import org.glassfish.jersey.client.filter.EncodingFilter;
+import org.glassfish.jersey.message.GZipEncoder;
+import org.goobi.api.rest.AdaptiveLimiter.Outcome;
+import org.goobi.api.rest.ArcheMetrics.Endpoint;
 
 import de.sub.goobi.helper.Helper;
-import de.sub.goobi.helper.StorageProvider;
 import de.sub.goobi.metadaten.search.EntityLoggingFilter;
+import jakarta.ws.rs.ProcessingException;
 import jakarta.ws.rs.client.Client;
 import jakarta.ws.rs.client.ClientBuilder;
 import jakarta.ws.rs.client.Entity;
 import jakarta.ws.rs.client.Invocation;
 import jakarta.ws.rs.client.WebTarget;
+import jakarta.ws.rs.core.HttpHeaders;
 import jakarta.ws.rs.core.MediaType;
 import jakarta.ws.rs.core.Response;
+import jakarta.ws.rs.core.Variant;
 import lombok.extern.log4j.Log4j2;
 
 @Log4j2
@@ -29,6 +50,30 @@ public class ArcheAPI {
 
     private static final boolean enableDebugging = false;
 
+    /** first and maximal interval for polling the transaction state during a commit */
+    private static final long COMMIT_POLL_MIN_DELAY = 250;
+    private static final long COMMIT_POLL_MAX_DELAY = 10000;
+    /** time to wait for the end of a commit */
+    private static final long COMMIT_MAX_DURATION = TimeUnit.HOURS.toMillis(12);
+
+    /** read timeout of the commit request, afterwards the transaction state is polled */
+    private static volatile long commitRequestTimeout = 10000;
+
+    public static final int DEFAULT_MAX_RETRIES = 5;
+    private static final long RETRY_BASE_DELAY = 500;
+    private static final long MAX_RETRY_DELAY = 30000;
+
+    private static volatile int maxRetries = DEFAULT_MAX_RETRIES;
+
+    /** format of the metadata requests and preferred format of the responses */
+    private static volatile WireFormat wireFormat = WireFormat.DEFAULT;
+
+    /** compress the metadata requests with gzip, disabled automatically if ARCHE rejects them */
+    private static volatile boolean compressRequests;
+
+    /** clients shared by all ingests, by user name and password */
+    private static final Map<String, Client> SHARED_CLIENTS = new ConcurrentHashMap<>();
+
     /**
      * Get the client
      * 
@@ -38,15 +83,34 @@ public class ArcheAPI {
      */
 
     public static Client getClient(String username, String password) {
-        Client client = ClientBuilder.newClient().register(new BasicAuthentication(username, password));
+        // request bodies with a Content-Length header are streamed, HttpURLConnection would otherwise buffer them completely
+        ClientConfig config = new ClientConfig().connectorProvider(new HttpUrlConnectorProvider().useFixedLengthStreaming());
+        Client client = ClientBuilder.newClient(config).register(new BasicAuthentication(username, password));
         client.register(TurtleReader.class);
         client.register(TurtleWriter.class);
+        // compressed responses are decoded, requests are only compressed if they have a Content-Encoding header
+        client.register(GZipEncoder.class);
+        client.register(EncodingFilter.class);
+        // caps the response bodies read by a running traffic recording
+        client.register(new TrafficRecorder.BodyLimitFilter());
         if (enableDebugging) {
             client.register(new EntityLoggingFilter());
         }
         return client;
     }
 
+    /**
+     * Get a client shared by all ingests of the application with the same credentials. The client must not be closed.
+     * 
+     * @param username
+     * @param password
+     * @return
+     */
+
+    public static Client getSharedClient(String username, String password) {
+        return SHARED_CLIENTS.computeIfAbsent(username + "\u0000" + password, k -> getClient(username, password));
+    }
+
     /**
      * 
      * Start a new transaction
@@ -60,7 +124,7 @@ public class ArcheAPI {
         WebTarget target = client.target(baseURI).path("transaction");
         Invocation.Builder builder = target.request();
         builder.header("Accept", "application/json");
-        Response response = builder.post(null);
+        Response response = execute(Endpoint.TRANSACTION_START, target, 0, () -> builder.post(null), true, true);
         return response.readEntity(TransactionInfo.class);
     }
 
@@ -80,11 +144,11 @@ public class ArcheAPI {
         Invocation.Builder builder = target.request();
         builder.property(HttpUrlConnectorProvider.SET_METHOD_WORKAROUND, true);
         builder.header("X-TRANSACTION-ID", ti.getTransactionId());
-        builder.accept("text/turtle");
+        builder.accept(wireFormat.getAccept());
         // update URI in resource
         Model m = ResourceUtils.renameResource(resource, location).getModel();
-        Entity<Model> entity = Entity.entity(m, "text/turtle");
-        Response response = builder.method("PATCH", entity);
+        byte[] body = serialize(m);
+        Response response = sendMetadata(Endpoint.METADATA_UPDATE, target, body, entity -> builder.method("PATCH", entity));
         switch (response.getStatus()) {
             case 200, 201, 202, 203, 204:
                 return location;
@@ -108,22 +172,42 @@ public class ArcheAPI {
      * @return
      */
     public static String uploadMetadata(Client client, String baseURI, TransactionInfo ti, Resource resource) {
+        return uploadMetadata(client, baseURI, ti, resource, serialize(resource.getModel()));
+    }
+
+    /**
+     * Upload new metadata resource, that was already serialized. This allows to serialize the resources in other threads than the upload.
+     * 
+     * @param client
+     * @param baseURI
+     * @param ti
+     * @param resource the resource, used to find the existing resource in case of a conflict
+     * @param turtle the serialized model of the resource
+     * @return
+     */
+    public static String uploadMetadata(Client client, String baseURI, TransactionInfo ti, Resource resource, byte[] turtle) {
+        // a conflict leads to a search and an update, they are traced as children of this span
+        try (TraceSpan span = Tracing.start("ArcheAPI.uploadMetadata")) {
+            return postMetadata(client, baseURI, ti, resource, turtle);
+        }
+    }
+
+    private static String postMetadata(Client client, String baseURI, TransactionInfo ti, Resource resource, byte[] turtle) {
         WebTarget target = client.target(baseURI).path("metadata");
-        Invocation.Builder builder = target.request("text/turtle");
+        Invocation.Builder builder = target.request(wireFormat.getAccept());
         builder.header("X-TRANSACTION-ID", ti.getTransactionId());
-        builder.accept("text/turtle");
-        Model m = resource.getModel();
-        Entity<Model> entity = Entity.entity(m, "text/turtle");
-        Response response = builder.post(entity);
+        Response response = sendMetadata(Endpoint.METADATA_CREATE, target, turtle, builder::post);
         switch (response.getStatus()) {
             case 201:
                 // created, read location
+                if (ti.getCreatedIdentifier() == null) {
+                    ti.setCreatedIdentifier(getIdentifier(resource));
+                }
                 return response.getHeaderString("location");
             case 409:
                 // Resource with the identifier already exists
                 // find uri, use patch to update resource
-                String uri = findResourceURI(client, baseURI,
-                        resource.getProperty(m.createProperty(m.getNsPrefixURI("acdh"), "hasIdentifier")).getObject().toString());
+                String uri = findResourceURI(client, baseURI, getIdentifier(resource));
                 return updateMetadata(client, uri, baseURI, resource, ti);
 
             default:
@@ -137,6 +221,68 @@ public class ArcheAPI {
         return null;
     }
 
+    private static String getIdentifier(Resource resource) {
+        Model m = resource.getModel();
+        return resource.getProperty(m.createProperty(m.getNsPrefixURI("acdh"), "hasIdentifier")).getObject().toString();
+    }
+
+    /**
+     * Send a serialized model in the configured wire format. If ARCHE rejects a compressed body, it is sent again uncompressed and the
+     * compression is disabled.
+     * 
+     * @param endpoint
+     * @param target
+     * @param body
+     * @param request sends the entity
+     * @return
+     */
+
+    private static Response sendMetadata(Endpoint endpoint, WebTarget target, byte[] body, Function<Entity<byte[]>, Response> request) {
+        boolean compressed = compressRequests;
+        Response response = execute(endpoint, target, body.length, () -> request.apply(metadataEntity(body, compressed)), true, true);
+        if (compressed && response.getStatus() == 415) {
+            log.warn("ARCHE does not accept compressed requests, metadata is sent uncompressed");
+            compressRequests = false;
+            response.close();
+            response = execute(endpoint, target, body.length, () -> request.apply(metadataEntity(body, false)), true, true);
+        }
+        return response;
+    }
+
+    private static Entity<byte[]> metadataEntity(byte[] body, boolean compressed) {
+        // the GZipEncoder compresses the body, if the Content-Encoding is set
+        return Entity.entity(body, new Variant(MediaType.valueOf(wireFormat.getMediaType()), (String) null, compressed ? "gzip" : null));
+    }
+
+    /**
+     * Serialize the model in the format used for metadata uploads
+     * 
+     * @param model
+     * @return
+     */
+
+    public static byte[] serialize(Model model) {
+        RdfSerializationEvent event = new RdfSerializationEvent();
+        event.begin();
+        RDFFormat format = wireFormat.getFormat();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        RDFDataMgr.write(out, model, format);
+        if (event.shouldCommit()) {
+            recordSerialization(event, model, format, out.size());
+        }
+        return out.toByteArray();
+    }
+
+    static void recordSerialization(RdfSerializationEvent event, Model model, RDFFormat format, long bytes) {
+        ResIterator subjects = model.listSubjects();
+        event.resource = subjects.hasNext() ? subjects.next().toString() : null;
+        subjects.close();
+        event.format = format.toString();
+        event.statements = model.size();
+        event.bytes = bytes;
+        event.commit();
+    }
+
     /**
      * Upload a binary to an existing metadata resource
      * 
@@ -148,81 +294,540 @@ public class ArcheAPI {
      */
 
     public static boolean uploadBinary(Client client, String uri, TransactionInfo ti, Path file) {
+        return uploadBinary(client, uri, ti, file, null, new BinaryStreamFactory());
+    }
+
+    /**
+     * Upload a binary to an existing metadata resource, the file is read with the given stream factory
+     * 
+     * @param client
+     * @param uri
+     * @param ti
+     * @param file
+     * @param mimeType mime type of the file or null to detect it from the file extension
+     * @param streams
+     * @return
+     */
+
+    public static boolean uploadBinary(Client client, String uri, TransactionInfo ti, Path file, String mimeType, BinaryStreamFactory streams) {
+        // the file can be opened again, so the upload is repeated if ARCHE is overloaded
+        Supplier<InputStream> content = () -> {
+            try {
+                return streams.open(file);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        };
+        try {
+            return uploadBinary(client, uri, ti, file.getFileName().toString(), mimeType, content, streams.size(file), true);
+        } catch (UncheckedIOException e) {
+            log.error(e);
+        }
+        return false;
+    }
+
+    /**
+     * Upload the content of a stream to an existing metadata resource. If the size is known, it is send as content length, otherwise the body is
+     * sent in chunks, so it is streamed and never buffered in memory. The stream can be read only once, the upload is not repeated if ARCHE is
+     * overloaded.
+     * 
+     * @param client
+     * @param uri
+     * @param ti
+     * @param filename name of the file
+     * @param mimeType mime type of the file or null to detect it from the file extension
+     * @param in
+     * @param size size in bytes or -1, if unknown
+     * @return
+     */
+
+    public static boolean uploadBinary(Client client, String uri, TransactionInfo ti, String filename, String mimeType, InputStream in,
+            long size) {
+        return uploadBinary(client, uri, ti, filename, mimeType, () -> in, size, false);
+    }
+
+    private static boolean uploadBinary(Client client, String uri, TransactionInfo ti, String filename, String mimeType,
+            Supplier<InputStream> content, long size, boolean retryable) {
         WebTarget target = client.target(uri); // http://example.com/api/{resourceId}
         Invocation.Builder builder = target.request();
         builder.header("X-TRANSACTION-ID", ti.getTransactionId());
-        try (InputStream in = StorageProvider.getInstance().newInputStream(file)) {
-            Entity<InputStream> entity = null;
-
-            if (file.getFileName().toString().endsWith(".xml")) {
-                entity = Entity.entity(in, MediaType.APPLICATION_XML);
-            } else if (file.getFileName().toString().endsWith(".jpg")) {
-                entity = Entity.entity(in, "image/jpeg");
-            } else if (file.getFileName().toString().endsWith(".tif")) {
-                entity = Entity.entity(in, "image/tiff");
-            } else {
-                entity = Entity.entity(in, MediaType.APPLICATION_OCTET_STREAM);
-            }
-            String errorMessage = null;
-            Response response = builder.put(entity);
-            switch (response.getStatus()) {
-                //            204 Binary payload updated
-                case 200, 204:
-                    return true;
-                //            401 Unauthorized
-                //            403 Not authorized to update the resource
-                case 401, 403:
-                    errorMessage = String.format("Not authorized to update the resource %s", uri);
-                    break;
-                //            404  Resource doesn't exist
-                //            410 Resource has been deleted (but tombstone exists)
-                case 404, 410:
-                    errorMessage = String.format("Resource doesn't exist or has been deleted: %s", uri);
-                    break;
-                default:
-                    String result = response.readEntity(String.class);
-                    errorMessage = String.format("ARCHE API call %s failed with error code %2d , reason: %s", uri, response.getStatus(),
-                            result);
-                    break;
+        if (size > 0) {
+            builder.header(HttpHeaders.CONTENT_LENGTH, size);
+        } else if (size < 0) {
+            builder.property(ClientProperties.REQUEST_ENTITY_PROCESSING, RequestEntityProcessing.CHUNKED);
+        }
+        String type = mimeType == null ? getMimeType(filename) : mimeType;
+        String errorMessage = null;
+        ArcheMetrics metrics = ArcheMetrics.getInstance();
+        metrics.uploadStarted();
+        Response response;
+        try {
+            // the duration depends on the file size, it is no latency sample
+            response = execute(Endpoint.BINARY, target, size, () -> builder.put(Entity.entity(content.get(), type)), retryable, false);
+        } catch (RuntimeException e) {
+            metrics.uploadFinished(0);
+            throw e;
+        }
+        boolean uploaded = response.getStatus() == 200 || response.getStatus() == 204;
+        metrics.uploadFinished(uploaded ? Math.max(size, 0) : 0);
+        switch (response.getStatus()) {
+            //            204 Binary payload updated
+            case 200, 204:
+                return true;
+            //            401 Unauthorized
+            //            403 Not authorized to update the resource
+            case 401, 403:
+                errorMessage = String.format("Not authorized to update the resource %s", uri);
+                break;
+            //            404  Resource doesn't exist
+            //            410 Resource has been deleted (but tombstone exists)
+            case 404, 410:
+                errorMessage = String.format("Resource doesn't exist or has been deleted: %s", uri);
+                break;
+            default:
+                String result = response.readEntity(String.class);
+                errorMessage = String.format("ARCHE API call %s failed with error code %2d , reason: %s", uri, response.getStatus(),
+                        result);
+                break;
+
+        }
+
+        log.error(errorMessage);
+        Helper.setFehlerMeldung(errorMessage);
+        return false;
+    }
+
+    /**
+     * Send a request through the limiter. If ARCHE answers with 429 or 503, the request is repeated after the time given in the Retry-After
+     * header or an exponential backoff.
+     * 
+     * @param endpoint used for the metrics
+     * @param target used for the flight recorder events
+     * @param requestBytes size of the request body, used for the flight recorder events
+     * @param request
+     * @param retryable false, if the request cannot be sent again
+     * @param small true for metadata requests: they may use the reserved lane and their duration is used to detect an overloaded server
+     * @return
+     */
 
+    static Response execute(Endpoint endpoint, WebTarget target, long requestBytes, Supplier<Response> request, boolean retryable, boolean small) {
+        ArcheGovernor governor = ArcheGovernor.getInstance();
+        AdaptiveLimiter limiter = AdaptiveLimiter.getInstance();
+        ArcheMetrics metrics = ArcheMetrics.getInstance();
+        RequestStatistics statistics = RequestStatistics.current();
+        TrafficRecorder recorder = TrafficRecorder.current();
+        for (int attempt = 0;; attempt++) {
+            long waitStart = System.nanoTime();
+            try {
+                // first wait for the turn of this ingest, then for a free slot of the adaptive limit
+                governor.acquireRequest(small);
+                try {
+                    limiter.acquire(small);
+                } catch (InterruptedException e) {
+                    governor.releaseRequest();
+                    throw e;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new ProcessingException("Interrupted while waiting for ARCHE", e);
+            }
+            long start = System.nanoTime();
+            ArcheRequestEvent event = new ArcheRequestEvent();
+            event.begin();
+            TraceSpan span = Tracing.startClient(endpoint.name());
+            Response response;
+            try {
+                response = request.get();
+            } catch (RuntimeException e) {
+                long duration = System.nanoTime() - start;
+                limiter.release(duration, Outcome.ERROR, false);
+                governor.releaseRequest();
+                metrics.recordRequest(endpoint, 0, duration);
+                recordRequest(event, endpoint, target, 0, attempt, requestBytes, start - waitStart);
+                traceRequest(span, target, 0, attempt, requestBytes, start - waitStart);
+                span.error(e.getMessage()).close();
+                if (statistics != null) {
+                    statistics.recordFailure(duration);
+                }
+                if (recorder != null) {
+                    recorder.record(endpoint, target.getUri(), start, requestBytes, null);
+                }
+                throw e;
+            }
+            long duration = System.nanoTime() - start;
+            if (recorder != null) {
+                recorder.record(endpoint, target.getUri(), start, requestBytes, response);
             }
+            int status = response.getStatus();
+            boolean overloaded = status == 429 || status == 503;
+            limiter.release(duration, overloaded ? Outcome.OVERLOAD : Outcome.SUCCESS, small);
+            governor.releaseRequest();
+            metrics.recordRequest(endpoint, status, duration);
+            recordRequest(event, endpoint, target, status, attempt, requestBytes, start - waitStart);
+            traceRequest(span, target, status, attempt, requestBytes, start - waitStart);
+            if (status >= 400) {
+                span.error(String.valueOf(status));
+            }
+            span.close();
+            if (statistics != null) {
+                statistics.record(status, duration);
+            }
+            if (!overloaded || !retryable || attempt >= maxRetries) {
+                return response;
+            }
+            if (statistics != null) {
+                statistics.recordRetry();
+            }
+            long delay = getRetryDelay(response, attempt);
+            response.close();
+            log.warn("ARCHE is overloaded (status {}), retry in {} ms", status, delay);
+            try {
+                Thread.sleep(delay);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new ProcessingException("Interrupted while waiting for ARCHE", e);
+            }
+        }
+    }
 
-            log.error(errorMessage);
-            Helper.setFehlerMeldung(errorMessage);
+    private static void recordRequest(ArcheRequestEvent event, Endpoint endpoint, WebTarget target, int status, int attempt, long requestBytes,
+            long waitNanos) {
+        event.end();
+        if (event.shouldCommit()) {
+            event.endpoint = endpoint.name();
+            event.uri = target.getUri().toString();
+            event.status = status;
+            event.attempt = attempt;
+            event.requestBytes = requestBytes;
+            event.waitNanos = waitNanos;
+            event.commit();
+        }
+    }
 
-        } catch (IOException e) {
-            log.error(e);
+    private static void traceRequest(TraceSpan span, WebTarget target, int status, int attempt, long requestBytes, long waitNanos) {
+        if (span.isRecording()) {
+            span.attribute("url.full", target.getUri().toString());
+            span.attribute("http.response.status_code", status);
+            span.attribute("http.request.body.size", requestBytes);
+            span.attribute("arche.attempt", attempt);
+            span.attribute("arche.wait_ms", waitNanos / 1_000_000);
         }
+    }
 
-        return false;
+    /**
+     * Set the format of the metadata requests, applies to all ingests
+     * 
+     * @param format
+     */
 
+    public static void setWireFormat(WireFormat format) {
+        wireFormat = format == null ? WireFormat.DEFAULT : format;
     }
 
     /**
-     * Finish the transaction and execute the changes
+     * Compress the metadata requests with gzip, applies to all ingests
+     * 
+     * @param compress
+     */
+
+    public static void setCompressRequests(boolean compress) {
+        compressRequests = compress;
+    }
+
+    private static long getRetryDelay(Response response, int attempt) {
+        String retryAfter = response.getHeaderString(HttpHeaders.RETRY_AFTER);
+        if (retryAfter != null && retryAfter.matches("\\d+")) {
+            return Math.min(Long.parseLong(retryAfter) * 1000, MAX_RETRY_DELAY);
+        }
+        long delay = Math.min(RETRY_BASE_DELAY << Math.min(attempt, 16), MAX_RETRY_DELAY);
+        // spread the retries of parallel requests
+        return delay / 2 + ThreadLocalRandom.current().nextLong(delay / 2 + 1);
+    }
+
+    /**
+     * Set how often a request is repeated if ARCHE is overloaded
+     * 
+     * @param retries
+     */
+
+    public static void setMaxRetries(int retries) {
+        maxRetries = Math.max(retries, 0);
+    }
+
+    /**
+     * Set the number of additional concurrent requests reserved for metadata requests, so they are not stuck behind binary uploads
+     * 
+     * @param requests
+     */
+
+    public static void setMetadataLane(int requests) {
+        AdaptiveLimiter.getInstance().setReservedLane(requests);
+        ArcheGovernor.getInstance().setReservedLane(requests);
+    }
+
+    private static String getMimeType(String filename) {
+        if (filename.endsWith(".xml")) {
+            return MediaType.APPLICATION_XML;
+        } else if (filename.endsWith(".jpg")) {
+            return "image/jpeg";
+        } else if (filename.endsWith(".tif")) {
+            return "image/tiff";
+        } else {
+            return MediaType.APPLICATION_OCTET_STREAM;
+        }
+    }
+
+    /**
+     * Finish the transaction and execute the changes. The commit request is sent with a short read timeout, so no connection is kept open for
+     * the whole commit. If ARCHE has not answered within this time or answers with 202, the state of the transaction is polled with increasing
+     * intervals until ARCHE reports that it was rolled back or the transaction is gone. ARCHE removes a transaction after the commit and after a
+     * rollback, so a vanished transaction only counts as committed, if a resource created in it can be found. Transactions without new
+     * resources wait for the answer to the commit request instead.
      * 
      * @param client
      * @param baseURI
      * @param ti
+     * @return true, if ARCHE confirmed the commit
+     */
+
+    public static boolean finishTransaction(Client client, String baseURI, TransactionInfo ti) {
+        try (TraceSpan span = Tracing.startClient(Endpoint.TRANSACTION_COMMIT.name())) {
+            span.attribute("arche.transaction", ti.getTransactionId());
+            boolean committed = commitTransaction(client, baseURI, ti);
+            if (!committed) {
+                span.error("commit failed");
+            }
+            return committed;
+        }
+    }
+
+    /**
+     * Set the read timeout of the commit request, after that the commit is followed by polling the transaction state
+     * 
+     * @param millis
+     */
+
+    static void setCommitRequestTimeout(long millis) {
+        commitRequestTimeout = millis;
+    }
+
+    private static boolean commitTransaction(Client client, String baseURI, TransactionInfo ti) {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(COMMIT_MAX_DURATION);
+        for (int attempt = 0;; attempt++) {
+            CommitState state = sendCommit(client, baseURI, ti);
+            if (state == CommitState.RUNNING) {
+                state = awaitCommit(client, baseURI, ti, deadline);
+            }
+            switch (state) {
+                case COMMITTED:
+                    ti.setState("committed");
+                    return true;
+                case NOT_STARTED:
+                    // the commit request did not reach ARCHE, the transaction is still active
+                    if (attempt < maxRetries) {
+                        log.warn("Commit of transaction {} was not started, send it again", ti.getTransactionId());
+                        try {
+                            Thread.sleep(COMMIT_POLL_MIN_DELAY << attempt);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                            reportCommitFailure(ti, "interrupted");
+                            return false;
+                        }
+                        continue;
+                    }
+                    reportCommitFailure(ti, "the commit was not started");
+                    return false;
+                default:
+                    return false;
+            }
+        }
+    }
+
+    /** outcome of a commit request or of polling the transaction */
+    private enum CommitState {
+        COMMITTED,
+        RUNNING,
+        NOT_STARTED,
+        FAILED
+    }
+
+    /**
+     * Send the commit request through the governor and the limiter. Without a created resource to confirm the commit with, the answer is awaited.
+     * 
+     * @return COMMITTED or FAILED if ARCHE answered, RUNNING if the answer is still outstanding, NOT_STARTED if ARCHE could not be reached
+     */
+
+    private static CommitState sendCommit(Client client, String baseURI, TransactionInfo ti) {
+        WebTarget target = client.target(baseURI).path("transaction");
+        Invocation.Builder builder = target.request();
+        builder.header("Accept", "application/json");
+        builder.header("X-TRANSACTION-ID", ti.getTransactionId());
+        long timeout = ti.getCreatedIdentifier() != null ? commitRequestTimeout : COMMIT_MAX_DURATION;
+        builder.property(ClientProperties.READ_TIMEOUT, (int) timeout);
+        Response response;
+        try {
+            // the duration depends on the size of the transaction, it is no latency sample
+            response = execute(Endpoint.TRANSACTION_COMMIT, target, 0, () -> builder.put(Entity.json("")), true, false);
+        } catch (ProcessingException e) {
+            if (Thread.currentThread().isInterrupted()) {
+                reportCommitFailure(ti, "interrupted");
+                return CommitState.FAILED;
+            }
+            if (isConnectFailure(e)) {
+                log.warn("Cannot send the commit of transaction {}: {}", ti.getTransactionId(), e.getMessage());
+                return CommitState.NOT_STARTED;
+            }
+            // usually the read timeout: ARCHE may still execute the commit, the state tells
+            log.debug("No answer to the commit of transaction {} yet: {}", ti.getTransactionId(), e.getMessage());
+            return CommitState.RUNNING;
+        }
+        int status = response.getStatus();
+        try {
+            if (status == 200 || status == 204) {
+                return CommitState.COMMITTED;
+            } else if (status == 202 || status == 504) {
+                // accepted, or a proxy stopped waiting for ARCHE
+                return CommitState.RUNNING;
+            }
+            String result = response.readEntity(String.class);
+            reportCommitFailure(ti, String.format("error code %2d , reason: %s", status, result));
+            return CommitState.FAILED;
+        } finally {
+            response.close();
+        }
+    }
+
+    /**
+     * Check if a request failed before it reached ARCHE, so it can be sent again
+     * 
+     * @param e
+     * @return
      */
 
-    public static void finishTransaction(Client client, String baseURI, TransactionInfo ti) {
+    private static boolean isConnectFailure(ProcessingException e) {
+        for (Throwable cause = e.getCause(); cause != null; cause = cause.getCause()) {
+            if (cause instanceof ConnectException || cause instanceof NoRouteToHostException || cause instanceof UnknownHostException) {
+                return true;
+            }
+            // connect and read timeouts are both reported as SocketTimeoutException
+            if (cause instanceof SocketTimeoutException && cause.getMessage() != null && cause.getMessage().toLowerCase().contains("connect")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Poll the state of the transaction with increasing intervals until the commit is finished
+     * 
+     * @return COMMITTED if the transaction is gone and a resource created in it exists, FAILED if it was rolled back, cannot be confirmed or did
+     *         not finish in time
+     */
+
+    private static CommitState awaitCommit(Client client, String baseURI, TransactionInfo ti, long deadline) {
+        long delay = COMMIT_POLL_MIN_DELAY;
+        while (deadline - System.nanoTime() > 0) {
+            try {
+                Thread.sleep(delay);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                reportCommitFailure(ti, "interrupted");
+                return CommitState.FAILED;
+            }
+            delay = Math.min(delay * 2, COMMIT_POLL_MAX_DELAY);
+            Response response = readTransaction(client, baseURI, ti);
+            int status = response.getStatus();
+            if (status == 400 || status == 404 || status == 410) {
+                // ARCHE removes the transaction after the commit and after a rollback, the state in between may never be seen
+                response.close();
+                CommitState state = verifyCommit(client, baseURI, ti);
+                if (state != CommitState.RUNNING) {
+                    return state;
+                }
+                continue;
+            } else if (status != 200) {
+                // e.g. the server is overloaded, try again later
+                log.warn("Cannot get the state of transaction {}, status {}", ti.getTransactionId(), status);
+                response.close();
+                continue;
+            }
+            TransactionInfo current = response.readEntity(TransactionInfo.class);
+            ti.setState(current.getState());
+            ti.setLockedResourceCount(current.getLockedResourceCount());
+            log.debug("Commit of transaction {} running, state {}, {} locked resources", ti.getTransactionId(), current.getState(),
+                    current.getLockedResourceCount());
+            // 'active' only means that ARCHE has not started the commit yet, the request was sent
+            if ("rollback".equals(current.getState()) || "failed".equals(current.getState())) {
+                reportCommitFailure(ti, "state " + current.getState());
+                return CommitState.FAILED;
+            }
+        }
+        reportCommitFailure(ti, "not finished after " + COMMIT_MAX_DURATION / 60000 + " minutes");
+        return CommitState.FAILED;
+    }
+
+    /**
+     * Decide the outcome of a commit after the transaction is gone by searching a resource that was created in it
+     * 
+     * @return COMMITTED if the resource exists, FAILED if not or if no resource is known, RUNNING if the search failed
+     */
+
+    private static CommitState verifyCommit(Client client, String baseURI, TransactionInfo ti) {
+        String identifier = ti.getCreatedIdentifier();
+        if (identifier == null) {
+            reportCommitFailure(ti, "the transaction is gone, the commit cannot be confirmed");
+            return CommitState.FAILED;
+        }
+        String uri = findResourceURI(client, baseURI, identifier);
+        if (uri == null) {
+            reportCommitFailure(ti, "the transaction was rolled back");
+            return CommitState.FAILED;
+        } else if (uri.isEmpty()) {
+            log.warn("Cannot confirm the commit of transaction {}, search again later", ti.getTransactionId());
+            return CommitState.RUNNING;
+        }
+        return CommitState.COMMITTED;
+    }
+
+    private static void reportCommitFailure(TransactionInfo ti, String reason) {
+        String errorMessage = String.format("Commit of ARCHE transaction %d failed: %s", ti.getTransactionId(), reason);
+        log.error(errorMessage);
+        Helper.setFehlerMeldung(errorMessage);
+    }
+
+    private static Response readTransaction(Client client, String baseURI, TransactionInfo ti) {
         WebTarget target = client.target(baseURI).path("transaction");
         Invocation.Builder builder = target.request();
         builder.header("Accept", "application/json");
         builder.header("X-TRANSACTION-ID", ti.getTransactionId());
-        Response response = builder.put(Entity.json(""));
-        if (response.getStatus() != 204) {
-            // TODOD handle errors
+        return execute(Endpoint.TRANSACTION_STATE, target, 0, builder::get, true, true);
+    }
+
+    /**
+     * Get the current state of a transaction
+     * 
+     * @param client
+     * @param baseURI
+     * @param ti
+     * @return the state or null, if the transaction does not exist (anymore) or its state cannot be read
+     */
+
+    public static TransactionInfo getTransactionState(Client client, String baseURI, TransactionInfo ti) {
+        Response response = readTransaction(client, baseURI, ti);
+        if (response.getStatus() == 200) {
+            return response.readEntity(TransactionInfo.class);
         }
+        response.close();
+        return null;
     }
 
     /**
-     * Cancel the transaction and rollback the changes
+     * Cancel the transaction and rollback the changes. A transaction that does not exist anymore counts as cancelled.
      * 
      * @param client
      * @param baseURI
      * @param ti
+     * @throws ProcessingException if ARCHE cannot be reached or rejects the rollback
      */
 
     public static void cancelTransaction(Client client, String baseURI, TransactionInfo ti) {
@@ -230,7 +835,12 @@ public class ArcheAPI {
         Invocation.Builder builder = target.request();
         builder.header("Accept", "application/json");
         builder.header("X-TRANSACTION-ID", ti.getTransactionId());
-        builder.delete();
+        try (Response response = execute(Endpoint.TRANSACTION_CANCEL, target, 0, builder::delete, true, true)) {
+            int status = response.getStatus();
+            if (status >= 300 && status != 400 && status != 404 && status != 410) {
+                throw new ProcessingException("Rollback of transaction " + ti.getTransactionId() + " failed with status " + status);
+            }
+        }
     }
 
     /**
@@ -239,7 +849,7 @@ public class ArcheAPI {
      * @param client
      * @param baseURI
      * @param value
-     * @return
+     * @return the URI of the resource, null if no resource has the identifier, an empty string if the search failed
      */
 
     public static String findResourceURI(Client client, String baseURI, String value) {
@@ -249,21 +859,18 @@ public class ArcheAPI {
                 .queryParam("property[]", "https%3A%2F%2Fvocabs.acdh.oeaw.ac.at%2Fschema%23hasIdentifier");
 
         Invocation.Builder builder = target.request();
-        builder.header("Accept", "text/turtle");
-        Response response = builder.get();
+        builder.header("Accept", wireFormat.getAccept());
+        Response response = execute(Endpoint.SEARCH, target, 0, builder::get, true, true);
         switch (response.getStatus()) {
             case 200:
-                Model m = response.readEntity(Model.class);
-                StmtIterator qIter = m.listStatements();
-                while (qIter.hasNext()) {
-                    Statement stmt = qIter.nextStatement();
-                    Resource subject = stmt.getSubject(); // get the subject
-                    Property predicate = stmt.getPredicate(); // get the predicate
-                    if (predicate.toString().startsWith("https://vocabs.acdh.oeaw.ac.at")) {
-                        return subject.getURI();
-                    }
+                // parse only up to the first statement of the resource, the rest of the response is discarded
+                try (InputStream in = response.readEntity(InputStream.class)) {
+                    return SubjectFinder.find(in, WireFormat.getLang(response.getMediaType()), "https://vocabs.acdh.oeaw.ac.at");
+                } catch (IOException e) {
+                    log.error("Cannot read search result for {}", value, e);
+                } finally {
+                    response.close();
                 }
-
                 break;
 
             case 404:
@@ -0,0 +1,387 @@
+package org.goobi.api.rest;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import lombok.Getter;
+
+/**
+ * Caps the ARCHE requests and open transactions of all ingests of the application. If the cap is reached, waiting requests are served fairly:
+ * the projects take turns in a weighted round robin, a project with weight 3 gets three requests per turn. Within a project the processes take
+ * turns, so a small process is not stuck behind a large one. Small requests may use a reserved lane of additional requests, so metadata requests
+ * are not stuck behind long binary uploads.
+ *
+ * The governor hands out requests up to the current limit of the {@link AdaptiveLimiter}, so waiting requests queue here in fair order and not
+ * in the limiter. The limiter reports each change of its limit, so requests are granted as soon as the limit grows.
+ *
+ * The project and process of a request are taken from the context of the current thread. The context is inherited by threads created by the
+ * ingest, e.g. the threads of the upload pipeline.
+ */
+public class ArcheGovernor {
+
+    public static final int DEFAULT_MAX_REQUESTS = 32;
+    public static final int DEFAULT_MAX_TRANSACTIONS = 8;
+
+    private static final ArcheGovernor INSTANCE = new ArcheGovernor(DEFAULT_MAX_REQUESTS, DEFAULT_MAX_TRANSACTIONS, AdaptiveLimiter.getInstance());
+
+    private static final Context DEFAULT_CONTEXT = new Context("", "", 1);
+
+    private static final InheritableThreadLocal<Context> CONTEXT = new InheritableThreadLocal<>();
+
+    /**
+     * Project and process of the current ingest
+     */
+    public record Context(String project, String process, int weight) {
+    }
+
+    private static class Waiter {
+        private final Condition condition;
+        private final boolean small;
+        private boolean granted;
+
+        Waiter(Condition condition, boolean small) {
+            this.condition = condition;
+            this.small = small;
+        }
+    }
+
+    private static class ProjectQueue {
+        private final Map<String, Deque<Waiter>> processes = new HashMap<>();
+        private final Deque<String> rotation = new ArrayDeque<>();
+        private int weight = 1;
+        private int served;
+    }
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private final Map<String, ProjectQueue> projects = new HashMap<>();
+    private final Deque<String> projectRotation = new ArrayDeque<>();
+    private int waiting;
+
+    private final Condition transactionAvailable = lock.newCondition();
+
+    @Getter
+    private int maxRequests;
+    @Getter
+    private int maxTransactions;
+
+    /** additional requests only used by small requests */
+    private int reservedLane = AdaptiveLimiter.DEFAULT_RESERVED_LANE;
+
+    private int requestsInFlight;
+    private int openTransactions;
+
+    /** limiter that is acquired after the governor, or null */
+    private final AdaptiveLimiter limiter;
+
+    ArcheGovernor(int maxRequests, int maxTransactions) {
+        this(maxRequests, maxTransactions, null);
+    }
+
+    ArcheGovernor(int maxRequests, int maxTransactions, AdaptiveLimiter limiter) {
+        this.limiter = limiter;
+        configure(maxRequests, maxTransactions);
+        if (limiter != null) {
+            limiter.setLimitListener(this::limitChanged);
+        }
+    }
+
+    public static ArcheGovernor getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Set the project and process of the ingest running in the current thread
+     *
+     * @param project
+     * @param process
+     * @param weight share of the project, compared to other projects
+     */
+
+    public static void setContext(String project, String process, int weight) {
+        CONTEXT.set(new Context(Objects.toString(project, ""), Objects.toString(process, ""), Math.max(weight, 1)));
+    }
+
+    public static void clearContext() {
+        CONTEXT.remove();
+    }
+
+    private static Context currentContext() {
+        Context context = CONTEXT.get();
+        return context == null ? DEFAULT_CONTEXT : context;
+    }
+
+    /**
+     * Change the caps
+     *
+     * @param maxRequests maximum number of requests running at the same time
+     * @param maxTransactions maximum number of open transactions
+     */
+
+    public void configure(int maxRequests, int maxTransactions) {
+        lock.lock();
+        try {
+            this.maxRequests = Math.max(maxRequests, 1);
+            this.maxTransactions = Math.max(maxTransactions, 1);
+            dispatch();
+            transactionAvailable.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Set the number of additional requests for small requests
+     *
+     * @param requests
+     */
+
+    public void setReservedLane(int requests) {
+        lock.lock();
+        try {
+            reservedLane = Math.max(requests, 0);
+            dispatch();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Wait until a request can be sent
+     *
+     * @throws InterruptedException
+     */
+
+    public void acquireRequest() throws InterruptedException {
+        acquireRequest(false);
+    }
+
+    /**
+     * Wait until a request can be sent
+     *
+     * @param small true for small requests, they may use the reserved lane
+     * @throws InterruptedException
+     */
+
+    public void acquireRequest(boolean small) throws InterruptedException {
+        lock.lock();
+        try {
+            // if others are waiting, all regular requests are in use and only the reserved lane is left
+            if ((waiting == 0 || small) && requestsInFlight < getCapacity() + (small ? reservedLane : 0)) {
+                requestsInFlight++;
+                return;
+            }
+            Waiter waiter = enqueue(currentContext(), small);
+            try {
+                while (!waiter.granted) {
+                    waiter.condition.await();
+                }
+            } catch (InterruptedException e) {
+                if (waiter.granted) {
+                    // the request was already granted, give it to the next one
+                    requestsInFlight--;
+                    dispatch();
+                } else {
+                    remove(waiter);
+                }
+                throw e;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Called by the limiter after its limit has changed
+     */
+
+    private void limitChanged() {
+        lock.lock();
+        try {
+            dispatch();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return the number of regular requests that can run at the same time
+     */
+
+    private int getCapacity() {
+        return limiter == null ? maxRequests : Math.min(maxRequests, limiter.getLimit());
+    }
+
+    public void releaseRequest() {
+        lock.lock();
+        try {
+            requestsInFlight--;
+            dispatch();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Wait until a new transaction can be opened
+     *
+     * @throws InterruptedException
+     */
+
+    public void acquireTransaction() throws InterruptedException {
+        lock.lock();
+        try {
+            while (openTransactions >= maxTransactions) {
+                transactionAvailable.await();
+            }
+            openTransactions++;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void releaseTransaction() {
+        lock.lock();
+        try {
+            openTransactions--;
+            transactionAvailable.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getRequestsInFlight() {
+        lock.lock();
+        try {
+            return requestsInFlight;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    int getWaiting() {
+        lock.lock();
+        try {
+            return waiting;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getOpenTransactions() {
+        lock.lock();
+        try {
+            return openTransactions;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private Waiter enqueue(Context context, boolean small) {
+        ProjectQueue project = projects.get(context.project());
+        if (project == null) {
+            project = new ProjectQueue();
+            projects.put(context.project(), project);
+            projectRotation.addLast(context.project());
+        }
+        project.weight = context.weight();
+        Deque<Waiter> process = project.processes.get(context.process());
+        if (process == null) {
+            process = new ArrayDeque<>();
+            project.processes.put(context.process(), process);
+            project.rotation.addLast(context.process());
+        }
+        Waiter waiter = new Waiter(lock.newCondition(), small);
+        process.addLast(waiter);
+        waiting++;
+        return waiter;
+    }
+
+    private void remove(Waiter waiter) {
+        for (ProjectQueue project : projects.values()) {
+            for (Deque<Waiter> process : project.processes.values()) {
+                if (process.remove(waiter)) {
+                    waiting--;
+                    cleanUp();
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Grant free requests to the waiting threads in weighted round robin order
+     */
+
+    private void dispatch() {
+        int capacity = getCapacity();
+        while (waiting > 0 && requestsInFlight < capacity) {
+            String projectName = projectRotation.peekFirst();
+            ProjectQueue project = projects.get(projectName);
+            String processName = project.rotation.pollFirst();
+            Deque<Waiter> process = project.processes.get(processName);
+            Waiter waiter = process.pollFirst();
+            if (process.isEmpty()) {
+                project.processes.remove(processName);
+            } else {
+                project.rotation.addLast(processName);
+            }
+            project.served++;
+            if (project.processes.isEmpty()) {
+                projectRotation.pollFirst();
+                projects.remove(projectName);
+            } else if (project.served >= project.weight) {
+                // turn of the next project
+                project.served = 0;
+                projectRotation.addLast(projectRotation.pollFirst());
+            }
+            grant(waiter);
+        }
+        // the reserved lane is only used by small requests, in the order of the rotation
+        while (waiting > 0 && requestsInFlight < capacity + reservedLane) {
+            Waiter waiter = pollSmall();
+            if (waiter == null) {
+                return;
+            }
+            grant(waiter);
+        }
+    }
+
+    private Waiter pollSmall() {
+        for (String projectName : projectRotation) {
+            ProjectQueue project = projects.get(projectName);
+            for (String processName : project.rotation) {
+                Deque<Waiter> process = project.processes.get(processName);
+                for (Waiter waiter : process) {
+                    if (waiter.small) {
+                        process.remove(waiter);
+                        cleanUp();
+                        return waiter;
+                    }
+                }
+            }
+        }
+        return null;
+    }
+
+    private void grant(Waiter waiter) {
+        waiting--;
+        requestsInFlight++;
+        waiter.granted = true;
+        waiter.condition.signal();
+    }
+
+    private void cleanUp() {
+        projects.values().forEach(project -> {
+            project.processes.values().removeIf(Deque::isEmpty);
+            project.rotation.removeIf(name -> !project.processes.containsKey(name));
+        });
+        projects.values().removeIf(project -> project.processes.isEmpty());
+        projectRotation.removeIf(name -> !projects.containsKey(name));
+    }
+}
@@ -0,0 +1,100 @@
+package org.goobi.api.rest;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.goobi.api.rest.ArcheMetrics.Endpoint;
+import org.goobi.api.rest.ArcheMetrics.Timing;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.FunctionTimer;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+/**
+ * Publishes the {@link ArcheMetrics} in a Micrometer registry. The meters only read the counters of ArcheMetrics when the registry is scraped,
+ * the requests themselves do not touch Micrometer.
+ *
+ * Micrometer is an optional dependency, this class must only be used if it is available.
+ */
+public class ArcheMeterBinder implements MeterBinder {
+
+    private static final String[] STATUS_CLASSES = { "error", "1xx", "2xx", "3xx", "4xx", "5xx" };
+
+    private static boolean boundToGlobalRegistry;
+
+    private final ArcheMetrics metrics;
+
+    public ArcheMeterBinder(ArcheMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Bind the metrics to the global Micrometer registry, once per application
+     */
+
+    public static synchronized void bindToGlobalRegistry() {
+        if (!boundToGlobalRegistry) {
+            new ArcheMeterBinder(ArcheMetrics.getInstance()).bindTo(Metrics.globalRegistry);
+            boundToGlobalRegistry = true;
+        }
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        for (Endpoint endpoint : Endpoint.values()) {
+            String name = endpoint.name().toLowerCase();
+            for (int statusClass = 0; statusClass < STATUS_CLASSES.length; statusClass++) {
+                int current = statusClass;
+                FunctionCounter.builder("arche.requests", metrics, m -> m.getRequestCountOfClass(endpoint, current))
+                        .description("ARCHE requests by endpoint and status")
+                        .tags("endpoint", name, "status", STATUS_CLASSES[statusClass])
+                        .register(registry);
+            }
+            Timing latency = metrics.getLatency(endpoint);
+            FunctionTimer.builder("arche.requests.latency", latency, t -> t.count.sum(), t -> t.nanos.sum(), TimeUnit.NANOSECONDS)
+                    .description("Duration of the ARCHE requests")
+                    .tags("endpoint", name)
+                    .register(registry);
+            for (int bucket = 0; bucket <= ArcheMetrics.BUCKET_MILLIS.length; bucket++) {
+                int current = bucket;
+                String bound = bucket < ArcheMetrics.BUCKET_MILLIS.length ? String.valueOf(ArcheMetrics.BUCKET_MILLIS[bucket] / 1000d) : "+Inf";
+                FunctionCounter.builder("arche.requests.latency.bucket", metrics, m -> m.getCumulativeBucketCount(endpoint, current))
+                        .description("ARCHE requests with a duration up to the bucket bound in seconds")
+                        .tags("endpoint", name, "le", bound)
+                        .register(registry);
+            }
+        }
+
+        Gauge.builder("arche.uploads.inflight", metrics, ArcheMetrics::getInFlightUploads)
+                .description("Binary uploads running right now")
+                .register(registry);
+        FunctionCounter.builder("arche.uploads.bytes", metrics, ArcheMetrics::getUploadedBytes)
+                .description("Uploaded bytes")
+                .baseUnit("bytes")
+                .register(registry);
+        Gauge.builder("arche.transactions.open", metrics, ArcheMetrics::getOpenTransactions)
+                .description("Open ARCHE transactions")
+                .register(registry);
+
+        metrics.addListener(new ArcheMetrics.Listener() {
+            @Override
+            public void queueAdded(String name, AtomicInteger depth) {
+                Gauge.builder("arche.pipeline.queue", depth, AtomicInteger::get)
+                        .description("Elements waiting before the pipeline stage")
+                        .tags("stage", name)
+                        .register(registry);
+            }
+
+            @Override
+            public void resourceTypeAdded(String type, Timing timing) {
+                FunctionTimer.builder("arche.model.build", timing, t -> t.count.sum(), t -> t.nanos.sum(), TimeUnit.NANOSECONDS)
+                        .description("Time to build the RDF resources")
+                        .tags("type", type)
+                        .register(registry);
+            }
+        });
+    }
+}
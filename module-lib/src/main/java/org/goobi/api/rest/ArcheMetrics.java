@@ -0,0 +1,324 @@
+package org.goobi.api.rest;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+import lombok.extern.log4j.Log4j2;
+
+/**
+ * Live metrics of all ARCHE requests and ingests of the application: requests per endpoint and status, latency histograms, in-flight uploads,
+ * uploaded bytes, open transactions, the depth of the pipeline queues and the time to build the resources.
+ *
+ * Requests, statuses and latencies are counted in arrays that are created up front, recording them creates no objects except the cells a
+ * LongAdder adds under contention. The time to build resources is looked up by the name of the resource type. This only applies to the metrics:
+ * each request attempt in ArcheAPI still creates a flight recorder event, a tracing span and the supplier of the request, use the JMH option
+ * -prof gc to measure the allocations of a change. The metrics are published via JMX as org.goobi.api.rest:type=ArcheMetrics and can be bound to
+ * a Micrometer registry.
+ */
+@Log4j2
+public class ArcheMetrics implements ArcheMetricsMXBean {
+
+    /**
+     * The ARCHE operations
+     */
+    public enum Endpoint {
+        TRANSACTION_START,
+        TRANSACTION_STATE,
+        TRANSACTION_COMMIT,
+        TRANSACTION_CANCEL,
+        METADATA_CREATE,
+        METADATA_UPDATE,
+        BINARY,
+        SEARCH
+    }
+
+    /** upper bounds of the latency buckets in milliseconds, the last bucket has no upper bound */
+    static final long[] BUCKET_MILLIS = { 1, 2, 5, 10, 25, 50, 100, 250, 500, 1000, 2500, 5000, 10000, 30000, 60000 };
+
+    /** status codes are counted from 0 to 599, 0 is used for requests without an answer */
+    private static final int STATUS_CODES = 600;
+
+    private static final int BUCKETS = BUCKET_MILLIS.length + 1;
+
+    private static final long[] BUCKET_NANOS = new long[BUCKET_MILLIS.length];
+
+    static {
+        for (int i = 0; i < BUCKET_MILLIS.length; i++) {
+            BUCKET_NANOS[i] = TimeUnit.MILLISECONDS.toNanos(BUCKET_MILLIS[i]);
+        }
+    }
+
+    private static final ArcheMetrics INSTANCE = new ArcheMetrics();
+
+    static {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(INSTANCE, new ObjectName("org.goobi.api.rest:type=ArcheMetrics"));
+        } catch (JMException e) {
+            log.warn("Cannot register ARCHE metrics in JMX", e);
+        }
+    }
+
+    /**
+     * Notified when a new queue or resource type is measured for the first time
+     */
+    interface Listener {
+        void queueAdded(String name, AtomicInteger depth);
+
+        void resourceTypeAdded(String type, Timing timing);
+    }
+
+    /**
+     * Number and summed duration of an operation
+     */
+    static class Timing {
+        final LongAdder count = new LongAdder();
+        final LongAdder nanos = new LongAdder();
+
+        double meanMillis() {
+            long c = count.sum();
+            return c == 0 ? 0 : nanos.sum() / 1_000_000d / c;
+        }
+    }
+
+    private final int endpoints = Endpoint.values().length;
+
+    private final AtomicLongArray statusCounts = new AtomicLongArray(endpoints * STATUS_CODES);
+    private final AtomicLongArray latencyBuckets = new AtomicLongArray(endpoints * BUCKETS);
+    private final Timing[] latency = new Timing[endpoints];
+
+    private final AtomicInteger inFlightUploads = new AtomicInteger();
+    private final LongAdder uploadedBytes = new LongAdder();
+
+    private final Map<String, AtomicInteger> queueDepths = new ConcurrentHashMap<>();
+    private final Map<String, Timing> modelBuild = new ConcurrentHashMap<>();
+
+    private final CopyOnWriteArrayList<Listener> listeners = new CopyOnWriteArrayList<>();
+
+    private long rateSampleNanos = System.nanoTime();
+    private long rateSampleBytes;
+    private double bytesPerSecond;
+
+    ArcheMetrics() {
+        for (int i = 0; i < endpoints; i++) {
+            latency[i] = new Timing();
+        }
+    }
+
+    public static ArcheMetrics getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Record a finished request
+     *
+     * @param endpoint
+     * @param status status code or 0, if no answer was received
+     * @param nanos duration of the request
+     */
+
+    public void recordRequest(Endpoint endpoint, int status, long nanos) {
+        int e = endpoint.ordinal();
+        statusCounts.incrementAndGet(e * STATUS_CODES + (status >= 0 && status < STATUS_CODES ? status : 0));
+        latencyBuckets.incrementAndGet(e * BUCKETS + bucket(nanos));
+        latency[e].count.increment();
+        latency[e].nanos.add(nanos);
+    }
+
+    private static int bucket(long nanos) {
+        for (int i = 0; i < BUCKET_NANOS.length; i++) {
+            if (nanos <= BUCKET_NANOS[i]) {
+                return i;
+            }
+        }
+        return BUCKET_NANOS.length;
+    }
+
+    public void uploadStarted() {
+        inFlightUploads.incrementAndGet();
+    }
+
+    /**
+     * @param bytes uploaded bytes or 0, if the upload failed
+     */
+
+    public void uploadFinished(long bytes) {
+        inFlightUploads.decrementAndGet();
+        if (bytes > 0) {
+            uploadedBytes.add(bytes);
+        }
+    }
+
+    /**
+     * Get the counter for the number of elements waiting in a queue. The counter is created once and shared by all queues with this name.
+     *
+     * @param name
+     * @return
+     */
+
+    public AtomicInteger queueDepth(String name) {
+        AtomicInteger depth = queueDepths.get(name);
+        if (depth == null) {
+            depth = queueDepths.computeIfAbsent(name, k -> new AtomicInteger());
+            for (Listener listener : listeners) {
+                listener.queueAdded(name, depth);
+            }
+        }
+        return depth;
+    }
+
+    /**
+     * Record the time to build a resource
+     *
+     * @param resourceType e.g. collection, publication or file
+     * @param nanos
+     */
+
+    public void recordModelBuild(String resourceType, long nanos) {
+        Timing timing = modelBuild.get(resourceType);
+        if (timing == null) {
+            timing = modelBuild.computeIfAbsent(resourceType, k -> new Timing());
+            for (Listener listener : listeners) {
+                listener.resourceTypeAdded(resourceType, timing);
+            }
+        }
+        timing.count.increment();
+        timing.nanos.add(nanos);
+    }
+
+    void addListener(Listener listener) {
+        listeners.add(listener);
+        queueDepths.forEach(listener::queueAdded);
+        modelBuild.forEach(listener::resourceTypeAdded);
+    }
+
+    long getRequestCount(Endpoint endpoint, int status) {
+        return statusCounts.get(endpoint.ordinal() * STATUS_CODES + status);
+    }
+
+    /**
+     * @return number of requests of the endpoint with a status code in the given class, e.g. 4 for 4xx, 0 for requests without answer
+     */
+
+    long getRequestCountOfClass(Endpoint endpoint, int statusClass) {
+        if (statusClass == 0) {
+            return getRequestCount(endpoint, 0);
+        }
+        long sum = 0;
+        for (int status = statusClass * 100; status < statusClass * 100 + 100; status++) {
+            sum += getRequestCount(endpoint, status);
+        }
+        return sum;
+    }
+
+    /**
+     * @return number of requests of the endpoint with a duration up to the bucket bound
+     */
+
+    long getCumulativeBucketCount(Endpoint endpoint, int bucket) {
+        long sum = 0;
+        for (int i = 0; i <= bucket; i++) {
+            sum += latencyBuckets.get(endpoint.ordinal() * BUCKETS + i);
+        }
+        return sum;
+    }
+
+    Timing getLatency(Endpoint endpoint) {
+        return latency[endpoint.ordinal()];
+    }
+
+    @Override
+    public Map<String, Long> getRequestCounts() {
+        Map<String, Long> counts = new TreeMap<>();
+        for (Endpoint endpoint : Endpoint.values()) {
+            for (int status = 0; status < STATUS_CODES; status++) {
+                long count = getRequestCount(endpoint, status);
+                if (count > 0) {
+                    counts.put(endpoint + " " + (status == 0 ? "error" : String.valueOf(status)), count);
+                }
+            }
+        }
+        return counts;
+    }
+
+    @Override
+    public Map<String, Double> getMeanLatencyMillis() {
+        Map<String, Double> values = new TreeMap<>();
+        for (Endpoint endpoint : Endpoint.values()) {
+            values.put(endpoint.name(), latency[endpoint.ordinal()].meanMillis());
+        }
+        return values;
+    }
+
+    @Override
+    public Map<String, Long> getLatencyP95Millis() {
+        Map<String, Long> values = new TreeMap<>();
+        for (Endpoint endpoint : Endpoint.values()) {
+            long total = getCumulativeBucketCount(endpoint, BUCKETS - 1);
+            if (total == 0) {
+                continue;
+            }
+            long cumulative = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                cumulative += latencyBuckets.get(endpoint.ordinal() * BUCKETS + i);
+                if (cumulative >= total * 0.95) {
+                    // upper bound of the bucket, -1 for the open last bucket
+                    values.put(endpoint.name(), i < BUCKET_MILLIS.length ? BUCKET_MILLIS[i] : -1);
+                    break;
+                }
+            }
+        }
+        return values;
+    }
+
+    @Override
+    public int getInFlightUploads() {
+        return inFlightUploads.get();
+    }
+
+    @Override
+    public long getUploadedBytes() {
+        return uploadedBytes.sum();
+    }
+
+    @Override
+    public synchronized double getBytesPerSecond() {
+        long now = System.nanoTime();
+        // the rate is measured over at least one second, more frequent calls return the last value
+        if (now - rateSampleNanos >= TimeUnit.SECONDS.toNanos(1)) {
+            long bytes = uploadedBytes.sum();
+            bytesPerSecond = (bytes - rateSampleBytes) * 1_000_000_000d / (now - rateSampleNanos);
+            rateSampleBytes = bytes;
+            rateSampleNanos = now;
+        }
+        return bytesPerSecond;
+    }
+
+    @Override
+    public int getOpenTransactions() {
+        return ArcheGovernor.getInstance().getOpenTransactions();
+    }
+
+    @Override
+    public Map<String, Integer> getQueueDepths() {
+        Map<String, Integer> values = new TreeMap<>();
+        queueDepths.forEach((name, depth) -> values.put(name, depth.get()));
+        return values;
+    }
+
+    @Override
+    public Map<String, Double> getModelBuildMeanMillis() {
+        Map<String, Double> values = new TreeMap<>();
+        modelBuild.forEach((type, timing) -> values.put(type, timing.meanMillis()));
+        return values;
+    }
+}
@@ -0,0 +1,54 @@
+package org.goobi.api.rest;
+
+import java.util.Map;
+
+/**
+ * JMX view of the {@link ArcheMetrics}
+ */
+public interface ArcheMetricsMXBean {
+
+    /**
+     * @return number of requests by endpoint and status code, e.g. "METADATA_CREATE 409"
+     */
+    Map<String, Long> getRequestCounts();
+
+    /**
+     * @return mean duration of the requests by endpoint
+     */
+    Map<String, Double> getMeanLatencyMillis();
+
+    /**
+     * @return upper bound of the latency bucket containing the 95th percentile by endpoint, -1 if it is above the largest bucket
+     */
+    Map<String, Long> getLatencyP95Millis();
+
+    /**
+     * @return number of binary uploads running right now
+     */
+    int getInFlightUploads();
+
+    /**
+     * @return uploaded bytes since the start of the application
+     */
+    long getUploadedBytes();
+
+    /**
+     * @return uploaded bytes per second since the last call, measured over at least one second
+     */
+    double getBytesPerSecond();
+
+    /**
+     * @return number of open ARCHE transactions
+     */
+    int getOpenTransactions();
+
+    /**
+     * @return number of elements waiting before each pipeline stage
+     */
+    Map<String, Integer> getQueueDepths();
+
+    /**
+     * @return mean time to build a resource by resource type
+     */
+    Map<String, Double> getModelBuildMeanMillis();
+}
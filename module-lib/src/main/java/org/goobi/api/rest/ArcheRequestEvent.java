@@ -0,0 +1,44 @@
+package org.goobi.api.rest;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * Flight recorder event for a single attempt of an ARCHE request. The duration covers the request only, the time spent waiting for the governor
+ * and the limiter is recorded in a separate field.
+ */
+@Name("org.goobi.arche.Request")
+@Label("ARCHE Request")
+@Category({ "Goobi", "ARCHE" })
+@Description("A single attempt of a request to the ARCHE API")
+@StackTrace(false)
+public class ArcheRequestEvent extends Event {
+
+    @Label("Endpoint")
+    String endpoint;
+
+    @Label("URI")
+    String uri;
+
+    @Label("Status")
+    @Description("HTTP status code, 0 if no answer was received")
+    int status;
+
+    @Label("Attempt")
+    int attempt;
+
+    @Label("Request Size")
+    @DataAmount
+    long requestBytes;
+
+    @Label("Wait Time")
+    @Description("Time spent waiting for the governor and the adaptive limiter")
+    @Timespan
+    long waitNanos;
+}
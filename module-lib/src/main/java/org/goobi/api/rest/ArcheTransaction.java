@@ -0,0 +1,116 @@
+package org.goobi.api.rest;
+
+import jakarta.ws.rs.ProcessingException;
+import jakarta.ws.rs.client.Client;
+import lombok.Getter;
+import lombok.extern.log4j.Log4j2;
+
+/**
+ * An open ARCHE transaction. If the transaction was not committed when it is closed, it is cancelled. Used in a try-with-resources block, every
+ * failure, early return or exception rolls back the transaction immediately.
+ */
+@Log4j2
+public class ArcheTransaction implements AutoCloseable {
+
+    private final Client client;
+
+    private final String baseURI;
+
+    private final TransactionRegistry registry;
+
+    @Getter
+    private final TransactionInfo info;
+
+    private boolean finished;
+
+    private ArcheTransaction(Client client, String baseURI, TransactionRegistry registry, TransactionInfo info) {
+        this.client = client;
+        this.baseURI = baseURI;
+        this.registry = registry;
+        this.info = info;
+    }
+
+    /**
+     * Start a new transaction
+     *
+     * @param client
+     * @param baseURI
+     * @param registry registry of open transactions or null
+     * @param owner description of the ingest, used in the registry
+     * @return
+     */
+
+    public static ArcheTransaction start(Client client, String baseURI, TransactionRegistry registry, String owner) {
+        ArcheGovernor governor = ArcheGovernor.getInstance();
+        try {
+            governor.acquireTransaction();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ProcessingException("Interrupted while waiting for an ARCHE transaction", e);
+        }
+        TransactionInfo ti;
+        try {
+            ti = ArcheAPI.startTransaction(client, baseURI);
+        } catch (RuntimeException e) {
+            governor.releaseTransaction();
+            throw e;
+        }
+        if (registry != null) {
+            registry.register(baseURI, ti, owner);
+        }
+        return new ArcheTransaction(client, baseURI, registry, ti);
+    }
+
+    /**
+     * Commit the transaction and wait until ARCHE confirmed the commit. If the commit failed, the transaction is cancelled on close.
+     *
+     * @return true, if the commit was successful
+     */
+
+    public boolean commit() {
+        if (!ArcheAPI.finishTransaction(client, baseURI, info)) {
+            return false;
+        }
+        finished = true;
+        ArcheGovernor.getInstance().releaseTransaction();
+        if (registry != null) {
+            registry.remove(info);
+        }
+        return true;
+    }
+
+    /**
+     * Cancel the transaction and roll back all changes. If the rollback fails, the transaction is left to the reaper of the registry.
+     */
+
+    public void cancel() {
+        if (!finished) {
+            finished = true;
+            ArcheGovernor.getInstance().releaseTransaction();
+        }
+        try {
+            ArcheAPI.cancelTransaction(client, baseURI, info);
+        } catch (RuntimeException e) {
+            if (registry != null) {
+                registry.abandon(info);
+            }
+            throw e;
+        }
+        if (registry != null) {
+            registry.remove(info);
+        }
+    }
+
+    @Override
+    public void close() {
+        if (finished) {
+            return;
+        }
+        try {
+            cancel();
+        } catch (RuntimeException e) {
+            // the transaction stays in the registry and is cancelled by the reaper
+            log.error("Cannot cancel ARCHE transaction {}", info.getTransactionId(), e);
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package org.goobi.api.rest;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import de.sub.goobi.config.ConfigurationHelper;
+import de.sub.goobi.helper.StorageProvider;
+import lombok.Getter;
+
+/**
+ * Opens the streams for binary uploads. On S3 storage, large objects are read with parallel ranged GET requests and piped directly into the
+ * request body, smaller files and local files are streamed through the {@link StorageProvider}.
+ */
+@Getter
+public class BinaryStreamFactory {
+
+    public static final long DEFAULT_RANGE_THRESHOLD = 64L * 1024 * 1024;
+    public static final int DEFAULT_CHUNK_SIZE = 8 * 1024 * 1024;
+    public static final int DEFAULT_PARALLELISM = 4;
+
+    private static final ExecutorService RANGE_EXECUTOR = Executors.newCachedThreadPool(new ThreadFactory());
+
+    private final long rangeThreshold;
+    private final int chunkSize;
+    private final int parallelism;
+
+    public BinaryStreamFactory() {
+        this(DEFAULT_RANGE_THRESHOLD, DEFAULT_CHUNK_SIZE, DEFAULT_PARALLELISM);
+    }
+
+    /**
+     * @param rangeThreshold minimal object size in bytes for ranged reads
+     * @param chunkSize size of a single range request
+     * @param parallelism number of range requests in flight per file
+     */
+    public BinaryStreamFactory(long rangeThreshold, int chunkSize, int parallelism) {
+        this.rangeThreshold = rangeThreshold;
+        this.chunkSize = chunkSize;
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Open a stream for the given file
+     *
+     * @param file
+     * @return
+     * @throws IOException
+     */
+
+    public InputStream open(Path file) throws IOException {
+        StorageReadEvent event = new StorageReadEvent();
+        if (!event.isEnabled()) {
+            return openStream(file);
+        }
+        // only measured while a flight recording is running
+        event.begin();
+        long start = System.nanoTime();
+        InputStream in = openStream(file);
+        event.path = file.toString();
+        event.openNanos = System.nanoTime() - start;
+        return new RecordingInputStream(in, event);
+    }
+
+    private InputStream openStream(Path file) throws IOException {
+        if (ConfigurationHelper.getInstance().useS3()) {
+            RangeSource source = S3RangeSource.forPath(file);
+            if (source.length() >= rangeThreshold) {
+                return new RangedInputStream(source, chunkSize, parallelism, RANGE_EXECUTOR);
+            }
+        }
+        return StorageProvider.getInstance().newInputStream(file);
+    }
+
+    /**
+     * Get the file size, used to send the content length instead of buffering the request body
+     *
+     * @param file
+     * @return size in bytes or -1, if the size cannot be determined
+     */
+
+    public long size(Path file) {
+        try {
+            return StorageProvider.getInstance().getFileSize(file);
+        } catch (IOException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Counts the bytes and the time spent in the read calls and commits the event when the stream is closed
+     */
+    private static class RecordingInputStream extends FilterInputStream {
+        private final StorageReadEvent event;
+        private boolean closed;
+
+        RecordingInputStream(InputStream in, StorageReadEvent event) {
+            super(in);
+            this.event = event;
+        }
+
+        @Override
+        public int read() throws IOException {
+            long start = System.nanoTime();
+            int b = super.read();
+            event.readNanos += System.nanoTime() - start;
+            if (b >= 0) {
+                event.bytes++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            long start = System.nanoTime();
+            int n = super.read(b, off, len);
+            event.readNanos += System.nanoTime() - start;
+            if (n > 0) {
+                event.bytes += n;
+            }
+            return n;
+        }
+
+        @Override
+        public void close() throws IOException {
+            super.close();
+            if (!closed) {
+                closed = true;
+                event.commit();
+            }
+        }
+    }
+
+    private static class ThreadFactory implements java.util.concurrent.ThreadFactory {
+        private final AtomicInteger counter = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, "arche-range-reader-" + counter.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        }
+    }
+}
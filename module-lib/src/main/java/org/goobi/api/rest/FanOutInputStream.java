@@ -0,0 +1,104 @@
+package org.goobi.api.rest;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Input stream that copies every byte read from the source into a number of additional sinks, e.g. a file in the export folder and a checksum.
+ * This way a file is read only once from the storage, even if it is needed in several places.
+ *
+ * The sinks only receive the bytes the consumer read. If the consumer stopped reading early, e.g. because the upload was rejected, the rest of
+ * the source is not read and {@link #isComplete()} is false, so the caller can discard the incomplete copies. The sinks are not closed.
+ */
+public class FanOutInputStream extends FilterInputStream {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final List<OutputStream> sinks;
+
+    private boolean complete;
+
+    public FanOutInputStream(InputStream source, OutputStream... sinks) {
+        super(source);
+        this.sinks = Arrays.asList(sinks);
+    }
+
+    @Override
+    public int read() throws IOException {
+        int b = super.read();
+        if (b == -1) {
+            complete = true;
+        } else {
+            for (OutputStream sink : sinks) {
+                sink.write(b);
+            }
+        }
+        return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        int count = super.read(b, off, len);
+        if (count == -1) {
+            complete = true;
+        } else if (count > 0) {
+            for (OutputStream sink : sinks) {
+                sink.write(b, off, count);
+            }
+        }
+        return count;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        // skipped bytes must reach the sinks as well
+        byte[] buffer = new byte[(int) Math.min(BUFFER_SIZE, Math.max(n, 1))];
+        long skipped = 0;
+        while (skipped < n) {
+            int count = read(buffer, 0, (int) Math.min(buffer.length, n - skipped));
+            if (count == -1) {
+                break;
+            }
+            skipped += count;
+        }
+        return skipped;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    @Override
+    public synchronized void mark(int readlimit) {
+        // not supported, bytes would be passed twice to the sinks
+    }
+
+    @Override
+    public synchronized void reset() throws IOException {
+        throw new IOException("mark/reset not supported");
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            for (OutputStream sink : sinks) {
+                sink.flush();
+            }
+        } finally {
+            super.close();
+        }
+    }
+
+    /**
+     * @return true, if the whole source was read and passed to the sinks
+     */
+
+    public boolean isComplete() {
+        return complete;
+    }
+}
@@ -0,0 +1,30 @@
+package org.goobi.api.rest;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * A binary object that can be read in independent byte ranges, e.g. an S3 object read with ranged GET requests.
+ */
+public interface RangeSource {
+
+    /**
+     * Total size of the object in bytes
+     *
+     * @return
+     * @throws IOException
+     */
+
+    long length() throws IOException;
+
+    /**
+     * Open a stream for the given range. The stream must not return more than length bytes.
+     *
+     * @param offset first byte of the range
+     * @param length number of bytes to read
+     * @return
+     * @throws IOException
+     */
+
+    InputStream openRange(long offset, long length) throws IOException;
+}
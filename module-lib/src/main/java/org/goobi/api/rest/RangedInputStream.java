@@ -0,0 +1,152 @@
+package org.goobi.api.rest;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Sequential input stream over a {@link RangeSource}. The object is split into chunks which are fetched in parallel, but delivered in order. At
+ * most <code>parallelism</code> chunks are buffered at any time, so the memory used for a single file is bounded by parallelism * chunkSize.
+ */
+public class RangedInputStream extends InputStream {
+
+    private final RangeSource source;
+    private final int chunkSize;
+    private final int parallelism;
+    private final ExecutorService executor;
+
+    private final long length;
+    private long nextOffset = 0;
+
+    private final Deque<Future<byte[]>> pending = new ArrayDeque<>();
+
+    private byte[] current;
+    private int position;
+
+    private boolean closed;
+
+    public RangedInputStream(RangeSource source, int chunkSize, int parallelism, ExecutorService executor) throws IOException {
+        if (chunkSize <= 0 || parallelism <= 0) {
+            throw new IllegalArgumentException("chunkSize and parallelism must be positive");
+        }
+        this.source = source;
+        this.chunkSize = chunkSize;
+        this.parallelism = parallelism;
+        this.executor = executor;
+        this.length = source.length();
+        fill(0);
+    }
+
+    /**
+     * Submit new range requests until the configured number of chunks is buffered or in flight, or the end of the object is reached
+     *
+     * @param held number of chunks held outside of the pending requests
+     */
+
+    private void fill(int held) {
+        while (pending.size() + held < parallelism && nextOffset < length) {
+            final long offset = nextOffset;
+            final int size = (int) Math.min(chunkSize, length - offset);
+            pending.add(executor.submit(() -> readChunk(offset, size)));
+            nextOffset += size;
+        }
+    }
+
+    private byte[] readChunk(long offset, int size) throws IOException {
+        byte[] buffer = new byte[size];
+        try (InputStream in = source.openRange(offset, size)) {
+            int read = 0;
+            while (read < size) {
+                int r = in.read(buffer, read, size - read);
+                if (r == -1) {
+                    throw new IOException("Unexpected end of range at offset " + (offset + read));
+                }
+                read += r;
+            }
+        }
+        return buffer;
+    }
+
+    /**
+     * Make sure the current chunk has remaining bytes
+     *
+     * @return false, if the end of the object is reached
+     * @throws IOException
+     */
+
+    private boolean nextChunk() throws IOException {
+        if (closed) {
+            throw new IOException("Stream closed");
+        }
+        if (current != null && position < current.length) {
+            return true;
+        }
+        // release the consumed chunk before the next one is requested
+        current = null;
+        Future<byte[]> next = pending.poll();
+        if (next == null) {
+            return false;
+        }
+        // the chunk that is awaited counts against the limit
+        fill(1);
+        try {
+            current = next.get();
+            position = 0;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for range request");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException ioe) {
+                throw ioe;
+            }
+            throw new IOException(e.getCause());
+        }
+        return true;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!nextChunk()) {
+            return -1;
+        }
+        return current[position++] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (!nextChunk()) {
+            return -1;
+        }
+        int count = Math.min(len, current.length - position);
+        System.arraycopy(current, position, b, off, count);
+        position += count;
+        return count;
+    }
+
+    @Override
+    public int available() {
+        return current == null ? 0 : current.length - position;
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        current = null;
+        for (Future<byte[]> f : pending) {
+            f.cancel(true);
+        }
+        pending.clear();
+    }
+
+    public long getLength() {
+        return length;
+    }
+}
@@ -0,0 +1,31 @@
+package org.goobi.api.rest;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight recorder event for the serialization of an RDF model into a request body
+ */
+@Name("org.goobi.arche.RdfSerialization")
+@Label("RDF Serialization")
+@Category({ "Goobi", "ARCHE" })
+@StackTrace(false)
+public class RdfSerializationEvent extends Event {
+
+    @Label("Resource")
+    String resource;
+
+    @Label("Format")
+    String format;
+
+    @Label("Statements")
+    long statements;
+
+    @Label("Size")
+    @DataAmount
+    long bytes;
+}
@@ -0,0 +1,99 @@
+package org.goobi.api.rest;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts the ARCHE requests of a single ingest by status code. The statistics are attached to the thread running the ingest and inherited by
+ * the threads it creates, all requests sent from these threads are counted.
+ */
+public class RequestStatistics {
+
+    private static final InheritableThreadLocal<RequestStatistics> CURRENT = new InheritableThreadLocal<>();
+
+    private final Map<Integer, LongAdder> statusCounts = new ConcurrentHashMap<>();
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder retries = new LongAdder();
+    private final LongAdder nanos = new LongAdder();
+
+    /**
+     * Count the requests of the current thread and its new threads in the given statistics
+     *
+     * @param statistics
+     */
+
+    public static void setCurrent(RequestStatistics statistics) {
+        CURRENT.set(statistics);
+    }
+
+    public static void clearCurrent() {
+        CURRENT.remove();
+    }
+
+    /**
+     * @return the statistics of the current thread or null
+     */
+
+    static RequestStatistics current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Count a request answered by ARCHE
+     *
+     * @param status
+     * @param duration in nanoseconds
+     */
+
+    public void record(int status, long duration) {
+        statusCounts.computeIfAbsent(status, k -> new LongAdder()).increment();
+        nanos.add(duration);
+    }
+
+    /**
+     * Count a request without answer, e.g. a connection problem
+     *
+     * @param duration in nanoseconds
+     */
+
+    public void recordFailure(long duration) {
+        failures.increment();
+        nanos.add(duration);
+    }
+
+    public void recordRetry() {
+        retries.increment();
+    }
+
+    /**
+     * @return number of requests per status code, ordered by status code
+     */
+
+    public Map<Integer, Long> getStatusCounts() {
+        Map<Integer, Long> counts = new TreeMap<>();
+        statusCounts.forEach((status, count) -> counts.put(status, count.sum()));
+        return counts;
+    }
+
+    public long getRequests() {
+        return statusCounts.values().stream().mapToLong(LongAdder::sum).sum() + failures.sum();
+    }
+
+    public long getFailures() {
+        return failures.sum();
+    }
+
+    public long getRetries() {
+        return retries.sum();
+    }
+
+    /**
+     * @return summed duration of all requests in nanoseconds
+     */
+
+    public long getNanos() {
+        return nanos.sum();
+    }
+}
@@ -0,0 +1,121 @@
+package org.goobi.api.rest;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.file.Path;
+
+import org.apache.commons.lang3.StringUtils;
+
+import de.sub.goobi.config.ConfigurationHelper;
+import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
+import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
+import software.amazon.awssdk.core.exception.SdkException;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.S3ClientBuilder;
+import software.amazon.awssdk.services.s3.S3Configuration;
+import software.amazon.awssdk.services.s3.model.GetObjectRequest;
+import software.amazon.awssdk.services.s3.model.HeadObjectRequest;
+import software.amazon.awssdk.services.s3.model.HeadObjectResponse;
+
+/**
+ * Reads an object from the S3 bucket configured in Goobi with ranged GET requests.
+ */
+public class S3RangeSource implements RangeSource {
+
+    private static S3Client sharedClient;
+
+    private final S3Client s3;
+    private final String bucket;
+    private final String key;
+
+    private HeadObjectResponse head;
+
+    public S3RangeSource(S3Client s3, String bucket, String key) {
+        this.s3 = s3;
+        this.bucket = bucket;
+        this.key = key;
+    }
+
+    /**
+     * Create a range source for a file in the Goobi metadata folder. The object key is derived the same way Goobi maps paths to keys: the path
+     * relative to the metadata folder.
+     *
+     * @param file
+     * @return
+     */
+
+    public static S3RangeSource forPath(Path file) {
+        ConfigurationHelper config = ConfigurationHelper.getInstance();
+        return new S3RangeSource(getSharedClient(), config.getS3Bucket(), pathToKey(file, config.getMetadataFolder()));
+    }
+
+    static String pathToKey(Path file, String metadataFolder) {
+        String fullPath = file.toAbsolutePath().toString();
+        if (StringUtils.isNotBlank(metadataFolder) && fullPath.startsWith(metadataFolder)) {
+            fullPath = fullPath.substring(metadataFolder.length());
+        }
+        return StringUtils.removeStart(fullPath, "/");
+    }
+
+    /**
+     * Lazily create one client for all range requests. A custom endpoint (e.g. a local S3 compatible server) is used when Goobi is configured with
+     * one.
+     *
+     * @return
+     */
+
+    private static synchronized S3Client getSharedClient() {
+        if (sharedClient == null) {
+            ConfigurationHelper config = ConfigurationHelper.getInstance();
+            S3ClientBuilder builder = S3Client.builder();
+            if (config.useCustomS3()) {
+                builder.endpointOverride(URI.create(config.getS3Endpoint()))
+                        .region(Region.US_EAST_1)
+                        .serviceConfiguration(S3Configuration.builder().pathStyleAccessEnabled(true).build())
+                        .credentialsProvider(StaticCredentialsProvider
+                                .create(AwsBasicCredentials.create(config.getS3AccessKeyID(), config.getS3SecretAccessKey())));
+            }
+            sharedClient = builder.build();
+        }
+        return sharedClient;
+    }
+
+    @Override
+    public long length() throws IOException {
+        return head().contentLength();
+    }
+
+    /**
+     * Modification date of the object, read with the same request as the size
+     *
+     * @return milliseconds since the epoch
+     * @throws IOException
+     */
+
+    public long lastModified() throws IOException {
+        return head().lastModified().toEpochMilli();
+    }
+
+    private HeadObjectResponse head() throws IOException {
+        if (head == null) {
+            try {
+                head = s3.headObject(HeadObjectRequest.builder().bucket(bucket).key(key).build());
+            } catch (SdkException e) {
+                throw new IOException("Cannot read size of s3://" + bucket + "/" + key, e);
+            }
+        }
+        return head;
+    }
+
+    @Override
+    public InputStream openRange(long offset, long rangeLength) throws IOException {
+        String range = "bytes=" + offset + "-" + (offset + rangeLength - 1);
+        try {
+            return s3.getObject(GetObjectRequest.builder().bucket(bucket).key(key).range(range).build());
+        } catch (SdkException e) {
+            throw new IOException("Cannot read " + range + " of s3://" + bucket + "/" + key, e);
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package org.goobi.api.rest;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * Flight recorder event for reading a file from the storage, from opening the file until the stream is closed. The time spent in opening and
+ * in the read calls is recorded separately, the rest of the duration is spent by the consumer, e.g. the upload.
+ */
+@Name("org.goobi.arche.StorageRead")
+@Label("Storage Read")
+@Category({ "Goobi", "ARCHE" })
+@StackTrace(false)
+public class StorageReadEvent extends Event {
+
+    @Label("Path")
+    String path;
+
+    @Label("Bytes Read")
+    @DataAmount
+    long bytes;
+
+    @Label("Open Time")
+    @Timespan
+    long openNanos;
+
+    @Label("Read Time")
+    @Description("Time spent in the read calls")
+    @Timespan
+    long readNanos;
+}
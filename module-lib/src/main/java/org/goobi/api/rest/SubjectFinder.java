@@ -0,0 +1,60 @@
+package org.goobi.api.rest;
+
+import java.io.InputStream;
+
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.riot.Lang;
+import org.apache.jena.riot.RDFParser;
+import org.apache.jena.riot.system.StreamRDFBase;
+
+/**
+ * Finds the subject of the first statement with a predicate in a namespace while the response is parsed. The parser stops at the first
+ * match, the statements are never collected in a model.
+ */
+class SubjectFinder extends StreamRDFBase {
+
+    /** thrown to stop the parser, without stack trace */
+    private static final class Found extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        private Found() {
+            super(null, null, false, false);
+        }
+    }
+
+    private final String namespace;
+    private Node subject;
+
+    private SubjectFinder(String namespace) {
+        this.namespace = namespace;
+    }
+
+    /**
+     * Parse the stream until a statement with a predicate in the namespace is found
+     *
+     * @param in
+     * @param lang
+     * @param namespace
+     * @return the subject URI, null if there is no such statement or the subject is a blank node
+     */
+
+    static String find(InputStream in, Lang lang, String namespace) {
+        SubjectFinder finder = new SubjectFinder(namespace);
+        try {
+            RDFParser.source(in).lang(lang).parse(finder);
+        } catch (Found e) {
+            // stopped at the first match
+        }
+        return finder.subject != null && finder.subject.isURI() ? finder.subject.getURI() : null;
+    }
+
+    @Override
+    public void triple(Triple triple) {
+        Node predicate = triple.getPredicate();
+        if (predicate.isURI() && predicate.getURI().startsWith(namespace)) {
+            subject = triple.getSubject();
+            throw new Found();
+        }
+    }
+}
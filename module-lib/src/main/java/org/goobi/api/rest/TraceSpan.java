@@ -0,0 +1,88 @@
+package org.goobi.api.rest;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A timed section of an ingest, e.g. a phase, a resource or an HTTP request. Spans are created with {@link Tracing#start(String)} and must be
+ * closed in the thread that created them, preferably in a try-with-resources block.
+ *
+ * If no trace is recorded, all spans are the same no-op instance.
+ */
+public class TraceSpan implements AutoCloseable {
+
+    /** span used if no trace is recorded */
+    static final TraceSpan NOOP = new TraceSpan(null, null, null, null, false);
+
+    /** OTLP span kinds */
+    static final int KIND_INTERNAL = 1;
+    static final int KIND_CLIENT = 3;
+
+    final Tracing.Trace trace;
+    final TraceSpan parent;
+    final String spanId;
+    final String name;
+    final int kind;
+    final long startNanos;
+    volatile long endNanos;
+    final Map<String, Object> attributes;
+    volatile String error;
+
+    TraceSpan(Tracing.Trace trace, TraceSpan parent, String spanId, String name, boolean client) {
+        this.trace = trace;
+        this.parent = parent;
+        this.spanId = spanId;
+        this.name = name;
+        this.kind = client ? KIND_CLIENT : KIND_INTERNAL;
+        this.startNanos = System.nanoTime();
+        this.attributes = trace == null ? null : new LinkedHashMap<>();
+    }
+
+    /**
+     * @return true, if the span is recorded. Can be used to avoid computing expensive attributes.
+     */
+
+    public boolean isRecording() {
+        return trace != null;
+    }
+
+    /**
+     * Add an attribute
+     *
+     * @param key
+     * @param value a string, number or boolean
+     * @return this span
+     */
+
+    public TraceSpan attribute(String key, Object value) {
+        if (trace != null && value != null) {
+            synchronized (attributes) {
+                attributes.put(key, value);
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Mark the span as failed
+     *
+     * @param message
+     * @return this span
+     */
+
+    public TraceSpan error(String message) {
+        if (trace != null) {
+            error = message == null ? "" : message;
+        }
+        return this;
+    }
+
+    @Override
+    public void close() {
+        if (trace == null || endNanos != 0) {
+            return;
+        }
+        endNanos = System.nanoTime();
+        Tracing.finished(this);
+    }
+}
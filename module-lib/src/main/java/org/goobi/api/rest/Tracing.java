@@ -0,0 +1,219 @@
+package org.goobi.api.rest;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadLocalRandom;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+
+import lombok.extern.log4j.Log4j2;
+
+/**
+ * Records hierarchical timing spans of a single ingest and writes them to a local file in the OTLP JSON format of OpenTelemetry. The file can
+ * be loaded into a trace viewer, no collector is needed.
+ *
+ * A trace is started with {@link #startTrace(String, Path)}, all spans started in this thread and in the threads it creates are added to the
+ * trace. When the root span is closed, the trace is written. If no trace is started, {@link #start(String)} returns a no-op span.
+ */
+@Log4j2
+public final class Tracing {
+
+    private static final InheritableThreadLocal<TraceSpan> CURRENT = new InheritableThreadLocal<>();
+
+    static final class Trace {
+        final String traceId = randomHex(16);
+        final Instant started = Instant.now();
+        final long startNanos = System.nanoTime();
+        final Path file;
+        final Queue<TraceSpan> spans = new ConcurrentLinkedQueue<>();
+        volatile boolean finished;
+
+        Trace(Path file) {
+            this.file = file;
+        }
+
+        long toEpochNanos(long nanos) {
+            return started.getEpochSecond() * 1_000_000_000L + started.getNano() + (nanos - startNanos);
+        }
+    }
+
+    private Tracing() {
+    }
+
+    /**
+     * Start a new trace in the current thread
+     *
+     * @param name name of the root span
+     * @param file the trace is written to this file when the root span is closed
+     * @return the root span
+     */
+
+    public static TraceSpan startTrace(String name, Path file) {
+        Trace trace = new Trace(file);
+        TraceSpan root = new TraceSpan(trace, null, randomHex(8), name, false);
+        trace.spans.add(root);
+        CURRENT.set(root);
+        return root;
+    }
+
+    /**
+     * Start a span as child of the current span
+     *
+     * @param name
+     * @return the new span or a no-op span, if no trace is recorded
+     */
+
+    public static TraceSpan start(String name) {
+        return start(name, false);
+    }
+
+    /**
+     * Start a span for a request to another service
+     *
+     * @param name
+     * @return the new span or a no-op span, if no trace is recorded
+     */
+
+    public static TraceSpan startClient(String name) {
+        return start(name, true);
+    }
+
+    private static TraceSpan start(String name, boolean client) {
+        TraceSpan parent = CURRENT.get();
+        if (parent == null || parent.trace == null || parent.trace.finished) {
+            return TraceSpan.NOOP;
+        }
+        TraceSpan span = new TraceSpan(parent.trace, parent, randomHex(8), name, client);
+        parent.trace.spans.add(span);
+        CURRENT.set(span);
+        return span;
+    }
+
+    static void finished(TraceSpan span) {
+        // the parent becomes the current span again, even if a child was not closed
+        TraceSpan current = CURRENT.get();
+        while (current != null && current != span) {
+            current = current.parent;
+        }
+        if (current == span) {
+            if (span.parent == null) {
+                CURRENT.remove();
+            } else {
+                CURRENT.set(span.parent);
+            }
+        }
+        if (span.parent == null) {
+            span.trace.finished = true;
+            write(span.trace, span.endNanos);
+        }
+    }
+
+    private static void write(Trace trace, long endNanos) {
+        try {
+            Files.createDirectories(trace.file.getParent());
+            try (Writer writer = Files.newBufferedWriter(trace.file, StandardCharsets.UTF_8)) {
+                new Gson().toJson(toOtlp(trace, endNanos), writer);
+            }
+        } catch (IOException e) {
+            log.error("Cannot write trace {}", trace.file, e);
+        }
+    }
+
+    static JsonObject toOtlp(Trace trace, long endNanos) {
+        JsonArray spans = new JsonArray();
+        for (TraceSpan span : trace.spans) {
+            JsonObject json = new JsonObject();
+            json.addProperty("traceId", trace.traceId);
+            json.addProperty("spanId", span.spanId);
+            if (span.parent != null) {
+                json.addProperty("parentSpanId", span.parent.spanId);
+            }
+            json.addProperty("name", span.name);
+            json.addProperty("kind", span.kind);
+            json.addProperty("startTimeUnixNano", String.valueOf(trace.toEpochNanos(span.startNanos)));
+            // spans left open by an aborted ingest end with the trace
+            long end = span.endNanos == 0 ? endNanos : span.endNanos;
+            json.addProperty("endTimeUnixNano", String.valueOf(trace.toEpochNanos(end)));
+            List<Map.Entry<String, Object>> attributes;
+            synchronized (span.attributes) {
+                attributes = new ArrayList<>(span.attributes.entrySet());
+            }
+            if (span.endNanos == 0) {
+                attributes.add(Map.entry("unfinished", true));
+            }
+            json.add("attributes", toAttributes(attributes));
+            JsonObject status = new JsonObject();
+            if (span.error != null) {
+                status.addProperty("code", 2);
+                status.addProperty("message", span.error);
+            } else {
+                status.addProperty("code", 0);
+            }
+            json.add("status", status);
+            spans.add(json);
+        }
+
+        JsonObject scope = new JsonObject();
+        scope.addProperty("name", "org.goobi.api.rest");
+        JsonObject scopeSpans = new JsonObject();
+        scopeSpans.add("scope", scope);
+        scopeSpans.add("spans", spans);
+        JsonArray scopeSpansList = new JsonArray();
+        scopeSpansList.add(scopeSpans);
+
+        JsonObject resource = new JsonObject();
+        resource.add("attributes", toAttributes(List.of(Map.entry("service.name", "goobi-arche-export"))));
+        JsonObject resourceSpans = new JsonObject();
+        resourceSpans.add("resource", resource);
+        resourceSpans.add("scopeSpans", scopeSpansList);
+        JsonArray resourceSpansList = new JsonArray();
+        resourceSpansList.add(resourceSpans);
+
+        JsonObject root = new JsonObject();
+        root.add("resourceSpans", resourceSpansList);
+        return root;
+    }
+
+    private static JsonArray toAttributes(List<Map.Entry<String, Object>> attributes) {
+        JsonArray array = new JsonArray();
+        for (Map.Entry<String, Object> attribute : attributes) {
+            JsonObject value = new JsonObject();
+            Object v = attribute.getValue();
+            if (v instanceof Boolean b) {
+                value.addProperty("boolValue", b);
+            } else if (v instanceof Integer || v instanceof Long) {
+                // 64 bit integers are encoded as strings in OTLP JSON
+                value.addProperty("intValue", v.toString());
+            } else if (v instanceof Number n) {
+                value.addProperty("doubleValue", n.doubleValue());
+            } else {
+                value.addProperty("stringValue", v.toString());
+            }
+            JsonObject json = new JsonObject();
+            json.addProperty("key", attribute.getKey());
+            json.add("value", value);
+            array.add(json);
+        }
+        return array;
+    }
+
+    private static String randomHex(int bytes) {
+        StringBuilder sb = new StringBuilder(bytes * 2);
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int i = 0; i < bytes; i++) {
+            sb.append(String.format("%02x", random.nextInt(256)));
+        }
+        return sb.toString();
+    }
+}
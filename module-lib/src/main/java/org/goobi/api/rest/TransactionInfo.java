@@ -29,6 +29,13 @@ public class TransactionInfo {
     @Setter
     private Integer lockedResourceCount;
 
+    /**
+     * Identifier of a resource created in the transaction, used to confirm the commit. Not part of the ARCHE API.
+     **/
+    @Getter
+    @Setter
+    private transient volatile String createdIdentifier;
+
     /**
      * Transaction id
      *
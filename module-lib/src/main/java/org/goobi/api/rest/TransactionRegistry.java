@@ -0,0 +1,201 @@
+package org.goobi.api.rest;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import jakarta.ws.rs.client.Client;
+import lombok.extern.log4j.Log4j2;
+
+/**
+ * Keeps track of open ARCHE transactions. Each open transaction is stored as a file in the registry folder and removed when the transaction is
+ * committed or cancelled. If the application stops during an ingest, the file remains. The reaper cancels these transactions, so the locked
+ * resources are released without waiting for the server timeout. Transactions of this application run whose rollback failed are marked as
+ * abandoned and reaped as well. Failed cancels are retried on the next reap, which runs at most once per {@link #REAP_INTERVAL}.
+ *
+ * The registry folder must not be shared between several Goobi instances, e.g. on a shared file system: each instance treats the transactions
+ * of all other instances as orphaned and would cancel running ingests.
+ */
+@Log4j2
+public class TransactionRegistry {
+
+    /** identifies the transactions started by this application instance */
+    private static final String INSTANCE_ID = UUID.randomUUID().toString();
+
+    /** minimum time between two reaps, the cancels that failed are retried after it */
+    static final long REAP_INTERVAL = TimeUnit.MINUTES.toMillis(5);
+
+    private static final Map<Path, TransactionRegistry> INSTANCES = new HashMap<>();
+
+    private final Path folder;
+
+    /** time of the next reap in milliseconds, 0 before the first reap */
+    private final AtomicLong nextReap = new AtomicLong();
+
+    private TransactionRegistry(Path folder) {
+        this.folder = folder;
+    }
+
+    /**
+     * Get the registry stored in the given folder
+     *
+     * @param folder
+     * @return
+     */
+
+    public static synchronized TransactionRegistry getInstance(Path folder) {
+        return INSTANCES.computeIfAbsent(folder, TransactionRegistry::new);
+    }
+
+    /**
+     * Record an open transaction
+     *
+     * @param baseURI
+     * @param ti
+     * @param owner description of the ingest, e.g. the process title
+     */
+
+    public void register(String baseURI, TransactionInfo ti, String owner) {
+        Properties properties = new Properties();
+        properties.setProperty("baseURI", baseURI);
+        properties.setProperty("owner", owner);
+        properties.setProperty("instance", INSTANCE_ID);
+        properties.setProperty("started", String.valueOf(System.currentTimeMillis()));
+        try {
+            store(transactionFile(ti.getTransactionId()), properties);
+        } catch (IOException e) {
+            log.error("Cannot register transaction {}", ti.getTransactionId(), e);
+        }
+    }
+
+    /**
+     * Remove a committed or cancelled transaction
+     *
+     * @param ti
+     */
+
+    public void remove(TransactionInfo ti) {
+        try {
+            Files.deleteIfExists(transactionFile(ti.getTransactionId()));
+        } catch (IOException e) {
+            log.error(e);
+        }
+    }
+
+    /**
+     * Mark a transaction of this application run as abandoned, because its rollback failed. The reaper cancels it like a transaction of an earlier
+     * run.
+     *
+     * @param ti
+     */
+
+    public void abandon(TransactionInfo ti) {
+        Path file = transactionFile(ti.getTransactionId());
+        if (!Files.exists(file)) {
+            return;
+        }
+        try {
+            Properties properties = load(file);
+            properties.setProperty("instance", "abandoned");
+            store(file, properties);
+        } catch (IOException e) {
+            log.error("Cannot mark transaction {} as abandoned", ti.getTransactionId(), e);
+        }
+    }
+
+    /**
+     * Cancel all registered transactions that were started by an earlier run of the application or that were abandoned. This is done at most once
+     * per {@link #REAP_INTERVAL}, transactions that cannot be cancelled stay in the registry and are tried again by a later reap.
+     *
+     * @param client
+     * @return number of cancelled transactions
+     */
+
+    public int reapStaleTransactions(Client client) {
+        long next = nextReap.get();
+        long now = System.currentTimeMillis();
+        if (now < next || !nextReap.compareAndSet(next, now + REAP_INTERVAL) || !Files.isDirectory(folder)) {
+            return 0;
+        }
+        int cancelled = 0;
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(folder, "*.properties")) {
+            for (Path file : stream) {
+                if (reap(client, file)) {
+                    cancelled++;
+                }
+            }
+        } catch (IOException e) {
+            log.error("Cannot read transaction registry {}", folder, e);
+        }
+        return cancelled;
+    }
+
+    /**
+     * Cancel the transaction of a registry file, if it is not used by this application run
+     *
+     * @param client
+     * @param file
+     * @return true, if the transaction was cancelled
+     */
+
+    private boolean reap(Client client, Path file) {
+        String name = file.getFileName().toString();
+        try {
+            Long transactionId = Long.valueOf(name.substring(0, name.length() - ".properties".length()));
+            Properties properties = load(file);
+            if (INSTANCE_ID.equals(properties.getProperty("instance"))) {
+                // still in use
+                return false;
+            }
+            TransactionInfo ti = new TransactionInfo().transactionId(transactionId);
+            ArcheAPI.cancelTransaction(client, properties.getProperty("baseURI"), ti);
+            log.info("Cancelled orphaned ARCHE transaction {} of {}", transactionId, properties.getProperty("owner"));
+            Files.deleteIfExists(file);
+            return true;
+        } catch (NumberFormatException e) {
+            log.warn("Ignoring unknown file {} in transaction registry {}", name, folder);
+        } catch (IOException | RuntimeException e) {
+            log.error("Cannot cancel orphaned ARCHE transaction {}, it is tried again later", name, e);
+        }
+        return false;
+    }
+
+    /**
+     * Allow the next call of {@link #reapStaleTransactions(Client)} to reap immediately
+     */
+
+    void resetReapInterval() {
+        nextReap.set(0);
+    }
+
+    private static Properties load(Path file) throws IOException {
+        Properties properties = new Properties();
+        try (InputStream in = Files.newInputStream(file)) {
+            properties.load(in);
+        }
+        return properties;
+    }
+
+    private void store(Path file, Properties properties) throws IOException {
+        Files.createDirectories(folder);
+        Path tmp = Files.createTempFile(folder, "transaction", ".tmp");
+        try (OutputStream out = Files.newOutputStream(tmp)) {
+            properties.store(out, null);
+        }
+        Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private Path transactionFile(Long transactionId) {
+        return folder.resolve(transactionId + ".properties");
+    }
+}
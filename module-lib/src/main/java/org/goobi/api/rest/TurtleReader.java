@@ -8,7 +8,6 @@ import java.lang.reflect.Type;
 import org.apache.jena.rdf.model.Model;
 import org.apache.jena.rdf.model.ModelFactory;
 import org.apache.jena.riot.RDFDataMgr;
-import org.apache.jena.riot.RDFFormat;
 
 import jakarta.ws.rs.Consumes;
 import jakarta.ws.rs.WebApplicationException;
@@ -17,8 +16,11 @@ import jakarta.ws.rs.core.MultivaluedMap;
 import jakarta.ws.rs.ext.MessageBodyReader;
 import jakarta.ws.rs.ext.Provider;
 
+/**
+ * Reads a model in the format of the content type: Turtle, N-Triples or RDF/Thrift
+ */
 @Provider
-@Consumes("text/turtle")
+@Consumes({ "text/turtle", "application/n-triples", "application/rdf+thrift" })
 public class TurtleReader implements MessageBodyReader<Model> {
 
     @Override
@@ -32,7 +34,7 @@ public class TurtleReader implements MessageBodyReader<Model> {
             MultivaluedMap<String, String> httpHeaders, InputStream entityStream) throws IOException, WebApplicationException {
 
         Model model = ModelFactory.createDefaultModel();
-        RDFDataMgr.read(model, entityStream, RDFFormat.TURTLE_PRETTY.getLang());
+        RDFDataMgr.read(model, entityStream, WireFormat.getLang(mediaType));
         return model;
     }
 
@@ -7,8 +7,8 @@ import java.lang.reflect.Type;
 import java.util.Arrays;
 
 import org.apache.jena.rdf.model.Model;
+import org.apache.jena.riot.Lang;
 import org.apache.jena.riot.RDFDataMgr;
-import org.apache.jena.riot.RDFFormat;
 
 import jakarta.ws.rs.Produces;
 import jakarta.ws.rs.WebApplicationException;
@@ -17,8 +17,11 @@ import jakarta.ws.rs.core.MultivaluedMap;
 import jakarta.ws.rs.ext.MessageBodyWriter;
 import jakarta.ws.rs.ext.Provider;
 
+/**
+ * Writes a model in the format of the content type: Turtle, N-Triples or RDF/Thrift
+ */
 @Provider
-@Produces("text/turtle")
+@Produces({ "text/turtle", "application/n-triples", "application/rdf+thrift" })
 public class TurtleWriter implements MessageBodyWriter<Model> {
 
     @Override
@@ -30,7 +33,14 @@ public class TurtleWriter implements MessageBodyWriter<Model> {
     @Override
     public void writeTo(Model t, Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType,
             MultivaluedMap<String, Object> httpHeaders, OutputStream entityStream) throws IOException, WebApplicationException {
-        RDFDataMgr.write(entityStream, t, RDFFormat.TURTLE_PRETTY);
+        Lang lang = WireFormat.getLang(mediaType);
+        for (WireFormat format : WireFormat.values()) {
+            if (format.getFormat().getLang() == lang) {
+                RDFDataMgr.write(entityStream, t, format.getFormat());
+                return;
+            }
+        }
+        RDFDataMgr.write(entityStream, t, WireFormat.DEFAULT.getFormat());
     }
 
 }
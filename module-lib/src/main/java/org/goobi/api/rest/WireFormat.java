@@ -0,0 +1,87 @@
+package org.goobi.api.rest;
+
+import org.apache.jena.riot.Lang;
+import org.apache.jena.riot.RDFFormat;
+import org.apache.jena.riot.RDFLanguages;
+
+import jakarta.ws.rs.core.MediaType;
+import lombok.Getter;
+import lombok.extern.log4j.Log4j2;
+
+/**
+ * RDF formats for the metadata sent to and received from ARCHE
+ */
+@Log4j2
+public enum WireFormat {
+
+    /** nested and grouped Turtle, the whole graph is analysed before the first byte is written */
+    TURTLE_PRETTY(RDFFormat.TURTLE_PRETTY),
+    /** Turtle written in blocks of statements with the same subject, without analysing the graph */
+    TURTLE_STREAMING(RDFFormat.TURTLE_BLOCKS),
+    /** one statement per line, the fastest text format to write and parse */
+    NTRIPLES(RDFFormat.NTRIPLES_UTF8),
+    /** binary RDF/Thrift, only usable if the server supports it */
+    THRIFT(RDFFormat.RDF_THRIFT);
+
+    public static final WireFormat DEFAULT = TURTLE_PRETTY;
+
+    @Getter
+    private final RDFFormat format;
+
+    WireFormat(RDFFormat format) {
+        this.format = format;
+    }
+
+    /**
+     * @return content type of the request bodies
+     */
+
+    public String getMediaType() {
+        return format.getLang().getHeaderString();
+    }
+
+    /**
+     * @return accepted content types of the responses, the own format is preferred and Turtle is always accepted
+     */
+
+    public String getAccept() {
+        if (format.getLang() == Lang.TURTLE) {
+            return Lang.TURTLE.getHeaderString();
+        }
+        return getMediaType() + ", " + Lang.TURTLE.getHeaderString() + ";q=0.9";
+    }
+
+    /**
+     * Get the format by its configured name, e.g. turtle-streaming or ntriples
+     *
+     * @param name
+     * @return the format or the default format, if the name is unknown
+     */
+
+    public static WireFormat fromName(String name) {
+        if (name == null || name.isBlank()) {
+            return DEFAULT;
+        }
+        try {
+            return valueOf(name.trim().toUpperCase().replace('-', '_'));
+        } catch (IllegalArgumentException e) {
+            log.warn("Unknown RDF wire format {}, use {}", name, DEFAULT);
+            return DEFAULT;
+        }
+    }
+
+    /**
+     * Get the language to parse a body of the given content type
+     *
+     * @param mediaType
+     * @return the language, Turtle if the content type is unknown
+     */
+
+    public static Lang getLang(MediaType mediaType) {
+        if (mediaType == null) {
+            return Lang.TURTLE;
+        }
+        Lang lang = RDFLanguages.contentTypeToLang(mediaType.getType() + "/" + mediaType.getSubtype());
+        return lang == null ? Lang.TURTLE : lang;
+    }
+}
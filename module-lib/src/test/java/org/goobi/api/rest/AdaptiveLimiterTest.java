@@ -0,0 +1,55 @@
+package org.goobi.api.rest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.goobi.api.rest.AdaptiveLimiter.Outcome;
+import org.junit.Test;
+
+public class AdaptiveLimiterTest {
+
+    @Test
+    public void testIncreaseWhileLatencyIsStable() throws Exception {
+        AdaptiveLimiter limiter = new AdaptiveLimiter(1, 10, 2);
+        for (int i = 0; i < 100; i++) {
+            limiter.acquire();
+            limiter.acquire();
+            limiter.release(1_000_000, Outcome.SUCCESS, true);
+            limiter.release(1_000_000, Outcome.SUCCESS, true);
+        }
+        assertTrue(limiter.getLimit() > 2);
+        assertEquals(0, limiter.getInFlight());
+    }
+
+    @Test
+    public void testDecreaseOnOverload() throws Exception {
+        AdaptiveLimiter limiter = new AdaptiveLimiter(1, 10, 8);
+        limiter.acquire();
+        limiter.release(1_000_000, Outcome.OVERLOAD, true);
+        assertEquals(4, limiter.getLimit());
+    }
+
+    @Test
+    public void testDecreaseOnRisingLatency() throws Exception {
+        AdaptiveLimiter limiter = new AdaptiveLimiter(1, 10, 8);
+        limiter.acquire();
+        limiter.release(1_000_000, Outcome.SUCCESS, true);
+        for (int i = 0; i < 20; i++) {
+            limiter.acquire();
+            limiter.release(10_000_000, Outcome.SUCCESS, true);
+        }
+        assertTrue(limiter.getLimit() < 8);
+    }
+
+    @Test
+    public void testBinaryUploadsAreNoLatencySample() throws Exception {
+        AdaptiveLimiter limiter = new AdaptiveLimiter(1, 10, 8);
+        limiter.acquire();
+        limiter.release(1_000_000, Outcome.SUCCESS, true);
+        for (int i = 0; i < 20; i++) {
+            limiter.acquire();
+            limiter.release(10_000_000_000L, Outcome.SUCCESS, false);
+        }
+        assertEquals(8, limiter.getLimit());
+    }
+}
@@ -0,0 +1,130 @@
+package org.goobi.api.rest;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.goobi.api.rest.AdaptiveLimiter.Outcome;
+import org.junit.Test;
+
+public class ArcheGovernorTest {
+
+    @Test
+    public void testSmallProcessIsNotStuckBehindLargeProcess() throws Exception {
+        ArcheGovernor governor = new ArcheGovernor(1, 1);
+        governor.acquireRequest();
+
+        List<String> order = Collections.synchronizedList(new ArrayList<>());
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            threads.add(startWaiting(governor, "migration", "large", order));
+        }
+        threads.add(startWaiting(governor, "other", "small", order));
+
+        governor.releaseRequest();
+        for (Thread thread : threads) {
+            thread.join(5000);
+        }
+        // the second project gets the second request, although it was the last one to ask
+        assertEquals(List.of("large", "small", "large", "large", "large"), order);
+    }
+
+    @Test
+    public void testRequestsWaitInGovernorForLimiter() throws Exception {
+        AdaptiveLimiter limiter = new AdaptiveLimiter(1, 1, 1);
+        ArcheGovernor governor = new ArcheGovernor(32, 1, limiter);
+        governor.acquireRequest();
+        limiter.acquire();
+
+        // the governor allows 32 requests, but the limiter only one: the others must wait in the fair queue of the governor
+        List<String> order = Collections.synchronizedList(new ArrayList<>());
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            threads.add(startWaiting(governor, limiter, "migration", "large", order));
+        }
+        threads.add(startWaiting(governor, limiter, "other", "small", order));
+        assertEquals(1, limiter.getInFlight());
+
+        limiter.release(1_000_000, Outcome.SUCCESS, false);
+        governor.releaseRequest();
+        for (Thread thread : threads) {
+            thread.join(5000);
+        }
+        assertEquals(List.of("large", "small", "large", "large", "large"), order);
+    }
+
+    @Test
+    public void testWaitingRequestIsGrantedWhenLimitGrows() throws Exception {
+        AdaptiveLimiter limiter = new AdaptiveLimiter(1, 1, 1);
+        ArcheGovernor governor = new ArcheGovernor(32, 1, limiter);
+        governor.acquireRequest();
+        limiter.acquire();
+
+        List<String> order = Collections.synchronizedList(new ArrayList<>());
+        Thread thread = startWaiting(governor, limiter, "migration", "large", order);
+        limiter.configure(2, 2, 2);
+        thread.join(5000);
+        assertEquals(List.of("large"), order);
+        assertEquals(0, governor.getWaiting());
+    }
+
+    @Test
+    public void testMetadataRequestUsesReservedLane() throws Exception {
+        ArcheGovernor governor = new ArcheGovernor(1, 1);
+        governor.setReservedLane(1);
+        governor.acquireRequest(false);
+        // a binary upload uses the only regular request, a metadata request is still possible
+        governor.acquireRequest(true);
+        assertEquals(2, governor.getRequestsInFlight());
+        governor.releaseRequest();
+        governor.releaseRequest();
+        assertEquals(0, governor.getRequestsInFlight());
+    }
+
+    @Test
+    public void testTransactionLimit() throws Exception {
+        ArcheGovernor governor = new ArcheGovernor(1, 2);
+        governor.acquireTransaction();
+        governor.acquireTransaction();
+        assertEquals(2, governor.getOpenTransactions());
+        governor.releaseTransaction();
+        governor.acquireTransaction();
+        assertEquals(2, governor.getOpenTransactions());
+    }
+
+    private Thread startWaiting(ArcheGovernor governor, String project, String process, List<String> order) throws InterruptedException {
+        return startWaiting(governor, null, project, process, order);
+    }
+
+    /**
+     * Start a thread that sends a request like ArcheAPI.execute and wait until it is queued in the governor
+     */
+
+    private Thread startWaiting(ArcheGovernor governor, AdaptiveLimiter limiter, String project, String process, List<String> order)
+            throws InterruptedException {
+        int waiting = governor.getWaiting();
+        Thread thread = new Thread(() -> {
+            ArcheGovernor.setContext(project, process, 1);
+            try {
+                governor.acquireRequest();
+                if (limiter != null) {
+                    limiter.acquire();
+                }
+                order.add(process);
+                if (limiter != null) {
+                    limiter.release(1_000_000, Outcome.SUCCESS, false);
+                }
+                governor.releaseRequest();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        thread.start();
+        while (governor.getWaiting() == waiting) {
+            Thread.sleep(1);
+        }
+        return thread;
+    }
+}
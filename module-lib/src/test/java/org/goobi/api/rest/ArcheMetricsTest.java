@@ -0,0 +1,34 @@
+package org.goobi.api.rest;
+
+import static org.junit.Assert.assertEquals;
+
+import org.goobi.api.rest.ArcheMetrics.Endpoint;
+import org.junit.Test;
+
+public class ArcheMetricsTest {
+
+    @Test
+    public void testRequestsByEndpointAndStatus() {
+        ArcheMetrics metrics = new ArcheMetrics();
+        metrics.recordRequest(Endpoint.METADATA_CREATE, 201, 1_000_000);
+        metrics.recordRequest(Endpoint.METADATA_CREATE, 409, 1_000_000);
+        metrics.recordRequest(Endpoint.BINARY, 0, 1_000_000);
+
+        assertEquals(Long.valueOf(1), metrics.getRequestCounts().get("METADATA_CREATE 409"));
+        assertEquals(Long.valueOf(1), metrics.getRequestCounts().get("BINARY error"));
+        assertEquals(2, metrics.getRequestCountOfClass(Endpoint.METADATA_CREATE, 2) + metrics.getRequestCountOfClass(Endpoint.METADATA_CREATE, 4));
+    }
+
+    @Test
+    public void testLatencyPercentile() {
+        ArcheMetrics metrics = new ArcheMetrics();
+        for (int i = 0; i < 94; i++) {
+            metrics.recordRequest(Endpoint.SEARCH, 200, 3_000_000);
+        }
+        for (int i = 0; i < 6; i++) {
+            metrics.recordRequest(Endpoint.SEARCH, 200, 400_000_000);
+        }
+        // 94 requests up to 5 ms, the 95th percentile is in the bucket up to 500 ms
+        assertEquals(Long.valueOf(500), metrics.getLatencyP95Millis().get("SEARCH"));
+    }
+}
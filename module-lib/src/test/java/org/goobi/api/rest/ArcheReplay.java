@@ -0,0 +1,259 @@
+package org.goobi.api.rest;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.goobi.api.rest.ArcheMetrics.Endpoint;
+import org.goobi.api.rest.TrafficRecorder.Exchange;
+import org.goobi.api.rest.TrafficRecorder.Recording;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Local server that answers with the responses of a {@link TrafficRecorder} recording, so the ARCHE traffic of a production run can be
+ * reproduced offline. A request gets the next recorded response with the same method and path. If there is none, e.g. because a different
+ * process is ingested, it gets the recorded responses of its endpoint in turns. Each response is delayed by its recorded duration divided by
+ * the speed, and the recorded API URL in the Location header and in text bodies is replaced by the URL of this server.
+ *
+ * Requests that failed without response in the recording are answered by closing the connection. Credentials are not checked.
+ */
+public class ArcheReplay implements AutoCloseable {
+
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private final String baseURI;
+    private final String recordedBaseURI;
+    private final double speed;
+
+    /** recorded responses by method and path, in the order they were answered */
+    private final Map<String, Deque<Exchange>> byRequest = new HashMap<>();
+    /** recorded responses by endpoint, used in turns if no response for the path is left */
+    private final Map<Endpoint, List<Exchange>> byEndpoint = new EnumMap<>(Endpoint.class);
+    private final Map<Endpoint, Integer> nextByEndpoint = new EnumMap<>(Endpoint.class);
+
+    private final Map<String, AtomicInteger> requestCounts = new ConcurrentHashMap<>();
+    private final AtomicLong receivedBytes = new AtomicLong();
+    private final AtomicInteger unmatched = new AtomicInteger();
+
+    /**
+     * Start the server on a free port of the loopback interface
+     *
+     * @param recording file written by the {@link TrafficRecorder}
+     * @param speed 1 to answer with the recorded durations, 10 to answer ten times faster, 0 to answer without delay
+     * @throws IOException
+     */
+
+    public ArcheReplay(Path recording, double speed) throws IOException {
+        this(TrafficRecorder.read(recording), speed);
+    }
+
+    /**
+     * Start the server on a free port of the loopback interface
+     *
+     * @param recording
+     * @param speed 1 to answer with the recorded durations, 10 to answer ten times faster, 0 to answer without delay
+     * @throws IOException
+     */
+
+    public ArcheReplay(Recording recording, double speed) throws IOException {
+        this.recordedBaseURI = recording.baseURI();
+        this.speed = speed;
+        for (Exchange exchange : recording.exchanges()) {
+            byRequest.computeIfAbsent(exchange.method() + " " + exchange.path(), k -> new ArrayDeque<>()).add(exchange);
+            byEndpoint.computeIfAbsent(exchange.endpoint(), k -> new ArrayList<>()).add(exchange);
+        }
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/api/", this::handle);
+        server.setExecutor(executor);
+        server.start();
+        baseURI = "http://" + InetAddress.getLoopbackAddress().getHostAddress() + ":" + server.getAddress().getPort() + "/api/";
+    }
+
+    /**
+     * @return the base URI of the API, to be used as ARCHE URL
+     */
+
+    public String getBaseURI() {
+        return baseURI;
+    }
+
+    /**
+     * Number of requests by endpoint, e.g. 'METADATA_CREATE' or 'BINARY'
+     *
+     * @return
+     */
+
+    public Map<String, Integer> getRequestCounts() {
+        Map<String, Integer> counts = new LinkedHashMap<>();
+        requestCounts.forEach((k, v) -> counts.put(k, v.get()));
+        return counts;
+    }
+
+    /**
+     * @return total number of requests
+     */
+
+    public int getRequestCount() {
+        return requestCounts.values().stream().mapToInt(AtomicInteger::get).sum();
+    }
+
+    /**
+     * @return bytes of all request bodies as sent
+     */
+
+    public long getReceivedBytes() {
+        return receivedBytes.get();
+    }
+
+    /**
+     * @return number of requests without a recorded response for their method and path
+     */
+
+    public int getUnmatchedCount() {
+        return unmatched.get();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            String method = exchange.getRequestMethod();
+            String path = exchange.getRequestURI().getRawPath().substring("/api/".length());
+            String query = exchange.getRequestURI().getRawQuery();
+            if (query != null) {
+                path += "?" + query;
+            }
+            readBody(exchange);
+            Endpoint endpoint = getEndpoint(method, path);
+            if (endpoint == null) {
+                send(exchange, 404, "text/plain", ("Unknown endpoint " + path).getBytes(StandardCharsets.UTF_8));
+                return;
+            }
+            requestCounts.computeIfAbsent(endpoint.name(), k -> new AtomicInteger()).incrementAndGet();
+            Exchange recorded = next(method + " " + path, endpoint);
+            if (recorded == null) {
+                send(exchange, 501, "text/plain", ("No recorded response for " + endpoint).getBytes(StandardCharsets.UTF_8));
+                return;
+            }
+            if (speed > 0) {
+                Thread.sleep((long) (recorded.duration() / speed));
+            }
+            if (recorded.status() == 0) {
+                // no answer was received in the recording, the connection is closed without response
+                return;
+            }
+            if (recorded.location() != null) {
+                exchange.getResponseHeaders().set("Location", resolve(recorded.location()));
+            }
+            if (recorded.retryAfter() != null) {
+                exchange.getResponseHeaders().set("Retry-After", recorded.retryAfter());
+            }
+            send(exchange, recorded.status(), recorded.contentType(), rewrite(recorded.body(), recorded.contentType()));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private synchronized Exchange next(String request, Endpoint endpoint) {
+        Deque<Exchange> exchanges = byRequest.get(request);
+        if (exchanges != null && !exchanges.isEmpty()) {
+            return exchanges.poll();
+        }
+        unmatched.incrementAndGet();
+        List<Exchange> recorded = byEndpoint.get(endpoint);
+        if (recorded == null) {
+            return null;
+        }
+        int next = nextByEndpoint.getOrDefault(endpoint, 0);
+        nextByEndpoint.put(endpoint, (next + 1) % recorded.size());
+        return recorded.get(next);
+    }
+
+    private static Endpoint getEndpoint(String method, String path) {
+        if ("transaction".equals(path)) {
+            switch (method) {
+                case "POST":
+                    return Endpoint.TRANSACTION_START;
+                case "GET":
+                    return Endpoint.TRANSACTION_STATE;
+                case "PUT":
+                    return Endpoint.TRANSACTION_COMMIT;
+                case "DELETE":
+                    return Endpoint.TRANSACTION_CANCEL;
+                default:
+                    return null;
+            }
+        } else if ("metadata".equals(path) && "POST".equals(method)) {
+            return Endpoint.METADATA_CREATE;
+        } else if (path.matches("\\d+/metadata") && "PATCH".equals(method)) {
+            return Endpoint.METADATA_UPDATE;
+        } else if (path.startsWith("search?") && "GET".equals(method)) {
+            return Endpoint.SEARCH;
+        } else if (path.matches("\\d+") && "PUT".equals(method)) {
+            return Endpoint.BINARY;
+        }
+        return null;
+    }
+
+    private String resolve(String location) {
+        // locations outside of the API URL are recorded as absolute URIs
+        return location.matches("^[a-zA-Z][a-zA-Z0-9+.-]*:.*") ? location : baseURI + location;
+    }
+
+    private byte[] rewrite(byte[] body, String contentType) {
+        if (body == null || !isText(contentType)) {
+            return body;
+        }
+        return new String(body, StandardCharsets.UTF_8).replace(recordedBaseURI, baseURI).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static boolean isText(String contentType) {
+        return contentType == null || contentType.startsWith("text/") || contentType.contains("json") || contentType.contains("xml")
+                || contentType.contains("n-triples");
+    }
+
+    private void readBody(HttpExchange exchange) throws IOException {
+        try (InputStream in = exchange.getRequestBody()) {
+            receivedBytes.addAndGet(in.transferTo(OutputStream.nullOutputStream()));
+        }
+    }
+
+    private static void send(HttpExchange exchange, int status, String contentType, byte[] body) throws IOException {
+        if (contentType != null) {
+            exchange.getResponseHeaders().set("Content-Type", contentType);
+        }
+        if (body == null || body.length == 0) {
+            exchange.sendResponseHeaders(status, -1);
+            return;
+        }
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+}
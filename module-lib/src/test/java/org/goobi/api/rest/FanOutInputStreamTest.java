@@ -0,0 +1,53 @@
+package org.goobi.api.rest;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class FanOutInputStreamTest {
+
+    @Test
+    public void testAllSinksReceiveContent() throws IOException {
+        byte[] data = new byte[200_000];
+        new Random(7).nextBytes(data);
+        ByteArrayOutputStream first = new ByteArrayOutputStream();
+        ByteArrayOutputStream second = new ByteArrayOutputStream();
+        ByteArrayOutputStream consumer = new ByteArrayOutputStream();
+        try (InputStream in = new FanOutInputStream(new ByteArrayInputStream(data), first, second)) {
+            in.transferTo(consumer);
+        }
+        assertArrayEquals(data, consumer.toByteArray());
+        assertArrayEquals(data, first.toByteArray());
+        assertArrayEquals(data, second.toByteArray());
+    }
+
+    @Test
+    public void testCompleteAfterEndOfSource() throws IOException {
+        ByteArrayOutputStream sink = new ByteArrayOutputStream();
+        try (FanOutInputStream in = new FanOutInputStream(new ByteArrayInputStream("0123456789".getBytes()), sink)) {
+            in.transferTo(OutputStream.nullOutputStream());
+            assertTrue(in.isComplete());
+        }
+    }
+
+    @Test
+    public void testCloseDoesNotReadRemainingBytes() throws IOException {
+        ByteArrayOutputStream sink = new ByteArrayOutputStream();
+        FanOutInputStream in = new FanOutInputStream(new ByteArrayInputStream("0123456789".getBytes()), sink);
+        assertEquals('0', in.read());
+        in.close();
+        // a consumer that stopped early leaves an incomplete copy
+        assertFalse(in.isComplete());
+        assertArrayEquals("0".getBytes(), sink.toByteArray());
+    }
+}
@@ -0,0 +1,920 @@
+package org.goobi.api.rest;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.OffsetDateTime;
+import java.util.ArrayDeque;
+import java.util.Base64;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.ModelFactory;
+import org.apache.jena.rdf.model.Property;
+import org.apache.jena.rdf.model.RDFNode;
+import org.apache.jena.rdf.model.Resource;
+import org.apache.jena.rdf.model.Statement;
+import org.apache.jena.riot.Lang;
+import org.apache.jena.riot.RDFDataMgr;
+import org.apache.jena.riot.RDFLanguages;
+import org.apache.jena.riot.RDFParser;
+import org.apache.jena.util.ResourceUtils;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Local stand-in for the ARCHE REST API, so ingests can be tested offline and under load. It implements the endpoints used by {@link ArcheAPI}:
+ *
+ * <ul>
+ * <li>POST, GET, PUT and DELETE of /transaction to start, poll, commit and roll back a transaction</li>
+ * <li>POST /metadata to create a resource, 409 if one of its identifiers is already used</li>
+ * <li>PATCH /{id}/metadata to merge the metadata of a resource</li>
+ * <li>PUT /{id} to upload the binary of a resource and POST / to create a resource from a binary</li>
+ * <li>GET /search with value[] and property[] to find resources by their metadata</li>
+ * </ul>
+ *
+ * Changes are only visible in their transaction until it is committed, searches without transaction header only see committed resources.
+ * Latency, bandwidth of the request bodies and failures can be configured while the server runs.
+ */
+public class MockArche implements AutoCloseable {
+
+    private static final String ACDH = "https://vocabs.acdh.oeaw.ac.at/schema#";
+    private static final String TRANSACTION_HEADER = "X-TRANSACTION-ID";
+
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private final String baseURI;
+    private final Property hasIdentifier = ModelFactory.createDefaultModel().createProperty(ACDH, "hasIdentifier");
+
+    private final AtomicLong nextResourceId = new AtomicLong(1000);
+    private final AtomicLong nextTransactionId = new AtomicLong(1);
+
+    /** committed resources by id */
+    private final Map<Long, StoredResource> resources = new HashMap<>();
+    /** active transactions by id */
+    private final Map<Long, Transaction> transactions = new HashMap<>();
+
+    private final Map<String, AtomicInteger> requestCounts = new ConcurrentHashMap<>();
+    private final AtomicLong receivedBytes = new AtomicLong();
+
+    private volatile long latency;
+    private volatile long commitDuration;
+    private volatile boolean rollbackCommits;
+    private volatile long bandwidth;
+    private volatile double errorRate;
+    private volatile int errorStatus = 503;
+    private volatile int retryAfter;
+    private volatile boolean acceptGzip = true;
+    /** expected basic authentication token or null */
+    private volatile String authorization;
+    private final Deque<Integer> scheduledFailures = new ArrayDeque<>();
+    /** error status by method and endpoint, e.g. 'PUT binary' */
+    private final Map<String, Integer> failingRequests = new ConcurrentHashMap<>();
+    private final Random random;
+
+    private static class StoredResource {
+        private final long id;
+        private Model metadata;
+        private long binarySize = -1;
+        private String binaryDigest;
+        private String mimeType;
+
+        private StoredResource(long id, Model metadata) {
+            this.id = id;
+            this.metadata = metadata;
+        }
+
+        private StoredResource copy() {
+            StoredResource copy = new StoredResource(id, ModelFactory.createDefaultModel().add(metadata));
+            copy.binarySize = binarySize;
+            copy.binaryDigest = binaryDigest;
+            copy.mimeType = mimeType;
+            return copy;
+        }
+    }
+
+    private static class Transaction {
+        private final long id;
+        private final String startedAt = OffsetDateTime.now().toString();
+        private String lastRequest = startedAt;
+        private String state = "active";
+        /** new and changed resources, by id */
+        private final Map<Long, StoredResource> changes = new LinkedHashMap<>();
+
+        private Transaction(long id) {
+            this.id = id;
+        }
+    }
+
+    /** answer with an error status and stop handling the request */
+    private static class ArcheError extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+        private final int status;
+
+        private ArcheError(int status, String message) {
+            super(message, null, false, false);
+            this.status = status;
+        }
+    }
+
+    /**
+     * Start the server on a free port of the loopback interface
+     *
+     * @throws IOException
+     */
+
+    public MockArche() throws IOException {
+        this(0);
+    }
+
+    /**
+     * Start the server on a free port of the loopback interface, the injected failures are chosen by a random generator with the given seed
+     *
+     * @param seed
+     * @throws IOException
+     */
+
+    public MockArche(long seed) throws IOException {
+        random = new Random(seed);
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/api/", this::handle);
+        server.setExecutor(executor);
+        server.start();
+        baseURI = "http://" + InetAddress.getLoopbackAddress().getHostAddress() + ":" + server.getAddress().getPort() + "/api/";
+    }
+
+    /**
+     * @return the base URI of the API, to be used as ARCHE URL
+     */
+
+    public String getBaseURI() {
+        return baseURI;
+    }
+
+    /**
+     * Delay each answer
+     *
+     * @param millis
+     */
+
+    public void setLatency(long millis) {
+        latency = millis;
+    }
+
+    /**
+     * Time the commit of a transaction takes, the transaction is in the state 'commit' meanwhile
+     *
+     * @param millis
+     */
+
+    public void setCommitDuration(long millis) {
+        commitDuration = millis;
+    }
+
+    /**
+     * Roll back each transaction instead of committing it. As in ARCHE, the transaction is removed after the commit duration without showing
+     * the state 'rollback' and the commit request is answered with an error.
+     *
+     * @param rollback
+     */
+
+    public void setRollbackCommits(boolean rollback) {
+        rollbackCommits = rollback;
+    }
+
+    /**
+     * Limit the speed the request bodies are read with
+     *
+     * @param bytesPerSecond bytes per second, 0 for no limit
+     */
+
+    public void setBandwidth(long bytesPerSecond) {
+        bandwidth = bytesPerSecond;
+    }
+
+    /**
+     * Answer a part of the requests with an error instead of handling them
+     *
+     * @param rate between 0 and 1
+     * @param status the error status, e.g. 503 or 429 for an overloaded server
+     */
+
+    public void setErrorRate(double rate, int status) {
+        errorRate = rate;
+        errorStatus = status;
+    }
+
+    /**
+     * Answer the next requests with an error instead of handling them
+     *
+     * @param count number of requests
+     * @param status
+     */
+
+    public void failNext(int count, int status) {
+        synchronized (scheduledFailures) {
+            for (int i = 0; i < count; i++) {
+                scheduledFailures.add(status);
+            }
+        }
+    }
+
+    /**
+     * Answer all requests of a method and endpoint with an error, until it is set to 0
+     *
+     * @param request method and endpoint, e.g. 'PUT binary'
+     * @param status the error status or 0
+     */
+
+    public void failRequests(String request, int status) {
+        if (status == 0) {
+            failingRequests.remove(request);
+        } else {
+            failingRequests.put(request, status);
+        }
+    }
+
+    /**
+     * Seconds sent in the Retry-After header of injected 429 and 503 answers
+     *
+     * @param seconds
+     */
+
+    public void setRetryAfter(int seconds) {
+        retryAfter = seconds;
+    }
+
+    /**
+     * Reject gzip compressed request bodies with 415, as ARCHE instances without compression support do
+     *
+     * @param accept
+     */
+
+    public void setAcceptGzip(boolean accept) {
+        acceptGzip = accept;
+    }
+
+    /**
+     * Require basic authentication, all requests with other credentials are answered with 401
+     *
+     * @param username
+     * @param password
+     */
+
+    public void setCredentials(String username, String password) {
+        authorization = Base64.getEncoder().encodeToString((username + ":" + password).getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Number of requests by method and endpoint, e.g. 'POST metadata' or 'PUT binary', including the answers with injected errors
+     *
+     * @return
+     */
+
+    public Map<String, Integer> getRequestCounts() {
+        Map<String, Integer> counts = new LinkedHashMap<>();
+        requestCounts.forEach((k, v) -> counts.put(k, v.get()));
+        return counts;
+    }
+
+    /**
+     * @return total number of requests
+     */
+
+    public int getRequestCount() {
+        return requestCounts.values().stream().mapToInt(AtomicInteger::get).sum();
+    }
+
+    /**
+     * @return bytes of all request bodies, after decompression
+     */
+
+    public long getReceivedBytes() {
+        return receivedBytes.get();
+    }
+
+    /**
+     * @return number of committed resources
+     */
+
+    public synchronized int getResourceCount() {
+        return resources.size();
+    }
+
+    /**
+     * @return number of active transactions
+     */
+
+    public synchronized int getTransactionCount() {
+        return transactions.size();
+    }
+
+    /**
+     * Get the committed metadata of a resource
+     *
+     * @param uri
+     * @return a copy of the metadata or null, if there is no such resource
+     */
+
+    public synchronized Model getMetadata(String uri) {
+        StoredResource resource = getCommitted(uri);
+        return resource == null ? null : ModelFactory.createDefaultModel().add(resource.metadata);
+    }
+
+    /**
+     * Get the size of the committed binary of a resource
+     *
+     * @param uri
+     * @return the size in bytes or -1, if there is no such resource or it has no binary
+     */
+
+    public synchronized long getBinarySize(String uri) {
+        StoredResource resource = getCommitted(uri);
+        return resource == null ? -1 : resource.binarySize;
+    }
+
+    /**
+     * Get the SHA-1 checksum of the committed binary of a resource
+     *
+     * @param uri
+     * @return the hex encoded checksum or null
+     */
+
+    public synchronized String getBinaryDigest(String uri) {
+        StoredResource resource = getCommitted(uri);
+        return resource == null ? null : resource.binaryDigest;
+    }
+
+    /**
+     * Find the URI of a committed resource by one of its identifiers
+     *
+     * @param identifier
+     * @return the URI or null
+     */
+
+    public synchronized String findResource(String identifier) {
+        for (StoredResource resource : resources.values()) {
+            if (hasIdentifier(resource, identifier)) {
+                return getURI(resource.id);
+            }
+        }
+        return null;
+    }
+
+    private StoredResource getCommitted(String uri) {
+        try {
+            return resources.get(getResourceId(uri));
+        } catch (ArcheError e) {
+            return null;
+        }
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        String path = exchange.getRequestURI().getRawPath().substring("/api/".length());
+        String method = exchange.getRequestMethod();
+        String endpoint = getEndpointName(method, path);
+        requestCounts.computeIfAbsent(method + " " + endpoint, k -> new AtomicInteger()).incrementAndGet();
+        try {
+            sleep(latency);
+            Integer failure = failingRequests.get(method + " " + endpoint);
+            if (failure == null) {
+                failure = nextFailure();
+            }
+            if (failure != null) {
+                readBody(exchange);
+                if (failure == 429 || failure == 503) {
+                    exchange.getResponseHeaders().add("Retry-After", String.valueOf(retryAfter));
+                }
+                throw new ArcheError(failure, "injected failure");
+            }
+            if (authorization != null && !isAuthorized(exchange.getRequestHeaders().getFirst("Authorization"))) {
+                readBody(exchange);
+                throw new ArcheError(401, "Unauthorized");
+            }
+            switch (endpoint) {
+                case "transaction":
+                    handleTransaction(exchange, method);
+                    break;
+                case "metadata":
+                    expectMethod(method, "POST");
+                    createMetadata(exchange);
+                    break;
+                case "resource metadata":
+                    expectMethod(method, "PATCH");
+                    updateMetadata(exchange, getResourceId(path.substring(0, path.length() - "/metadata".length())));
+                    break;
+                case "search":
+                    expectMethod(method, "GET");
+                    search(exchange);
+                    break;
+                case "binary":
+                    if ("POST".equals(method)) {
+                        createBinary(exchange);
+                    } else {
+                        expectMethod(method, "PUT");
+                        updateBinary(exchange, getResourceId(path));
+                    }
+                    break;
+                default:
+                    throw new ArcheError(404, "Unknown endpoint " + path);
+            }
+        } catch (ArcheError e) {
+            send(exchange, e.status, "text/plain", e.getMessage().getBytes(StandardCharsets.UTF_8));
+        } catch (RuntimeException e) {
+            send(exchange, 500, "text/plain", String.valueOf(e).getBytes(StandardCharsets.UTF_8));
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private boolean isAuthorized(String header) {
+        // the scheme is case insensitive, ArcheAPI sends 'BASIC'
+        return header != null && header.regionMatches(true, 0, "Basic ", 0, 6) && authorization.equals(header.substring(6).trim());
+    }
+
+    private static String getEndpointName(String method, String path) {
+        if ("transaction".equals(path)) {
+            return "transaction";
+        } else if ("metadata".equals(path)) {
+            return "metadata";
+        } else if ("search".equals(path)) {
+            return "search";
+        } else if (path.matches("\\d+/metadata")) {
+            return "resource metadata";
+        } else if (path.matches("\\d+") || path.isEmpty() && "POST".equals(method)) {
+            return "binary";
+        }
+        return path;
+    }
+
+    private static void expectMethod(String method, String expected) {
+        if (!expected.equals(method)) {
+            throw new ArcheError(405, "Method not allowed");
+        }
+    }
+
+    private Integer nextFailure() {
+        synchronized (scheduledFailures) {
+            if (!scheduledFailures.isEmpty()) {
+                return scheduledFailures.poll();
+            }
+            if (errorRate > 0 && random.nextDouble() < errorRate) {
+                return errorStatus;
+            }
+        }
+        return null;
+    }
+
+    private void handleTransaction(HttpExchange exchange, String method) throws IOException {
+        readBody(exchange);
+        if ("POST".equals(method)) {
+            Transaction transaction;
+            synchronized (this) {
+                transaction = new Transaction(nextTransactionId.getAndIncrement());
+                transactions.put(transaction.id, transaction);
+            }
+            sendTransaction(exchange, 201, transaction);
+            return;
+        }
+        long id = getTransactionId(exchange);
+        switch (method) {
+            case "GET":
+                synchronized (this) {
+                    sendTransaction(exchange, 200, getTransaction(id));
+                }
+                break;
+            case "PUT":
+                synchronized (this) {
+                    getTransaction(id).state = "commit";
+                }
+                // the state can be polled while the commit runs
+                sleep(commitDuration);
+                synchronized (this) {
+                    Transaction transaction = transactions.remove(id);
+                    if (transaction == null) {
+                        throw new ArcheError(404, "Transaction " + id + " doesn't exist");
+                    }
+                    if (rollbackCommits) {
+                        throw new ArcheError(500, "Commit of transaction " + id + " failed, the transaction was rolled back");
+                    }
+                    resources.putAll(transaction.changes);
+                }
+                send(exchange, 204, null, null);
+                break;
+            case "DELETE":
+                synchronized (this) {
+                    if (transactions.remove(id) == null) {
+                        throw new ArcheError(404, "Transaction " + id + " doesn't exist");
+                    }
+                }
+                send(exchange, 204, null, null);
+                break;
+            default:
+                throw new ArcheError(405, "Method not allowed");
+        }
+    }
+
+    private void createMetadata(HttpExchange exchange) throws IOException {
+        Model model = readModel(exchange);
+        Resource subject = getMainSubject(model);
+        synchronized (this) {
+            Transaction transaction = getTransaction(getTransactionId(exchange));
+            Set<String> identifiers = getIdentifiers(model, subject);
+            for (String identifier : identifiers) {
+                if (findUsage(identifier) != null) {
+                    throw new ArcheError(409, "Identifier " + identifier + " is already used");
+                }
+            }
+            long id = nextResourceId.getAndIncrement();
+            Model metadata = ModelFactory.createDefaultModel().add(model);
+            Resource stored = ResourceUtils.renameResource(metadata.getResource(subject.getURI()), getURI(id));
+            for (String identifier : identifiers) {
+                stored.addProperty(hasIdentifier, metadata.createResource(identifier));
+            }
+            transaction.changes.put(id, new StoredResource(id, metadata));
+            exchange.getResponseHeaders().add("Location", getURI(id));
+            sendModel(exchange, 201, metadata);
+        }
+    }
+
+    private void updateMetadata(HttpExchange exchange, long id) throws IOException {
+        Model model = readModel(exchange);
+        synchronized (this) {
+            Transaction transaction = getTransaction(getTransactionId(exchange));
+            StoredResource resource = getForUpdate(transaction, id);
+            Resource update = model.getResource(getURI(id));
+            for (String identifier : getIdentifiers(model, update)) {
+                Long user = findUsage(identifier);
+                if (user != null && user != id) {
+                    throw new ArcheError(409, "Identifier " + identifier + " is already used");
+                }
+            }
+            // merge: properties sent replace the existing values, all others are kept, identifiers are only added
+            Resource subject = resource.metadata.getResource(getURI(id));
+            Set<Property> replaced = new HashSet<>();
+            for (Statement statement : update.listProperties().toList()) {
+                if (replaced.add(statement.getPredicate()) && !statement.getPredicate().equals(hasIdentifier)) {
+                    subject.removeAll(statement.getPredicate());
+                }
+            }
+            resource.metadata.add(model);
+            sendModel(exchange, 200, resource.metadata);
+        }
+    }
+
+    private void createBinary(HttpExchange exchange) throws IOException {
+        long transactionId = getTransactionId(exchange);
+        synchronized (this) {
+            getTransaction(transactionId);
+        }
+        StoredResource binary = readBinary(exchange, new StoredResource(nextResourceId.getAndIncrement(), ModelFactory.createDefaultModel()));
+        synchronized (this) {
+            getTransaction(transactionId).changes.put(binary.id, binary);
+        }
+        exchange.getResponseHeaders().add("Location", getURI(binary.id));
+        send(exchange, 201, null, null);
+    }
+
+    private void updateBinary(HttpExchange exchange, long id) throws IOException {
+        long transactionId = getTransactionId(exchange);
+        StoredResource resource;
+        synchronized (this) {
+            resource = getForUpdate(getTransaction(transactionId), id);
+        }
+        // the body is read without lock, parallel uploads are limited by the bandwidth only
+        StoredResource binary = readBinary(exchange, new StoredResource(id, null));
+        synchronized (this) {
+            resource.binarySize = binary.binarySize;
+            resource.binaryDigest = binary.binaryDigest;
+            resource.mimeType = binary.mimeType;
+        }
+        send(exchange, 204, null, null);
+    }
+
+    private void search(HttpExchange exchange) throws IOException {
+        Map<String, String> query = parseQuery(exchange.getRequestURI().getRawQuery());
+        String value = query.get("value[]");
+        String property = query.get("property[]");
+        if (value == null) {
+            throw new ArcheError(400, "No search value");
+        }
+        String transactionHeader = exchange.getRequestHeaders().getFirst(TRANSACTION_HEADER);
+        Model result = ModelFactory.createDefaultModel();
+        result.setNsPrefix("acdh", ACDH);
+        synchronized (this) {
+            Map<Long, StoredResource> view = new HashMap<>(resources);
+            if (transactionHeader != null) {
+                view.putAll(getTransaction(parseTransactionId(transactionHeader)).changes);
+            }
+            for (StoredResource resource : view.values()) {
+                if (matches(resource, property, value)) {
+                    result.add(resource.metadata);
+                }
+            }
+        }
+        sendModel(exchange, 200, result);
+    }
+
+    private static boolean matches(StoredResource resource, String property, String value) {
+        for (Statement statement : resource.metadata.listStatements().toList()) {
+            if (property != null && !property.equals(statement.getPredicate().getURI())) {
+                continue;
+            }
+            RDFNode object = statement.getObject();
+            String text = object.isURIResource() ? object.asResource().getURI() : object.isLiteral() ? object.asLiteral().getLexicalForm() : null;
+            if (value.equals(text)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Find the resource using an identifier, committed or in any transaction. Must be called with the lock.
+     */
+    private Long findUsage(String identifier) {
+        for (Transaction transaction : transactions.values()) {
+            for (StoredResource resource : transaction.changes.values()) {
+                if (hasIdentifier(resource, identifier)) {
+                    return resource.id;
+                }
+            }
+        }
+        for (StoredResource resource : resources.values()) {
+            if (hasIdentifier(resource, identifier)) {
+                return resource.id;
+            }
+        }
+        return null;
+    }
+
+    private boolean hasIdentifier(StoredResource resource, String identifier) {
+        return resource.metadata.contains(resource.metadata.getResource(getURI(resource.id)), hasIdentifier,
+                resource.metadata.getResource(identifier));
+    }
+
+    /**
+     * Get the copy of a resource to change in a transaction. Must be called with the lock.
+     */
+    private StoredResource getForUpdate(Transaction transaction, long id) {
+        StoredResource resource = transaction.changes.get(id);
+        if (resource != null) {
+            return resource;
+        }
+        StoredResource committed = resources.get(id);
+        if (committed == null) {
+            throw new ArcheError(404, "Resource " + id + " doesn't exist");
+        }
+        for (Transaction other : transactions.values()) {
+            if (other != transaction && other.changes.containsKey(id)) {
+                throw new ArcheError(409, "Resource " + id + " is locked by transaction " + other.id);
+            }
+        }
+        resource = committed.copy();
+        transaction.changes.put(id, resource);
+        return resource;
+    }
+
+    private Set<String> getIdentifiers(Model model, Resource subject) {
+        Set<String> identifiers = new HashSet<>();
+        if (subject.isURIResource() && !subject.getURI().startsWith(baseURI)) {
+            identifiers.add(subject.getURI());
+        }
+        for (Statement statement : subject.listProperties(hasIdentifier).toList()) {
+            if (statement.getObject().isURIResource()) {
+                identifiers.add(statement.getObject().asResource().getURI());
+            }
+        }
+        return identifiers;
+    }
+
+    /**
+     * The described resource: the subject with an identifier or otherwise the first subject
+     */
+    private Resource getMainSubject(Model model) {
+        List<Resource> subjects = model.listSubjects().toList();
+        if (subjects.isEmpty()) {
+            throw new ArcheError(400, "No metadata");
+        }
+        for (Resource subject : subjects) {
+            if (subject.isURIResource() && subject.hasProperty(hasIdentifier)) {
+                return subject;
+            }
+        }
+        for (Resource subject : subjects) {
+            if (subject.isURIResource()) {
+                return subject;
+            }
+        }
+        throw new ArcheError(400, "The resource has no URI");
+    }
+
+    private Transaction getTransaction(long id) {
+        Transaction transaction = transactions.get(id);
+        if (transaction == null) {
+            throw new ArcheError(404, "Transaction " + id + " doesn't exist");
+        }
+        transaction.lastRequest = OffsetDateTime.now().toString();
+        return transaction;
+    }
+
+    private static long getTransactionId(HttpExchange exchange) {
+        String header = exchange.getRequestHeaders().getFirst(TRANSACTION_HEADER);
+        if (header == null) {
+            throw new ArcheError(400, "No transaction");
+        }
+        return parseTransactionId(header);
+    }
+
+    private static long parseTransactionId(String header) {
+        try {
+            return Long.parseLong(header.trim());
+        } catch (NumberFormatException e) {
+            throw new ArcheError(400, "Invalid transaction id " + header);
+        }
+    }
+
+    private String getURI(long id) {
+        return baseURI + id;
+    }
+
+    private long getResourceId(String uri) {
+        String id = uri.startsWith(baseURI) ? uri.substring(baseURI.length()) : uri;
+        try {
+            return Long.parseLong(id);
+        } catch (NumberFormatException e) {
+            throw new ArcheError(404, "Resource " + uri + " doesn't exist");
+        }
+    }
+
+    private Model readModel(HttpExchange exchange) throws IOException {
+        String contentType = exchange.getRequestHeaders().getFirst("Content-Type");
+        Lang lang = contentType == null ? Lang.TURTLE : RDFLanguages.contentTypeToLang(contentType.split(";")[0].trim());
+        byte[] body = readBody(exchange);
+        if (lang == null) {
+            throw new ArcheError(415, "Unsupported content type " + contentType);
+        }
+        Model model = ModelFactory.createDefaultModel();
+        try {
+            RDFParser.source(new ByteArrayInputStream(body)).lang(lang).parse(model);
+        } catch (RuntimeException e) {
+            throw new ArcheError(400, "Invalid metadata: " + e.getMessage());
+        }
+        return model;
+    }
+
+    private StoredResource readBinary(HttpExchange exchange, StoredResource resource) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        long size = 0;
+        try (InputStream in = openBody(exchange)) {
+            byte[] buffer = new byte[8192];
+            long start = System.nanoTime();
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+                size += read;
+                throttle(start, size);
+            }
+        }
+        receivedBytes.addAndGet(size);
+        resource.binarySize = size;
+        resource.binaryDigest = toHex(digest.digest());
+        resource.mimeType = exchange.getRequestHeaders().getFirst("Content-Type");
+        return resource;
+    }
+
+    private byte[] readBody(HttpExchange exchange) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (InputStream in = openBody(exchange)) {
+            byte[] buffer = new byte[8192];
+            long start = System.nanoTime();
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+                throttle(start, out.size());
+            }
+        }
+        receivedBytes.addAndGet(out.size());
+        return out.toByteArray();
+    }
+
+    private InputStream openBody(HttpExchange exchange) throws IOException {
+        InputStream in = exchange.getRequestBody();
+        if ("gzip".equalsIgnoreCase(exchange.getRequestHeaders().getFirst("Content-Encoding"))) {
+            if (!acceptGzip) {
+                in.transferTo(OutputStream.nullOutputStream());
+                throw new ArcheError(415, "Content-Encoding gzip is not supported");
+            }
+            return new GZIPInputStream(in);
+        }
+        return in;
+    }
+
+    /**
+     * Wait until the bytes read so far are within the bandwidth
+     */
+    private void throttle(long start, long bytes) {
+        long limit = bandwidth;
+        if (limit > 0) {
+            long due = TimeUnit.SECONDS.toNanos(bytes) / limit;
+            sleep(TimeUnit.NANOSECONDS.toMillis(due - (System.nanoTime() - start)));
+        }
+    }
+
+    private static void sleep(long millis) {
+        if (millis > 0) {
+            try {
+                Thread.sleep(millis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new ArcheError(503, "Server stopped");
+            }
+        }
+    }
+
+    private static Map<String, String> parseQuery(String query) {
+        Map<String, String> parameters = new HashMap<>();
+        if (query != null) {
+            for (String parameter : query.split("&")) {
+                int separator = parameter.indexOf('=');
+                if (separator > 0) {
+                    String value = URLDecoder.decode(parameter.substring(separator + 1), StandardCharsets.UTF_8);
+                    // ArcheAPI sends the property already encoded, so it is encoded twice
+                    if (value.contains("%3A")) {
+                        value = URLDecoder.decode(value, StandardCharsets.UTF_8);
+                    }
+                    parameters.put(URLDecoder.decode(parameter.substring(0, separator), StandardCharsets.UTF_8), value);
+                }
+            }
+        }
+        return parameters;
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder sb = new StringBuilder();
+        for (byte b : bytes) {
+            sb.append(String.format("%02x", b));
+        }
+        return sb.toString();
+    }
+
+    private static void sendTransaction(HttpExchange exchange, int status, Transaction transaction) throws IOException {
+        String json = String.format("{\"transactionId\":%d,\"startedAt\":\"%s\",\"lastRequest\":\"%s\",\"state\":\"%s\",\"lockedResourceCount\":%d}",
+                transaction.id, transaction.startedAt, transaction.lastRequest, transaction.state, transaction.changes.size());
+        send(exchange, status, "application/json", json.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void sendModel(HttpExchange exchange, int status, Model model) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        RDFDataMgr.write(out, model, Lang.TURTLE);
+        send(exchange, status, Lang.TURTLE.getHeaderString(), out.toByteArray());
+    }
+
+    private static void send(HttpExchange exchange, int status, String contentType, byte[] body) throws IOException {
+        if (contentType != null) {
+            exchange.getResponseHeaders().set("Content-Type", contentType);
+        }
+        if (body == null || body.length == 0) {
+            exchange.sendResponseHeaders(status, -1);
+            return;
+        }
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+}
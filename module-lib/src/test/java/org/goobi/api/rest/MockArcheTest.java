@@ -0,0 +1,148 @@
+package org.goobi.api.rest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.ModelFactory;
+import org.apache.jena.rdf.model.Property;
+import org.apache.jena.rdf.model.Resource;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import jakarta.ws.rs.client.Client;
+
+public class MockArcheTest {
+
+    private static final String ACDH = "https://vocabs.acdh.oeaw.ac.at/schema#";
+    private static final String IDENTIFIER = "https://id.acdh.oeaw.ac.at/project/process";
+
+    private MockArche arche;
+    private Client client;
+
+    @Before
+    public void setUp() throws Exception {
+        arche = new MockArche();
+        arche.setCredentials("user", "secret");
+        client = ArcheAPI.getClient("user", "secret");
+    }
+
+    @After
+    public void tearDown() {
+        client.close();
+        arche.close();
+    }
+
+    private static Resource createResource(String title) {
+        Model model = ModelFactory.createDefaultModel();
+        model.setNsPrefix("acdh", ACDH);
+        Resource resource = model.createResource(IDENTIFIER, model.createResource(ACDH + "Collection"));
+        resource.addProperty(model.createProperty(ACDH, "hasTitle"), title, "de");
+        resource.addProperty(model.createProperty(ACDH, "hasIdentifier"), model.createResource(IDENTIFIER));
+        return resource;
+    }
+
+    private static String getTitle(Model model, String uri) {
+        Property hasTitle = model.createProperty(ACDH, "hasTitle");
+        return model.getResource(uri).getProperty(hasTitle).getString();
+    }
+
+    @Test
+    public void testIngest() {
+        byte[] image = new byte[100_000];
+        TransactionInfo ti = ArcheAPI.startTransaction(client, arche.getBaseURI());
+        assertNotNull(ti.getTransactionId());
+
+        String uri = ArcheAPI.uploadMetadata(client, arche.getBaseURI(), ti, createResource("title"));
+        assertTrue(uri.startsWith(arche.getBaseURI()));
+        assertTrue(ArcheAPI.uploadBinary(client, uri, ti, "00000001.tif", null, new ByteArrayInputStream(image), image.length));
+        // not visible before the commit
+        assertNull(arche.getMetadata(uri));
+
+        assertTrue(ArcheAPI.finishTransaction(client, arche.getBaseURI(), ti));
+        assertEquals(1, arche.getResourceCount());
+        assertEquals(0, arche.getTransactionCount());
+        assertEquals(image.length, arche.getBinarySize(uri));
+        assertEquals("title", getTitle(arche.getMetadata(uri), uri));
+        assertEquals(uri, arche.findResource(IDENTIFIER));
+    }
+
+    @Test
+    public void testExistingResourceIsUpdated() {
+        TransactionInfo first = ArcheAPI.startTransaction(client, arche.getBaseURI());
+        String uri = ArcheAPI.uploadMetadata(client, arche.getBaseURI(), first, createResource("old title"));
+        assertTrue(ArcheAPI.finishTransaction(client, arche.getBaseURI(), first));
+
+        // the identifier is used, so the upload conflicts and the existing resource is found and patched
+        TransactionInfo second = ArcheAPI.startTransaction(client, arche.getBaseURI());
+        assertEquals(uri, ArcheAPI.uploadMetadata(client, arche.getBaseURI(), second, createResource("new title")));
+        assertTrue(ArcheAPI.finishTransaction(client, arche.getBaseURI(), second));
+
+        assertEquals(1, arche.getResourceCount());
+        assertEquals("new title", getTitle(arche.getMetadata(uri), uri));
+        assertEquals(Integer.valueOf(1), arche.getRequestCounts().get("GET search"));
+        assertEquals(Integer.valueOf(1), arche.getRequestCounts().get("PATCH resource metadata"));
+    }
+
+    @Test
+    public void testRollback() {
+        TransactionInfo ti = ArcheAPI.startTransaction(client, arche.getBaseURI());
+        assertNotNull(ArcheAPI.uploadMetadata(client, arche.getBaseURI(), ti, createResource("title")));
+        ArcheAPI.cancelTransaction(client, arche.getBaseURI(), ti);
+
+        assertEquals(0, arche.getResourceCount());
+        assertEquals(0, arche.getTransactionCount());
+        assertNull(arche.findResource(IDENTIFIER));
+    }
+
+    @Test
+    public void testLongCommitIsPolled() {
+        arche.setCommitDuration(1500);
+        ArcheAPI.setCommitRequestTimeout(200);
+        try {
+            TransactionInfo ti = ArcheAPI.startTransaction(client, arche.getBaseURI());
+            String uri = ArcheAPI.uploadMetadata(client, arche.getBaseURI(), ti, createResource("title"));
+            // the commit request times out, the success is taken from the polled state
+            assertTrue(ArcheAPI.finishTransaction(client, arche.getBaseURI(), ti));
+            assertEquals("committed", ti.getState());
+            assertEquals("title", getTitle(arche.getMetadata(uri), uri));
+            assertTrue(arche.getRequestCounts().get("GET transaction") > 0);
+            assertEquals(Integer.valueOf(1), arche.getRequestCounts().get("PUT transaction"));
+        } finally {
+            ArcheAPI.setCommitRequestTimeout(10000);
+        }
+    }
+
+    @Test
+    public void testVanishedTransactionIsNotCommitted() {
+        arche.setCommitDuration(1500);
+        arche.setRollbackCommits(true);
+        ArcheAPI.setCommitRequestTimeout(200);
+        try {
+            TransactionInfo ti = ArcheAPI.startTransaction(client, arche.getBaseURI());
+            assertNotNull(ArcheAPI.uploadMetadata(client, arche.getBaseURI(), ti, createResource("title")));
+            // the transaction disappears without the state 'rollback', the missing resource tells the outcome
+            assertFalse(ArcheAPI.finishTransaction(client, arche.getBaseURI(), ti));
+            assertEquals(0, arche.getResourceCount());
+            assertEquals(0, arche.getTransactionCount());
+            assertEquals(Integer.valueOf(1), arche.getRequestCounts().get("PUT transaction"));
+            assertTrue(arche.getRequestCounts().get("GET search") > 0);
+        } finally {
+            ArcheAPI.setCommitRequestTimeout(10000);
+        }
+    }
+
+    @Test
+    public void testOverloadIsRetried() {
+        arche.failNext(2, 503);
+        TransactionInfo ti = ArcheAPI.startTransaction(client, arche.getBaseURI());
+        assertNotNull(ti.getTransactionId());
+        assertEquals(Integer.valueOf(3), arche.getRequestCounts().get("POST transaction"));
+    }
+}
@@ -0,0 +1,86 @@
+package org.goobi.api.rest;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class RangedInputStreamTest {
+
+    private ExecutorService executor;
+
+    @Before
+    public void setUp() {
+        executor = Executors.newFixedThreadPool(4);
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testReadAllChunks() throws IOException {
+        byte[] data = new byte[10_000];
+        new Random(42).nextBytes(data);
+        MemorySource source = new MemorySource(data);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (InputStream in = new RangedInputStream(source, 1024, 3, executor)) {
+            in.transferTo(out);
+        }
+        assertArrayEquals(data, out.toByteArray());
+        // 10 chunks of 1024 bytes
+        assertEquals(10, source.requests.get());
+    }
+
+    @Test
+    public void testEmptySource() throws IOException {
+        try (InputStream in = new RangedInputStream(new MemorySource(new byte[0]), 1024, 3, executor)) {
+            assertEquals(-1, in.read());
+        }
+    }
+
+    @Test
+    public void testBoundedRequestsInFlight() throws IOException {
+        byte[] data = new byte[8 * 100];
+        MemorySource source = new MemorySource(data);
+        try (InputStream in = new RangedInputStream(source, 100, 2, executor)) {
+            in.read();
+            // at most two chunks are buffered, including the one that is read
+            assertTrue(source.requests.get() <= 2);
+        }
+    }
+
+    private static class MemorySource implements RangeSource {
+        private final byte[] data;
+        private final AtomicInteger requests = new AtomicInteger();
+
+        MemorySource(byte[] data) {
+            this.data = data;
+        }
+
+        @Override
+        public long length() {
+            return data.length;
+        }
+
+        @Override
+        public InputStream openRange(long offset, long length) {
+            requests.incrementAndGet();
+            return new ByteArrayInputStream(data, (int) offset, (int) length);
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package org.goobi.api.rest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+import org.apache.jena.riot.Lang;
+import org.junit.Test;
+
+public class SubjectFinderTest {
+
+    private static final String NAMESPACE = "https://vocabs.acdh.oeaw.ac.at";
+
+    private static InputStream stream(String content) {
+        return new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testFirstMatchingSubject() {
+        String turtle = "@prefix acdh: <https://vocabs.acdh.oeaw.ac.at/schema#> .\n"
+                + "<https://arche.acdh.oeaw.ac.at/api/1> <http://purl.org/dc/terms/title> \"other\" .\n"
+                + "<https://arche.acdh.oeaw.ac.at/api/2> acdh:hasIdentifier <https://id.acdh.oeaw.ac.at/x> .\n"
+                + "<https://arche.acdh.oeaw.ac.at/api/3> acdh:hasIdentifier <https://id.acdh.oeaw.ac.at/y> .\n";
+        assertEquals("https://arche.acdh.oeaw.ac.at/api/2", SubjectFinder.find(stream(turtle), Lang.TURTLE, NAMESPACE));
+    }
+
+    @Test
+    public void testParsingStopsAtFirstMatch() {
+        // the rest of the response is not parsed, so the syntax error is not reached
+        String ntriples = "<https://arche.acdh.oeaw.ac.at/api/2> <https://vocabs.acdh.oeaw.ac.at/schema#hasTitle> \"x\" .\n"
+                + "this is not n-triples\n";
+        assertEquals("https://arche.acdh.oeaw.ac.at/api/2", SubjectFinder.find(stream(ntriples), Lang.NTRIPLES, NAMESPACE));
+    }
+
+    @Test
+    public void testNoMatch() {
+        String ntriples = "<https://arche.acdh.oeaw.ac.at/api/1> <http://purl.org/dc/terms/title> \"other\" .\n";
+        assertNull(SubjectFinder.find(stream(ntriples), Lang.NTRIPLES, NAMESPACE));
+    }
+}
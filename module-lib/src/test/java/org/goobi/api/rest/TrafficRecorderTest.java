@@ -0,0 +1,177 @@
+package org.goobi.api.rest;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.ModelFactory;
+import org.apache.jena.rdf.model.Resource;
+import org.goobi.api.rest.ArcheMetrics.Endpoint;
+import org.goobi.api.rest.TrafficRecorder.Exchange;
+import org.goobi.api.rest.TrafficRecorder.Recording;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.sun.net.httpserver.HttpServer;
+
+import jakarta.ws.rs.client.Client;
+import jakarta.ws.rs.client.Invocation;
+import jakarta.ws.rs.client.WebTarget;
+import jakarta.ws.rs.core.Response;
+
+public class TrafficRecorderTest {
+
+    private static final String ACDH = "https://vocabs.acdh.oeaw.ac.at/schema#";
+    private static final String IDENTIFIER = "https://id.acdh.oeaw.ac.at/project/process";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static Resource createResource(String title) {
+        Model model = ModelFactory.createDefaultModel();
+        Resource resource = model.createResource(IDENTIFIER, model.createResource(ACDH + "Collection"));
+        resource.addProperty(model.createProperty(ACDH, "hasTitle"), title, "de");
+        resource.addProperty(model.createProperty(ACDH, "hasIdentifier"), model.createResource(IDENTIFIER));
+        return resource;
+    }
+
+    /**
+     * Two ingests of the same resource, the second one conflicts, searches the existing resource and updates it
+     *
+     * @return the URIs of the resource
+     */
+    private static String[] ingest(String baseURI) {
+        byte[] image = new byte[10_000];
+        Client client = ArcheAPI.getClient("user", "secret");
+        try {
+            TransactionInfo first = ArcheAPI.startTransaction(client, baseURI);
+            String created = ArcheAPI.uploadMetadata(client, baseURI, first, createResource("old title"));
+            assertTrue(ArcheAPI.uploadBinary(client, created, first, "00000001.tif", null, new ByteArrayInputStream(image), image.length));
+            assertTrue(ArcheAPI.finishTransaction(client, baseURI, first));
+
+            TransactionInfo second = ArcheAPI.startTransaction(client, baseURI);
+            String updated = ArcheAPI.uploadMetadata(client, baseURI, second, createResource("new title"));
+            assertTrue(ArcheAPI.finishTransaction(client, baseURI, second));
+            return new String[] { created, updated };
+        } finally {
+            client.close();
+        }
+    }
+
+    private Path record() throws IOException {
+        Path file = folder.getRoot().toPath().resolve("traffic.jsonl.gz");
+        try (MockArche arche = new MockArche()) {
+            arche.setCredentials("user", "secret");
+            try (TrafficRecorder recorder = TrafficRecorder.start(file, arche.getBaseURI())) {
+                String[] uris = ingest(arche.getBaseURI());
+                assertEquals(uris[0], uris[1]);
+            }
+        }
+        return file;
+    }
+
+    @Test
+    public void testRecording() throws IOException {
+        Path file = record();
+        String content;
+        try (InputStream in = new GZIPInputStream(Files.newInputStream(file))) {
+            content = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+        assertFalse(content.contains("secret"));
+        assertFalse(content.contains("Authorization"));
+
+        List<Exchange> exchanges = TrafficRecorder.read(file).exchanges();
+        assertEquals(Endpoint.TRANSACTION_START, exchanges.get(0).endpoint());
+        assertEquals("transaction", exchanges.get(0).path());
+        Exchange created = exchanges.get(1);
+        assertEquals(Endpoint.METADATA_CREATE, created.endpoint());
+        assertEquals(201, created.status());
+        // relative to the API URL
+        assertEquals("1000", created.location());
+        assertTrue(created.requestBytes() > 0);
+        assertTrue(exchanges.stream().anyMatch(e -> e.endpoint() == Endpoint.SEARCH && e.body() != null));
+        assertTrue(exchanges.stream().anyMatch(e -> e.endpoint() == Endpoint.METADATA_CREATE && e.status() == 409));
+    }
+
+    @Test
+    public void testNoRecordingAfterClose() throws IOException {
+        Path file = record();
+        int recorded = TrafficRecorder.read(file).exchanges().size();
+        assertNull(TrafficRecorder.current());
+        try (MockArche arche = new MockArche()) {
+            ingest(arche.getBaseURI());
+        }
+        assertEquals(recorded, TrafficRecorder.read(file).exchanges().size());
+    }
+
+    @Test
+    public void testReplay() throws IOException {
+        Recording recording = TrafficRecorder.read(record());
+        try (ArcheReplay replay = new ArcheReplay(recording, 0)) {
+            String[] uris = ingest(replay.getBaseURI());
+            assertEquals(replay.getBaseURI() + "1000", uris[0]);
+            assertEquals(uris[0], uris[1]);
+            assertEquals(0, replay.getUnmatchedCount());
+            assertEquals(recording.exchanges().size(), replay.getRequestCount());
+        }
+    }
+
+    @Test
+    public void testBodyWithoutLengthIsReadUpToLimit() throws IOException {
+        byte[] small = "{\"state\":\"active\"}".getBytes(StandardCharsets.UTF_8);
+        byte[] large = new byte[TrafficRecorder.MAX_BODY_SIZE * 4];
+        Arrays.fill(large, (byte) 'x');
+        // chunked responses without Content-Length
+        HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/api/", exchange -> {
+            byte[] body = exchange.getRequestURI().getPath().endsWith("large") ? large : small;
+            exchange.getResponseHeaders().set("Content-Type", "text/plain");
+            exchange.sendResponseHeaders(200, 0);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.start();
+        String baseURI = "http://" + InetAddress.getLoopbackAddress().getHostAddress() + ":" + server.getAddress().getPort() + "/api/";
+        Path file = folder.getRoot().toPath().resolve("chunked.jsonl.gz");
+        Client client = ArcheAPI.getClient("user", "secret");
+        try (TrafficRecorder recorder = TrafficRecorder.start(file, baseURI)) {
+            assertArrayEquals(small, get(client, baseURI, "small"));
+            // the caller still gets the complete body
+            assertArrayEquals(large, get(client, baseURI, "large"));
+        } finally {
+            client.close();
+            server.stop(0);
+        }
+
+        List<Exchange> exchanges = TrafficRecorder.read(file).exchanges();
+        assertEquals(2, exchanges.size());
+        assertArrayEquals(small, exchanges.get(0).body());
+        assertNull(exchanges.get(1).body());
+    }
+
+    private static byte[] get(Client client, String baseURI, String path) {
+        WebTarget target = client.target(baseURI).path(path);
+        Invocation.Builder builder = target.request();
+        try (Response response = ArcheAPI.execute(Endpoint.SEARCH, target, 0, builder::get, false, true)) {
+            return response.readEntity(byte[].class);
+        }
+    }
+}
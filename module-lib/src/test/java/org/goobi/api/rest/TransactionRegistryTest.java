@@ -0,0 +1,74 @@
+package org.goobi.api.rest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import jakarta.ws.rs.client.Client;
+
+public class TransactionRegistryTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private MockArche arche;
+    private Client client;
+    private TransactionRegistry registry;
+
+    @Before
+    public void setUp() throws Exception {
+        arche = new MockArche();
+        arche.setCredentials("user", "secret");
+        client = ArcheAPI.getClient("user", "secret");
+        registry = TransactionRegistry.getInstance(folder.getRoot().toPath());
+    }
+
+    @After
+    public void tearDown() {
+        client.close();
+        arche.close();
+    }
+
+    @Test
+    public void testRunningTransactionIsNotReaped() {
+        try (ArcheTransaction transaction = ArcheTransaction.start(client, arche.getBaseURI(), registry, "process")) {
+            assertEquals(0, registry.reapStaleTransactions(client));
+            assertEquals(1, arche.getTransactionCount());
+        }
+        assertEquals(0, arche.getTransactionCount());
+    }
+
+    @Test
+    public void testFailedCancelIsRetried() throws Exception {
+        // unknown files do not stop the reaper
+        Files.writeString(folder.getRoot().toPath().resolve("notes.properties"), "owner=nobody");
+        arche.failRequests("DELETE transaction", 500);
+        ArcheTransaction transaction = ArcheTransaction.start(client, arche.getBaseURI(), registry, "process");
+        Path file = folder.getRoot().toPath().resolve(transaction.getInfo().getTransactionId() + ".properties");
+        transaction.close();
+        assertTrue(Files.exists(file));
+        assertEquals(1, arche.getTransactionCount());
+
+        // the abandoned transaction is reaped, the rollback still fails
+        registry.resetReapInterval();
+        assertEquals(0, registry.reapStaleTransactions(client));
+        assertTrue(Files.exists(file));
+
+        // tried again after the interval only
+        arche.failRequests("DELETE transaction", 0);
+        assertEquals(0, registry.reapStaleTransactions(client));
+        registry.resetReapInterval();
+        assertEquals(1, registry.reapStaleTransactions(client));
+        assertFalse(Files.exists(file));
+        assertEquals(0, arche.getTransactionCount());
+    }
+}
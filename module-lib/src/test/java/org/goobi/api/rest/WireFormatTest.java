@@ -0,0 +1,52 @@
+package org.goobi.api.rest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.ModelFactory;
+import org.apache.jena.rdf.model.Resource;
+import org.apache.jena.riot.Lang;
+import org.apache.jena.riot.RDFDataMgr;
+import org.junit.Test;
+
+import jakarta.ws.rs.core.MediaType;
+
+public class WireFormatTest {
+
+    @Test
+    public void testFromName() {
+        assertEquals(WireFormat.TURTLE_STREAMING, WireFormat.fromName("turtle-streaming"));
+        assertEquals(WireFormat.NTRIPLES, WireFormat.fromName(" ntriples "));
+        assertEquals(WireFormat.DEFAULT, WireFormat.fromName(null));
+        assertEquals(WireFormat.DEFAULT, WireFormat.fromName("json"));
+    }
+
+    @Test
+    public void testTurtleIsAlwaysAccepted() {
+        assertEquals("text/turtle", WireFormat.TURTLE_PRETTY.getAccept());
+        assertEquals("application/n-triples, text/turtle;q=0.9", WireFormat.NTRIPLES.getAccept());
+        assertEquals(Lang.NTRIPLES, WireFormat.getLang(MediaType.valueOf("application/n-triples; charset=utf-8")));
+        assertEquals(Lang.TURTLE, WireFormat.getLang(null));
+    }
+
+    @Test
+    public void testRoundTrip() {
+        Model model = ModelFactory.createDefaultModel();
+        model.setNsPrefix("acdh", "https://vocabs.acdh.oeaw.ac.at/schema#");
+        Resource resource = model.createResource("https://id.acdh.oeaw.ac.at/test", model.createResource(model.getNsPrefixURI("acdh") + "Resource"));
+        resource.addProperty(model.createProperty(model.getNsPrefixURI("acdh"), "hasTitle"), "Test", "de");
+        resource.addProperty(model.createProperty(model.getNsPrefixURI("acdh"), "hasIdentifier"), model.createResource("https://example.org/1"));
+
+        for (WireFormat format : WireFormat.values()) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            RDFDataMgr.write(out, model, format.getFormat());
+            Model read = ModelFactory.createDefaultModel();
+            RDFDataMgr.read(read, new ByteArrayInputStream(out.toByteArray()), WireFormat.getLang(MediaType.valueOf(format.getMediaType())));
+            assertTrue(format.name(), read.isIsomorphicWith(model));
+        }
+    }
+}